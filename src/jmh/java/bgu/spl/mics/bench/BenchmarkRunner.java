@@ -0,0 +1,30 @@
+package bgu.spl.mics.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark suite.
+ * Accepts the regular JMH command line (benchmark regexps, {@code -t}, {@code -p}, ...)
+ * and always writes machine-readable JSON results so two versions can be diffed.
+ * Unless {@code -rff} is given the results go to {@code target/jmh-result.json}.
+ * <p>
+ * Usage: {@code mvn -Pjmh package exec:exec -Dbench.args="MessageBus -t 4 -rf json -rff target/base.json"}
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("target/jmh-result.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
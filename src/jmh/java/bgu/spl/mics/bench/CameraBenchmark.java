@@ -0,0 +1,45 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Camera#detectObjects} as the recording grows, querying every
+ * tick of the recording in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CameraBenchmark {
+
+    @Param({"100", "10000"})
+    public int frames;
+
+    private Camera camera;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        camera = new Camera(1, 0);
+        camera.setStatus(STATUS.UP);
+        for (int time = 1; time <= frames; time++) {
+            camera.addDetectedObjects(new StampedDetectedObjects(time,
+                    Collections.singletonList(new DetectedObject("Object_" + time, "Benchmark"))));
+        }
+    }
+
+    @Benchmark
+    public StampedDetectedObjects detectObjects() {
+        tick = tick % frames + 1;
+        return camera.detectObjects(tick);
+    }
+}
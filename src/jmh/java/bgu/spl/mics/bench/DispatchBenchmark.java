@@ -0,0 +1,66 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Callback;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-message cost of finding a callback: the former
+ * {@code ConcurrentHashMap<Class, Callback>} lookup against the
+ * {@link MessageTypes} id plus array index now used by the micro-service loop
+ * and the message-bus. Messages cycle through eight types so neither path can
+ * rely on a single cached entry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    static class M0 implements Broadcast {} static class M1 implements Broadcast {}
+    static class M2 implements Broadcast {} static class M3 implements Broadcast {}
+    static class M4 implements Broadcast {} static class M5 implements Broadcast {}
+    static class M6 implements Broadcast {} static class M7 implements Broadcast {}
+
+    private final Message[] messages = {
+            new M0(), new M1(), new M2(), new M3(), new M4(), new M5(), new M6(), new M7()};
+
+    private ConcurrentHashMap<Class<? extends Message>, Callback<?>> byClass;
+    private Callback<?>[] byId;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byClass = new ConcurrentHashMap<>();
+        for (Message message : messages) {
+            MessageTypes.idOf(message.getClass());
+        }
+        byId = new Callback<?>[MessageTypes.count()];
+        for (Message message : messages) {
+            Callback<Message> callback = m -> { };
+            byClass.put(message.getClass(), callback);
+            byId[MessageTypes.idOf(message.getClass())] = callback;
+        }
+    }
+
+    @Benchmark
+    public Callback<?> classMap() {
+        Message message = messages[next++ & 7];
+        return byClass.get(message.getClass());
+    }
+
+    @Benchmark
+    public Callback<?> typeId() {
+        Message message = messages[next++ & 7];
+        Callback<?>[] table = byId;
+        int id = MessageTypes.idOf(message.getClass());
+        return id < table.length ? table[id] : null;
+    }
+}
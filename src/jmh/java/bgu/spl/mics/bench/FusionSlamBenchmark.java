@@ -0,0 +1,57 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.Pose;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FusionSlam#updateLandmark} for landmarks with a growing
+ * number of cloud points. Landmark ids cycle through a fixed set, so after the
+ * first pass every call takes the transform-and-average path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FusionSlamBenchmark {
+
+    private static final int LANDMARKS = 256;
+
+    @Param({"4", "64", "512"})
+    public int points;
+
+    private FusionSlam fusionSlam;
+    private List<CloudPoint> coordinates;
+    private Pose pose;
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fusionSlam = FusionSlam.getInstance();
+        Random random = new Random(42);
+        coordinates = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            coordinates.add(new CloudPoint(random.nextDouble() * 10, random.nextDouble() * 10));
+        }
+        pose = new Pose(1.5f, -2.0f, 37.0f, 1);
+        ids = new String[LANDMARKS];
+        for (int i = 0; i < LANDMARKS; i++) {
+            ids[i] = "Landmark_" + i;
+        }
+    }
+
+    @Benchmark
+    public void updateLandmark() {
+        fusionSlam.updateLandmark(ids[next], "Benchmark", coordinates, pose);
+        next = (next + 1) % LANDMARKS;
+    }
+}
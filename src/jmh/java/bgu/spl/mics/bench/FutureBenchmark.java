@@ -0,0 +1,40 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Future;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolving a {@link Future} and reading it back, both through the
+ * blocking {@code get()} and the timed {@code get(timeout, unit)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FutureBenchmark {
+
+    private final Object result = new Object();
+
+    @Benchmark
+    public Object resolveThenGet() {
+        Future<Object> future = new Future<>();
+        future.resolve(result);
+        return future.get();
+    }
+
+    @Benchmark
+    public Object resolveThenTimedGet() {
+        Future<Object> future = new Future<>();
+        future.resolve(result);
+        return future.get(1, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public boolean isDoneOnPending() {
+        return new Future<Object>().isDone();
+    }
+}
@@ -0,0 +1,51 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the send/await round trip of the message bus with enqueue-time
+ * stamping disabled and enabled, to keep the disabled path near zero cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstrumentationBenchmark {
+
+    static class Ping implements Broadcast {}
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private MessageBusImpl bus;
+    private MicroService service;
+    private final Ping ping = new Ping();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bus = MessageBusImpl.getInstance();
+        bus.setInstrumented(instrumented);
+        service = new MessageBusBenchmark.IdleService("instrumentation-bench");
+        bus.register(service);
+        bus.subscribeBroadcast(Ping.class, service);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bus.unregister(service);
+        bus.setInstrumented(false);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws InterruptedException {
+        bus.sendBroadcast(ping);
+        return bus.awaitMessage(service);
+    }
+}
@@ -0,0 +1,74 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.application.messages.JournalCodecs;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.TrackedObject;
+import bgu.spl.mics.journal.MessageJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost the message journal adds to every send: encoding the
+ * payload and copying it into the memory-mapped file. {@code tick} is the
+ * smallest message of a run, {@code tracked} a LiDAR worker's batch of four
+ * objects with eight points each. The journal is recreated every iteration
+ * so the file does not grow without bound.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    @Param({"tick", "tracked"})
+    public String message;
+
+    private Message payload;
+    private Path file;
+    private MessageJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUpMessage() {
+        if ("tick".equals(message)) {
+            payload = new TickBroadcast(42);
+        } else {
+            List<TrackedObject> objects = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                List<CloudPoint> points = new ArrayList<>();
+                for (int j = 0; j < 8; j++) {
+                    points.add(new CloudPoint(i + j * 0.1, j - i * 0.1));
+                }
+                objects.add(new TrackedObject("Object_" + i, 42, "Benchmark object", points));
+            }
+            payload = new TrackedObjectsEvent(objects);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openJournal() throws IOException {
+        file = Files.createTempFile("journal-bench", ".bin");
+        journal = new MessageJournal(file, JournalCodecs.create());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        journal.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public void append() {
+        journal.append(payload, null);
+    }
+}
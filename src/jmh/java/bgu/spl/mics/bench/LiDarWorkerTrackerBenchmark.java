@@ -0,0 +1,88 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.ParallelismTuner;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LiDarWorkerTracker#processData} for frames of increasing size
+ * against a LiDAR database of {@code frames * objects} entries written to a
+ * temporary file at setup. {@code parallel} selects the sequential path
+ * ("off") or the adaptive fork-join path ("auto").
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LiDarWorkerTrackerBenchmark {
+
+    private static final int FRAMES = 100;
+
+    @Param({"1", "16", "128", "512"})
+    public int objects;
+
+    @Param({"8", "64"})
+    public int points;
+
+    @Param({"off", "auto"})
+    public String parallel;
+
+    private LiDarWorkerTracker tracker;
+    private StampedDetectedObjects[] frames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File data = File.createTempFile("lidar-bench", ".json");
+        data.deleteOnExit();
+        Random random = new Random(42);
+        try (Writer writer = new FileWriter(data)) {
+            writer.write('[');
+            for (int time = 1; time <= FRAMES; time++) {
+                for (int o = 0; o < objects; o++) {
+                    if (time > 1 || o > 0) {
+                        writer.write(',');
+                    }
+                    writer.write("{\"time\":" + time + ",\"id\":\"Object_" + o + "\",\"cloudPoints\":[");
+                    for (int p = 0; p < points; p++) {
+                        writer.write((p > 0 ? "," : "") + "[" + random.nextDouble() + "," + random.nextDouble() + ",0.1]");
+                    }
+                    writer.write("]}");
+                }
+            }
+            writer.write(']');
+        }
+
+        tracker = new LiDarWorkerTracker(1, 0, LiDarDataBase.load(data.getAbsolutePath()), ParallelismTuner.parse(parallel));
+        frames = new StampedDetectedObjects[FRAMES];
+        for (int time = 1; time <= FRAMES; time++) {
+            List<DetectedObject> detected = new ArrayList<>(objects);
+            for (int o = 0; o < objects; o++) {
+                detected.add(new DetectedObject("Object_" + o, "Benchmark"));
+            }
+            frames[time - 1] = new StampedDetectedObjects(time, detected);
+        }
+    }
+
+    @Benchmark
+    public List<TrackedObject> processData() {
+        StampedDetectedObjects frame = frames[next];
+        next = (next + 1) % FRAMES;
+        return tracker.processData(frame, frame.getTime());
+    }
+}
@@ -0,0 +1,88 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlBroadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a service takes to terminate when the stop broadcast
+ * arrives behind a backlog of data events. The service is held in its first
+ * event while the backlog and the stop broadcast are queued; each operation
+ * releases it and waits for its thread to exit. A {@link ControlBroadcast}
+ * stop overtakes the backlog, while a plain broadcast, as every broadcast was
+ * before mailboxes had a control lane, waits until the whole backlog has been
+ * handled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MailboxBacklogBenchmark {
+
+    static class WorkEvent implements Event<Void> {}
+    static class ControlStop implements ControlBroadcast {}
+    static class DataStop implements Broadcast {}
+
+    @Param({"0", "1000", "10000"})
+    public int backlog;
+
+    @Param({"control", "data"})
+    public String lane;
+
+    // CPU work per backlog event, in Blackhole tokens
+    @Param({"100"})
+    public int work;
+
+    private CountDownLatch gate;
+    private Thread thread;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws InterruptedException {
+        MessageBusImpl bus = new MessageBusImpl();
+        CountDownLatch opened = new CountDownLatch(1);
+        gate = opened;
+        MicroService service = new MicroService("Backlogged", bus) {
+            private boolean gated = true;
+
+            @Override
+            protected void initialize() {
+                subscribeEvent(WorkEvent.class, event -> {
+                    if (gated) {
+                        gated = false;
+                        try {
+                            opened.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    Blackhole.consumeCPU(work);
+                });
+                subscribeBroadcast(ControlStop.class, stop -> terminate());
+                subscribeBroadcast(DataStop.class, stop -> terminate());
+            }
+        };
+        thread = new Thread(service, "Backlogged");
+        thread.start();
+        service.awaitInitialization();
+        bus.sendEvent(new WorkEvent()); // Holds the service at the gate
+        for (int i = 0; i < backlog; i++) {
+            bus.sendEvent(new WorkEvent());
+        }
+        bus.sendBroadcast("control".equals(lane) ? new ControlStop() : new DataStop());
+    }
+
+    @Benchmark
+    public void timeToTerminate() throws InterruptedException {
+        gate.countDown();
+        thread.join();
+    }
+}
@@ -0,0 +1,105 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the MessageBusImpl hot paths: round-robin {@code sendEvent},
+ * fan-out {@code sendBroadcast} and draining with {@code awaitMessage}.
+ * Every benchmark thread works on its own message types and subscribers, so
+ * running with {@code -t N} measures contention on the shared bus structures
+ * rather than threads stealing each other's messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBusBenchmark {
+
+    // One event and one broadcast type per benchmark thread (up to 8 threads)
+    static class E0 implements Event<Void> {} static class E1 implements Event<Void> {}
+    static class E2 implements Event<Void> {} static class E3 implements Event<Void> {}
+    static class E4 implements Event<Void> {} static class E5 implements Event<Void> {}
+    static class E6 implements Event<Void> {} static class E7 implements Event<Void> {}
+    static class B0 implements Broadcast {} static class B1 implements Broadcast {}
+    static class B2 implements Broadcast {} static class B3 implements Broadcast {}
+    static class B4 implements Broadcast {} static class B5 implements Broadcast {}
+    static class B6 implements Broadcast {} static class B7 implements Broadcast {}
+
+    private static final Event<?>[] EVENTS = {
+            new E0(), new E1(), new E2(), new E3(), new E4(), new E5(), new E6(), new E7()};
+    private static final Broadcast[] BROADCASTS = {
+            new B0(), new B1(), new B2(), new B3(), new B4(), new B5(), new B6(), new B7()};
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        @Param({"1", "4", "16"})
+        public int subscribers;
+
+        MessageBusImpl bus;
+        MicroService[] services;
+        Event<Void> event;
+        Broadcast broadcast;
+        int next;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setUp() {
+            int index = THREAD_INDEX.getAndIncrement() % EVENTS.length;
+            bus = MessageBusImpl.getInstance();
+            event = (Event<Void>) EVENTS[index];
+            broadcast = BROADCASTS[index];
+            services = new MicroService[subscribers];
+            for (int i = 0; i < subscribers; i++) {
+                services[i] = new IdleService("bench-" + index + "-" + i);
+                bus.register(services[i]);
+                bus.subscribeEvent((Class<? extends Event<Void>>) event.getClass(), services[i]);
+                bus.subscribeBroadcast(broadcast.getClass(), services[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (MicroService service : services) {
+                bus.unregister(service);
+            }
+        }
+    }
+
+    @Benchmark
+    public void sendEventAndAwait(ThreadState state, Blackhole blackhole) throws InterruptedException {
+        blackhole.consume(state.bus.sendEvent(state.event));
+        // Round-robin delivers to the subscribers in order
+        MicroService receiver = state.services[state.next];
+        state.next = (state.next + 1) % state.services.length;
+        blackhole.consume(state.bus.awaitMessage(receiver));
+    }
+
+    @Benchmark
+    public void sendBroadcastAndDrain(ThreadState state, Blackhole blackhole) throws InterruptedException {
+        state.bus.sendBroadcast(state.broadcast);
+        for (MicroService service : state.services) {
+            blackhole.consume(state.bus.awaitMessage(service));
+        }
+    }
+
+    static class IdleService extends MicroService {
+        IdleService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {}
+    }
+}
@@ -0,0 +1,69 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.PendingDetections;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures one LiDAR tick with a steady backlog of pending camera frames: one
+ * frame arrives and the one frame that has become due is taken out. The
+ * {@code heap} variant uses {@link PendingDetections}; {@code listScan} is the
+ * former filter-and-removeAll over an ArrayList, kept for comparison. The heap
+ * should stay flat as {@code pending} grows while the scan grows linearly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PendingDetectionsBenchmark {
+
+    @Param({"16", "1024", "8192"})
+    public int pending;
+
+    private PendingDetections heap;
+    private List<StampedDetectedObjects> list;
+    private List<DetectedObject> objects;
+    private int tick;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // A frequency of 'pending' ticks keeps exactly that many frames waiting
+        heap = new PendingDetections(pending);
+        list = new ArrayList<>();
+        objects = Collections.singletonList(new DetectedObject("Wall_1", "Wall"));
+        for (tick = 1; tick <= pending; tick++) {
+            StampedDetectedObjects frame = new StampedDetectedObjects(tick, objects);
+            heap.add(frame);
+            list.add(frame);
+        }
+    }
+
+    @Benchmark
+    public void heap(Blackhole blackhole) {
+        heap.add(new StampedDetectedObjects(tick, objects));
+        blackhole.consume(heap.pollDue(tick));
+        tick++;
+    }
+
+    @Benchmark
+    public void listScan(Blackhole blackhole) {
+        list.add(new StampedDetectedObjects(tick, objects));
+        final int now = tick;
+        List<StampedDetectedObjects> due = list.stream()
+                .filter(frame -> frame.getTime() + pending <= now)
+                .collect(Collectors.toList());
+        list.removeAll(due);
+        blackhole.consume(due);
+        tick++;
+    }
+}
@@ -0,0 +1,99 @@
+package bgu.spl.mics.bench;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.JournalCodecs;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.journal.MessageCodecs;
+import bgu.spl.mics.net.MessageBroker;
+import bgu.spl.mics.net.SharedMemoryTransport;
+import bgu.spl.mics.net.TcpTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the handoff of a tick broadcast from one bus to another through
+ * a transport: encoding, the trip through the broker's sockets or the shared
+ * ring, decoding and delivery into the receiving service's mailbox. The two
+ * buses live in one JVM, standing in for two processes. The benchmark thread
+ * sends and then takes the message from the mailbox itself, so each
+ * operation is one complete one-way trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+    @Param({"sharedMemory", "tcp"})
+    public String transport;
+
+    private MessageBusImpl sender;
+    private MessageBusImpl receiver;
+    private MicroService service;
+    private Closeable senderLink;
+    private Closeable receiverLink;
+    private MessageBroker broker;
+    private Path directory;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MessageCodecs codecs = JournalCodecs.create();
+        sender = new MessageBusImpl();
+        receiver = new MessageBusImpl();
+        if ("tcp".equals(transport)) {
+            broker = new MessageBroker(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            broker.start();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), broker.getPort());
+            senderLink = TcpTransport.connect(address, sender, codecs);
+            receiverLink = TcpTransport.connect(address, receiver, codecs);
+        } else {
+            directory = Files.createTempDirectory("transport-bench");
+            senderLink = SharedMemoryTransport.open(directory, 0, 2, SharedMemoryTransport.DEFAULT_CAPACITY, sender, codecs);
+            receiverLink = SharedMemoryTransport.open(directory, 1, 2, SharedMemoryTransport.DEFAULT_CAPACITY, receiver, codecs);
+        }
+        service = new MicroService("Receiver", receiver) {
+            @Override
+            protected void initialize() {
+            }
+        };
+        receiver.register(service);
+        receiver.subscribeBroadcast(TickBroadcast.class, service);
+        Thread.sleep(200); // Let the subscription reach the sender
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        senderLink.close();
+        receiverLink.close();
+        if (broker != null) {
+            broker.close();
+        }
+        if (directory != null) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Message handoff() throws InterruptedException {
+        sender.sendBroadcast(new TickBroadcast(++tick));
+        return receiver.awaitMessage(service);
+    }
+}
@@ -0,0 +1,11 @@
+package bgu.spl.mics;
+
+/**
+ * A broadcast that changes the life cycle of the services that receive it,
+ * such as a termination or crash notice. {@link MessageBusImpl} queues control
+ * broadcasts in a lane of their own that a micro-service always drains before
+ * its events and other broadcasts, so they do not wait behind a data backlog.
+ * Control broadcasts keep their order among themselves.
+ */
+public interface ControlBroadcast extends Broadcast {
+}
@@ -0,0 +1,156 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel of items keyed by the tick they are due at.
+ * <p>
+ * Level 0 has one slot per tick for the next 64 ticks, level 1 one slot per 64
+ * ticks, and so on; six levels of 64 slots cover the whole {@code int} range.
+ * An item is filed in the lowest level whose slot spans its due tick. When the
+ * clock enters the range of a higher-level slot, that slot is cascaded into the
+ * levels below, so every item is touched at most once per level and adding or
+ * releasing an item costs O(1) no matter how many are pending. Each level keeps
+ * a bitmap of its occupied slots, so advancing jumps straight to the next tick
+ * at which a slot is released or cascaded instead of stepping through the
+ * empty ticks in between.
+ * <p>
+ * Not thread-safe; {@link MessageBusImpl} guards it with its own lock.
+ */
+final class HierarchicalTimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    // A pending item
+    private static final class Entry<T> {
+        final int due;
+        final long order; // Insertion order, so items due at the same tick keep it
+        final T item;
+
+        Entry(int due, long order, T item) {
+            this.due = due;
+            this.order = order;
+            this.item = item;
+        }
+    }
+
+    private final List<List<List<Entry<T>>>> levels = new ArrayList<>(LEVELS);
+    private final long[] occupied = new long[LEVELS]; // Bit s of a level is set while its slot s holds entries
+    private int now; // Current tick
+    private int size;
+    private long nextOrder;
+
+    HierarchicalTimingWheel() {
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Entry<T>>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayList<>());
+            }
+            levels.add(slots);
+        }
+    }
+
+    /**
+     * @return The tick the wheel was last advanced to.
+     */
+    int now() {
+        return now;
+    }
+
+    /**
+     * @return The number of pending items.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds an item due at a future tick.
+     *
+     * @param due  The tick at which the item should be released.
+     * @param item The item.
+     * @return false, without adding the item, if {@code due} is not in the future.
+     */
+    boolean add(int due, T item) {
+        if (due <= now) {
+            return false;
+        }
+        file(new Entry<>(due, nextOrder++, item));
+        size++;
+        return true;
+    }
+
+    /**
+     * Advances the clock to {@code tick}, releasing every item due at or before it.
+     *
+     * @param tick The new current tick; ignored if it is not after the current one.
+     * @return The released items, ordered by due tick and then insertion order.
+     */
+    List<T> advance(int tick) {
+        List<T> released = new ArrayList<>();
+        while (now < tick) {
+            long next = size == 0 ? Long.MAX_VALUE : nextEvent();
+            if (next > tick) {
+                now = tick; // Nothing due or cascading on the way - jump straight there
+                break;
+            }
+            now = (int) next;
+
+            // Cascade every higher-level slot whose range starts at this tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = BITS * level;
+                if ((now & ((1 << shift) - 1)) == 0) {
+                    int index = (now >>> shift) & MASK;
+                    List<Entry<T>> slot = levels.get(level).get(index);
+                    if (!slot.isEmpty()) {
+                        List<Entry<T>> cascaded = new ArrayList<>(slot);
+                        slot.clear();
+                        occupied[level] &= ~(1L << index);
+                        cascaded.sort((a, b) -> Long.compare(a.order, b.order));
+                        cascaded.forEach(this::file);
+                    }
+                }
+            }
+
+            int index = now & MASK;
+            List<Entry<T>> due = levels.get(0).get(index);
+            if (!due.isEmpty()) {
+                due.sort((a, b) -> Long.compare(a.order, b.order));
+                for (Entry<T> entry : due) {
+                    released.add(entry.item);
+                }
+                size -= due.size();
+                due.clear();
+                occupied[0] &= ~(1L << index);
+            }
+        }
+        return released;
+    }
+
+    // The next tick at which an occupied slot is released or cascaded; the lowest occupied level always comes first
+    private long nextEvent() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            int digit = (now >>> shift) & MASK;
+            long later = digit == MASK ? 0 : occupied[level] & (-1L << (digit + 1));
+            if (later != 0) {
+                long base = (long) now >>> (shift + BITS) << (shift + BITS);
+                return base | ((long) Long.numberOfTrailingZeros(later) << shift);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // Files an entry in the lowest level whose slot range contains both now and its due tick
+    private void file(Entry<T> entry) {
+        int differing = 31 - Integer.numberOfLeadingZeros(entry.due ^ now);
+        int level = differing < 0 ? 0 : differing / BITS;
+        int index = (entry.due >>> (BITS * level)) & MASK;
+        levels.get(level).get(index).add(entry);
+        occupied[level] |= 1L << index;
+    }
+}
@@ -0,0 +1,65 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The message queue {@link MessageBusImpl} allocates for a registered
+ * {@link MicroService}. Besides the queue itself it counts the messages that
+ * are in flight for its owner - queued or currently being handled - which is
+ * what the bus uses to detect that the whole system has gone idle.
+ * <p>
+ * The queue has two lanes: {@link ControlBroadcast}s go to the control lane,
+ * which {@link #take()} always empties first, and everything else to the data
+ * lane. Each lane is first-in first-out. A semaphore counts the queued
+ * messages of both lanes, so the owner blocks on a single permit whichever
+ * lane a message arrives in.
+ */
+final class Mailbox {
+
+    private final ConcurrentLinkedQueue<Message> control = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Message> data = new ConcurrentLinkedQueue<>();
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param message  The message, possibly in a {@link StampedMessage} envelope.
+     * @param priority true to queue it in the control lane.
+     */
+    void put(Message message, boolean priority) throws InterruptedException {
+        inFlight.incrementAndGet();
+        (priority ? control : data).add(message);
+        queued.release();
+    }
+
+    /**
+     * Takes the oldest control message, or the oldest data message if there
+     * is no control message, waiting until there is one. Only the owner takes.
+     */
+    Message take() throws InterruptedException {
+        queued.acquire();
+        Message message = control.poll();
+        return message != null ? message : data.poll();
+    }
+
+    /**
+     * Marks one previously taken message as fully handled.
+     *
+     * @return The number of messages still in flight.
+     */
+    int handled() {
+        return inFlight.decrementAndGet();
+    }
+
+    boolean isIdle() {
+        return inFlight.get() <= 0;
+    }
+
+    /**
+     * @return The number of queued messages in both lanes, not counting one being handled.
+     */
+    int size() {
+        return queued.availablePermits();
+    }
+}
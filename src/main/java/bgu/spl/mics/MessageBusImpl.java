@@ -1,15 +1,36 @@
 package bgu.spl.mics;
 
-import java.util.concurrent.BlockingQueue;
+import bgu.spl.mics.journal.MessageJournal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
 
 /**
- * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
- * Write your implementation here!
- * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class
- * All other methods and members you add the class must be private.
+ * The {@link MessageBusImpl} class is the implementation of the MessageBus interface.
+ * <p>
+ * Besides the {@link MessageBus} methods, its public API serves the
+ * framework's extensions:
+ * <ul>
+ * <li>a public constructor next to {@link #getInstance()}, so that each
+ *     simulation context can own its bus;</li>
+ * <li>filtered subscriptions, by predicate or by {@link TickFilter}, and
+ *     {@link #unsubscribeEvent(Class, MicroService)};</li>
+ * <li>{@link #sendAt(int, MicroService, Message)}, {@link #sendBroadcastInOrder(Broadcast, MicroService)}
+ *     and {@link #awaitQuiescence(MicroService)} for timed delivery and max-speed runs;</li>
+ * <li>{@link #deliverEvent(Event)} and {@link #deliverBroadcast(Broadcast)},
+ *     which a {@link MessageTransport} uses to hand over messages from other processes;</li>
+ * <li>optional hooks: {@link #setMessageObserver(MessageObserver)},
+ *     {@link #setInstrumented(boolean)}, {@link #setJournal(MessageJournal)}
+ *     and {@link #setTransport(MessageTransport)};</li>
+ * <li>{@link #queueDepth(MicroService)} for services that react to backlogs.</li>
+ * </ul>
+ * Everything else added to this class should stay private or package-private.
  */
 public class MessageBusImpl implements MessageBus {
 
@@ -19,18 +40,81 @@ public class MessageBusImpl implements MessageBus {
 	// Broadcast subscriptions
 	public final ConcurrentHashMap<Class<? extends Broadcast>, ConcurrentLinkedQueue<MicroService>> broadcastSubscribers;
 
+	// The same subscriber queues indexed by MessageTypes id, so sending needs no hash lookup
+	private volatile ConcurrentLinkedQueue<MicroService>[] eventSubscribersById;
+	private volatile ConcurrentLinkedQueue<MicroService>[] broadcastSubscribersById;
+
+	// Broadcast subscriptions with a predicate, woken only for the broadcasts it accepts
+	private final ConcurrentHashMap<Class<? extends Broadcast>, ConcurrentLinkedQueue<FilteredSubscriber>> filteredSubscribers;
+
+	// Filtered subscriptions to timed broadcasts, woken only on the ticks they asked for
+	private final ConcurrentHashMap<Class<? extends Broadcast>, TimerWheel> timerWheels;
+
+	// Messages held back until a timed broadcast reaches their due tick, guarded by itself
+	private final HierarchicalTimingWheel<DelayedMessage> delayedMessages;
+
 	// MicroService message queues
-	private final ConcurrentHashMap<MicroService, BlockingQueue<Message>> microServiceQueues;
+	private final ConcurrentHashMap<MicroService, Mailbox> microServiceQueues;
+
+	// The message types each micro-service subscribed to, so unregistering only visits its own subscriptions
+	private final ConcurrentHashMap<MicroService, Set<Class<? extends Message>>> subscribedTypes;
 
 	// Futures associated with events
 	private final ConcurrentHashMap<Event<?>, Future<?>> eventFutures;
 
+	// Optional statistics hook invoked by the micro-service loops
+	private volatile MessageObserver messageObserver;
+
+	// When set, queued messages are wrapped with their enqueue time
+	private volatile boolean instrumented;
+
+	// Optional record of every sent event and broadcast
+	private volatile MessageJournal journal;
+
+	// Optional link to the message-buses of other processes
+	private volatile MessageTransport transport;
+
+	// Threads blocked in awaitQuiescence wait on this lock
+	private final Object quiescenceLock = new Object();
+	private volatile int quiescenceWaiters;
 
-	// Constructor (private for singleton pattern)
-	private MessageBusImpl() {
+	// A message held back by sendAt together with its receiver
+	private static final class DelayedMessage {
+		final MicroService target;
+		final Message message;
+
+		DelayedMessage(MicroService target, Message message) {
+			this.target = target;
+			this.message = message;
+		}
+	}
+
+	// A broadcast subscriber together with the predicate its broadcasts must pass
+	private static final class FilteredSubscriber {
+		final MicroService subscriber;
+		final Predicate<Broadcast> filter;
+
+		FilteredSubscriber(MicroService subscriber, Predicate<Broadcast> filter) {
+			this.subscriber = subscriber;
+			this.filter = filter;
+		}
+	}
+
+	/**
+	 * Creates a message-bus independent of the shared {@link #getInstance()}
+	 * one. Micro-services bound to it see only each other, so several
+	 * simulations can run concurrently in one process.
+	 */
+	public MessageBusImpl() {
 		eventSubscribers = new ConcurrentHashMap<>();
 		broadcastSubscribers = new ConcurrentHashMap<>();
+		eventSubscribersById = newSubscriberTable(0);
+		broadcastSubscribersById = newSubscriberTable(0);
+		filteredSubscribers = new ConcurrentHashMap<>();
+		timerWheels = new ConcurrentHashMap<>();
+		delayedMessages = new HierarchicalTimingWheel<>();
 		microServiceQueues = new ConcurrentHashMap<>();
+		subscribedTypes = new ConcurrentHashMap<>();
 		eventFutures = new ConcurrentHashMap<>();
 	}
 
@@ -43,24 +127,249 @@ public class MessageBusImpl implements MessageBus {
 		return MessageBusHolder.INSTANCE;
 	}
 
+	/**
+	 * Installs the observer notified after every handled message.
+	 * <p>
+	 * @param observer The observer, or null to disable observation.
+	 */
+	public void setMessageObserver(MessageObserver observer) {
+		this.messageObserver = observer;
+	}
+
+	MessageObserver getMessageObserver() {
+		return messageObserver;
+	}
+
+	/**
+	 * Enables or disables enqueue-time stamping of messages. While disabled,
+	 * messages are queued as-is and the only cost is a single flag read.
+	 * <p>
+	 * @param enabled true to stamp every queued message.
+	 */
+	public void setInstrumented(boolean enabled) {
+		this.instrumented = enabled;
+	}
+
+	boolean isInstrumented() {
+		return instrumented;
+	}
+
+	/**
+	 * Starts or stops journaling every sent event and broadcast. While no
+	 * journal is set the only cost is a single field read per send.
+	 * <p>
+	 * @param journal The journal to append to, or null to stop journaling.
+	 */
+	public void setJournal(MessageJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Connects this bus to other processes. While no transport is set the only
+	 * cost is a single field read per subscription, send and completion.
+	 * <p>
+	 * @param transport The transport, or null to run in this process only.
+	 */
+	public void setTransport(MessageTransport transport) {
+		this.transport = transport;
+	}
+
+	// Tells the transport, if any, about a local subscription
+	private void announce(Class<? extends Message> type) {
+		MessageTransport current = transport;
+		if (current != null) {
+			current.subscribed(type);
+		}
+	}
+
+	// Appends a sent message to the journal, if any
+	private void journal(Message message, MicroService sender) {
+		MessageJournal current = journal;
+		if (current != null) {
+			current.append(message, sender);
+		}
+	}
+
+	// Wraps the message with its enqueue time if instrumentation is on
+	private Message envelope(Message message) {
+		return instrumented ? new StampedMessage(message, System.nanoTime()) : message;
+	}
+
+	// Queues a message, in the control lane if it is a control broadcast
+	private void enqueue(Mailbox queue, Message message) throws InterruptedException {
+		queue.put(envelope(message), message instanceof ControlBroadcast);
+	}
+
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
 		// Add the microservice to the list of subscribers for the given event type
 		if (type != null && m != null) {
-			eventSubscribers.putIfAbsent(type, new ConcurrentLinkedQueue<>());
-			eventSubscribers.get(type).add(m);
+			ConcurrentLinkedQueue<MicroService> queue = eventSubscribers.computeIfAbsent(type, k -> new ConcurrentLinkedQueue<>());
+			synchronized (this) {
+				eventSubscribersById = index(eventSubscribersById, type, queue);
+			}
+			queue.add(m);
+			recordSubscription(m, type);
+			announce(type);
 		}
 
 	}
 
+	/**
+	 * Stops round-robin delivery of events of type {@code type} to {@code m}.
+	 * Once this returns, every event that was dispatched to {@code m} is
+	 * already in its mailbox, so a service can drain its share of the work
+	 * before it unregisters.
+	 * <p>
+	 * @param type The event type to unsubscribe from.
+	 * @param m    The micro-service.
+	 */
+	public void unsubscribeEvent(Class<? extends Event<?>> type, MicroService m) {
+		if (type != null && m != null) {
+			ConcurrentLinkedQueue<MicroService> queue = eventSubscribers.get(type);
+			if (queue != null) {
+				synchronized (queue) { // Waits for a dispatch that picked m to finish queuing its event
+					queue.remove(m);
+				}
+			}
+			Set<Class<? extends Message>> types = subscribedTypes.get(m);
+			if (types != null) {
+				types.remove(type);
+			}
+		}
+	}
+
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
 		// Add the microservice to the list of subscribers for the given broadcast type
 		if (type != null && m != null) {
-			broadcastSubscribers.putIfAbsent(type, new ConcurrentLinkedQueue<>());
-			broadcastSubscribers.get(type).add(m);
+			ConcurrentLinkedQueue<MicroService> queue = broadcastSubscribers.computeIfAbsent(type, k -> new ConcurrentLinkedQueue<>());
+			synchronized (this) {
+				broadcastSubscribersById = index(broadcastSubscribersById, type, queue);
+			}
+			queue.add(m);
+			recordSubscription(m, type);
+			announce(type);
+		}
+
+	}
+
+	// Adds a type to the reverse index of m's subscriptions
+	private void recordSubscription(MicroService m, Class<? extends Message> type) {
+		subscribedTypes.computeIfAbsent(m, k -> ConcurrentHashMap.newKeySet()).add(type);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ConcurrentLinkedQueue<MicroService>[] newSubscriberTable(int size) {
+		return (ConcurrentLinkedQueue<MicroService>[]) new ConcurrentLinkedQueue<?>[size];
+	}
+
+	// Returns a table that maps the type's id to its queue, copying the table if it has to change; callers hold the bus lock
+	private static ConcurrentLinkedQueue<MicroService>[] index(ConcurrentLinkedQueue<MicroService>[] table,
+			Class<?> type, ConcurrentLinkedQueue<MicroService> queue) {
+		int id = MessageTypes.idOf(type);
+		if (id < table.length && table[id] == queue) {
+			return table;
 		}
+		ConcurrentLinkedQueue<MicroService>[] copy = id < table.length
+				? table.clone()
+				: Arrays.copyOf(table, Math.max(id + 1, MessageTypes.count()));
+		copy[id] = queue;
+		return copy;
+	}
+
+	// Looks up the subscribers of a message type by its id
+	private static ConcurrentLinkedQueue<MicroService> subscribersOf(ConcurrentLinkedQueue<MicroService>[] table, Class<?> type) {
+		int id = MessageTypes.idOf(type);
+		return id < table.length ? table[id] : null;
+	}
+
+	/**
+	 * Subscribes {@code m} to the broadcasts of type {@code type} that
+	 * {@code filter} accepts. The filter is evaluated by the sending thread,
+	 * so a broadcast it rejects is never queued and {@code m} is not woken
+	 * for it; it should be cheap and free of side effects.
+	 * <p>
+	 * @param <B>    The broadcast type.
+	 * @param type   The type to subscribe to.
+	 * @param m      The subscribing micro-service.
+	 * @param filter The broadcasts {@code m} wants to receive.
+	 */
+	@SuppressWarnings("unchecked")
+	public <B extends Broadcast> void subscribeBroadcast(Class<B> type, MicroService m, Predicate<? super B> filter) {
+		if (type != null && m != null && filter != null) {
+			filteredSubscribers.computeIfAbsent(type, k -> new ConcurrentLinkedQueue<>())
+					.add(new FilteredSubscriber(m, (Predicate<Broadcast>) filter));
+			recordSubscription(m, type);
+			announce(type);
+		}
+	}
+
+	// Returns the filtered subscribers of a broadcast's type, or null if it has none
+	private ConcurrentLinkedQueue<FilteredSubscriber> filteredSubscribersOf(Broadcast b) {
+		return filteredSubscribers.isEmpty() ? null : filteredSubscribers.get(b.getClass());
+	}
+
+	/**
+	 * Subscribes {@code m} to the timed broadcasts of type {@code type} whose
+	 * tick is accepted by {@code filter}. The subscription is kept in a timer
+	 * wheel, so a subscriber that is due rarely costs nothing on the other ticks.
+	 * If the sender skips a tick that {@code m} was due at, {@code m} receives
+	 * the next broadcast instead.
+	 * <p>
+	 * @param type   The type to subscribe to.
+	 * @param m      The subscribing micro-service.
+	 * @param filter The ticks {@code m} wants to receive.
+	 */
+	public void subscribeBroadcast(Class<? extends TimedBroadcast> type, MicroService m, TickFilter filter) {
+		if (type != null && m != null && filter != null) {
+			timerWheels.computeIfAbsent(type, k -> new TimerWheel()).schedule(m, filter);
+			recordSubscription(m, type);
+			announce(type);
+		}
+	}
+
+	// Advances the timer wheel of a timed broadcast and returns the filtered subscribers due now
+	private List<MicroService> dueSubscribers(Broadcast b) {
+		TimerWheel wheel = timerWheels.get(b.getClass());
+		if (wheel == null || !(b instanceof TimedBroadcast)) {
+			return Collections.emptyList();
+		}
+		return wheel.advance(((TimedBroadcast) b).getTime());
+	}
+
+	/**
+	 * Holds {@code message} back and adds it to {@code target}'s queue when the
+	 * first timed broadcast with a time of at least {@code tick} is sent, just
+	 * before that broadcast itself is delivered. A message whose tick has
+	 * already been reached is queued immediately. Events sent this way get no
+	 * {@link Future}, and messages for a service that has unregistered by then
+	 * are dropped.
+	 * <p>
+	 * @param tick    The tick at which to deliver the message.
+	 * @param target  The receiving micro-service.
+	 * @param message The message to deliver.
+	 */
+	public void sendAt(int tick, MicroService target, Message message) {
+		if (target != null && message != null) {
+			boolean held;
+			synchronized (delayedMessages) {
+				held = delayedMessages.add(tick, new DelayedMessage(target, message));
+			}
+			if (!held) {
+				deliver(message, target);
+			}
+		}
+	}
 
+	// Advances the delayed-message wheel to the time of a timed broadcast and returns the messages now due
+	private List<DelayedMessage> releaseDelayed(Broadcast b) {
+		if (!(b instanceof TimedBroadcast)) {
+			return Collections.emptyList();
+		}
+		synchronized (delayedMessages) {
+			return delayedMessages.advance(((TimedBroadcast) b).getTime());
+		}
 	}
 
 	@Override
@@ -70,51 +379,140 @@ public class MessageBusImpl implements MessageBus {
 			if (future != null) {
 				future.resolve(result);
 			}
+			MessageTransport current = transport;
+			if (current != null) {
+				current.completed(e, result);
+			}
 		}
 
 	}
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
+		sendBroadcast(b, null);
+	}
+
+	// Sends a broadcast on behalf of sender, which is only used for journaling
+	void sendBroadcast(Broadcast b, MicroService sender) {
 		if (b != null) {
-			ConcurrentLinkedQueue<MicroService> subscribers = broadcastSubscribers.get(b.getClass());
-			if (subscribers != null) {
-				for (MicroService microService : subscribers) {
-					BlockingQueue<Message> queue = microServiceQueues.get(microService);
-					if(queue != null) {
-						try {
-							queue.put(b); // Blocking operation if the queue is full
-						} catch (InterruptedException ex) {
-							Thread.currentThread().interrupt();
-						}
-					}
+			journal(b, sender);
+			publish(b);
+			MessageTransport current = transport;
+			if (current != null) {
+				current.broadcast(b);
+			}
+		}
+	}
+
+	/**
+	 * Delivers a broadcast received from another process to the local
+	 * subscribers only.
+	 * <p>
+	 * @param b The broadcast.
+	 */
+	public void deliverBroadcast(Broadcast b) {
+		if (b != null) {
+			journal(b, null);
+			publish(b);
+		}
+	}
+
+	// Delivers a broadcast to the local subscribers
+	private void publish(Broadcast b) {
+		for (DelayedMessage delayed : releaseDelayed(b)) {
+			deliver(delayed.message, delayed.target);
+		}
+		ConcurrentLinkedQueue<MicroService> subscribers = subscribersOf(broadcastSubscribersById, b.getClass());
+		if (subscribers != null) {
+			for (MicroService microService : subscribers) {
+				deliver(b, microService);
+			}
+		}
+		ConcurrentLinkedQueue<FilteredSubscriber> filtered = filteredSubscribersOf(b);
+		if (filtered != null) {
+			for (FilteredSubscriber subscription : filtered) {
+				if (subscription.filter.test(b)) {
+					deliver(b, subscription.subscriber);
 				}
 			}
 		}
+		for (MicroService microService : dueSubscribers(b)) {
+			deliver(b, microService);
+		}
+	}
 
+	private void deliver(Message message, MicroService microService) {
+		Mailbox queue = microServiceQueues.get(microService);
+		if(queue != null) {
+			try {
+				enqueue(queue, message);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
+		return sendEvent(e, null);
+	}
+
+	// Sends an event on behalf of sender, which is only used for journaling
+	<T> Future<T> sendEvent(Event<T> e, MicroService sender) {
 		if (e != null) {
+			journal(e, sender);
+			Future<T> future = dispatch(e);
+			MessageTransport current = transport;
+			if (future == null && current != null) {
+				return current.sendEvent(e); // No local subscriber; maybe another process has one
+			}
+			return future;
+		}
+		return null;
+	}
 
-			// Check if there are subscribers for the event type
-			ConcurrentLinkedQueue<MicroService> subscribers = eventSubscribers.get(e.getClass());
-			if (subscribers!= null && !subscribers.isEmpty()) {
-				// Create and store the Future only if there are subscribers
-				Future<T> future = new Future<>();
-				eventFutures.put(e, future);
+	/**
+	 * Delivers an event received from another process to a local subscriber only.
+	 * <p>
+	 * @param <T> The event's result type.
+	 * @param e   The event.
+	 * @return The event's local future, or null if no local micro-service subscribes to it.
+	 */
+	public <T> Future<T> deliverEvent(Event<T> e) {
+		if (e != null) {
+			journal(e, null);
+			return dispatch(e);
+		}
+		return null;
+	}
 
-				// Use round-robin to dispatch the event
-				MicroService m = subscribers.poll(); // Remove the first subscriber
-				if (m != null) {
-					subscribers.add(m); // Add it back to the end of the queue
+	// Queues an event to the next local subscriber in round-robin order
+	private <T> Future<T> dispatch(Event<T> e) {
+		// Check if there are subscribers for the event type
+		ConcurrentLinkedQueue<MicroService> subscribers = subscribersOf(eventSubscribersById, e.getClass());
+		if (subscribers!= null && !subscribers.isEmpty()) {
+			// Picking the subscriber and queuing the event happen under the queue's lock, so unsubscribeEvent
+			// can tell when no more events will reach a service
+			synchronized (subscribers) {
+				// Use round-robin to dispatch the event, skipping services that are unregistering
+				Mailbox queue = null;
+				MicroService m;
+				while (queue == null && (m = subscribers.poll()) != null) { // Remove the first subscriber
+					queue = microServiceQueues.get(m);
+					if (queue != null) {
+						subscribers.add(m); // Add it back to the end of the queue
+					}
+				}
+
+				if (queue != null) {
+					// Create and store the Future only if there is a live subscriber
+					Future<T> future = new Future<>();
+					eventFutures.put(e, future);
 
 					// Add the event to the subscriber's message queue
-					BlockingQueue<Message> queue = microServiceQueues.get(m);
 					try {
-						queue.put(e); // Blocking operation if the queue is full
+						enqueue(queue, e);
 					} catch (InterruptedException ex) {
 						Thread.currentThread().interrupt();
 					}
@@ -129,7 +527,7 @@ public class MessageBusImpl implements MessageBus {
 	@Override
 	public void register(MicroService m) {
 		if (m != null) {
-			microServiceQueues.putIfAbsent(m, new LinkedBlockingQueue<>());
+			microServiceQueues.putIfAbsent(m, new Mailbox());
 		}
 
 	}
@@ -137,31 +535,170 @@ public class MessageBusImpl implements MessageBus {
 	@Override
 	public void unregister(MicroService m) {
 		if (m != null) {
-			microServiceQueues.remove(m);
-
-			// Remove the microservice from all event subscriptions
-			for (ConcurrentLinkedQueue<MicroService> queue : eventSubscribers.values()) {
-				queue.remove(m);
+			if (microServiceQueues.remove(m) != null) {
+				signalQuiescenceWaiters(); // Its pending messages no longer count
 			}
 
-			// Remove the microservice from all broadcast subscriptions
-			for (ConcurrentLinkedQueue<MicroService> queue : broadcastSubscribers.values()) {
-				queue.remove(m);
+			// Remove the microservice from the subscriptions it made, and only those
+			Set<Class<? extends Message>> types = subscribedTypes.remove(m);
+			if (types != null) {
+				for (Class<? extends Message> type : types) {
+					ConcurrentLinkedQueue<MicroService> events = eventSubscribers.get(type);
+					if (events != null) {
+						synchronized (events) {
+							events.remove(m);
+						}
+					}
+					ConcurrentLinkedQueue<MicroService> broadcasts = broadcastSubscribers.get(type);
+					if (broadcasts != null) {
+						broadcasts.remove(m);
+					}
+					ConcurrentLinkedQueue<FilteredSubscriber> filtered = filteredSubscribers.get(type);
+					if (filtered != null) {
+						filtered.removeIf(subscription -> subscription.subscriber == m);
+					}
+					TimerWheel wheel = timerWheels.get(type);
+					if (wheel != null) {
+						wheel.remove(m);
+					}
+				}
 			}
 		}
 	}
 
+	/**
+	 * @param m A micro-service.
+	 * @return The number of messages waiting in {@code m}'s mailbox, or 0 if it is not registered.
+	 */
+	public int queueDepth(MicroService m) {
+		Mailbox queue = m == null ? null : microServiceQueues.get(m);
+		return queue == null ? 0 : queue.size();
+	}
+
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
+		Message message = awaitEnvelope(m);
+		return message instanceof StampedMessage ? ((StampedMessage) message).message : message;
+	}
+
+	/**
+	 * Same as {@link #awaitMessage(MicroService)} but returns the raw mailbox
+	 * entry, which is a {@link StampedMessage} when instrumentation is on.
+	 */
+	Message awaitEnvelope(MicroService m) throws InterruptedException {
 		if (m == null || !microServiceQueues.containsKey(m)) {
 			throw new IllegalStateException("MicroService is not registered.");
 		}
 
 		// Retrieve the MicroService's message queue
-		BlockingQueue<Message> queue = microServiceQueues.get(m);
+		Mailbox queue = microServiceQueues.get(m);
 
 		// Take the next message (blocking until available)
 		return queue.take();
 	}
 
+	/**
+	 * Delivers {@code b} to its subscribers one at a time, in subscription
+	 * order, waiting for the system to become quiescent after each delivery.
+	 * Every subscriber therefore sees the effects of all earlier subscribers'
+	 * handling, which makes a run reproducible regardless of thread scheduling.
+	 * Delayed messages that fall due are delivered first, then unfiltered
+	 * subscribers, then the subscribers whose predicate accepts {@code b},
+	 * then the filtered subscribers due now. Subscribers in other
+	 * processes get the broadcast last and are not waited for.
+	 * <p>
+	 * @param b      The broadcast to deliver.
+	 * @param caller The sending micro-service, whose own mailbox is ignored.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void sendBroadcastInOrder(Broadcast b, MicroService caller) throws InterruptedException {
+		journal(b, caller);
+		for (DelayedMessage delayed : releaseDelayed(b)) {
+			deliverAndWait(delayed.message, delayed.target, caller);
+		}
+		ConcurrentLinkedQueue<MicroService> subscribers = subscribersOf(broadcastSubscribersById, b.getClass());
+		if (subscribers != null) {
+			for (MicroService microService : subscribers) {
+				deliverAndWait(b, microService, caller);
+			}
+		}
+		ConcurrentLinkedQueue<FilteredSubscriber> filtered = filteredSubscribersOf(b);
+		if (filtered != null) {
+			for (FilteredSubscriber subscription : filtered) {
+				if (subscription.filter.test(b)) {
+					deliverAndWait(b, subscription.subscriber, caller);
+				}
+			}
+		}
+		for (MicroService microService : dueSubscribers(b)) {
+			deliverAndWait(b, microService, caller);
+		}
+		MessageTransport current = transport;
+		if (current != null) {
+			current.broadcast(b);
+		}
+	}
+
+	private void deliverAndWait(Message message, MicroService microService, MicroService caller) throws InterruptedException {
+		Mailbox queue = microServiceQueues.get(microService);
+		if (queue != null) {
+			enqueue(queue, message);
+			awaitQuiescence(caller);
+		}
+	}
+
+	/**
+	 * @return The mailbox allocated to {@code m}, or null if it is not registered.
+	 */
+	Mailbox mailboxOf(MicroService m) {
+		return microServiceQueues.get(m);
+	}
+
+	/**
+	 * Called by a micro-service loop once it has completely handled a message
+	 * taken from {@code mailbox}, including every message its callback sent.
+	 */
+	void messageHandled(Mailbox mailbox) {
+		if (mailbox.handled() <= 0 && quiescenceWaiters > 0) {
+			signalQuiescenceWaiters();
+		}
+	}
+
+	/**
+	 * Blocks until every registered micro-service other than {@code caller} has
+	 * an empty mailbox and is not handling a message. Since a callback's own
+	 * sends are counted before the message that triggered it is released, this
+	 * means every cascade started by earlier sends has run to completion.
+	 * <p>
+	 * @param caller The waiting micro-service, whose own mailbox is ignored.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void awaitQuiescence(MicroService caller) throws InterruptedException {
+		synchronized (quiescenceLock) {
+			quiescenceWaiters++;
+			try {
+				while (!isQuiescent(caller)) {
+					quiescenceLock.wait(1); // Bounded wait guards against a missed signal
+				}
+			} finally {
+				quiescenceWaiters--;
+			}
+		}
+	}
+
+	private boolean isQuiescent(MicroService caller) {
+		for (Map.Entry<MicroService, Mailbox> entry : microServiceQueues.entrySet()) {
+			if (entry.getKey() != caller && !entry.getValue().isIdle()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void signalQuiescenceWaiters() {
+		synchronized (quiescenceLock) {
+			quiescenceLock.notifyAll();
+		}
+	}
+
 }
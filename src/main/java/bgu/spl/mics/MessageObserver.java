@@ -0,0 +1,23 @@
+package bgu.spl.mics;
+
+/**
+ * An optional hook notified by every {@link MicroService} event loop after a
+ * message callback has run. It lets the application collect per-message-type
+ * statistics without the framework depending on application classes.
+ * Implementations are called from many service threads concurrently and must
+ * be thread-safe and cheap.
+ */
+public interface MessageObserver {
+
+    /**
+     * Called after {@code m} finished handling {@code message}.
+     * <p>
+     * @param m              The micro-service that handled the message.
+     * @param message        The handled message.
+     * @param queueWaitNanos The time the message spent in {@code m}'s mailbox,
+     *                       or -1 if the bus was not stamping messages.
+     * @param callbackNanos  The time spent inside the callback, in nanoseconds,
+     *                       or -1 if the bus is not instrumented.
+     */
+    void onMessageHandled(MicroService m, Message message, long queueWaitNanos, long callbackNanos);
+}
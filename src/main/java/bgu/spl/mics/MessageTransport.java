@@ -0,0 +1,49 @@
+package bgu.spl.mics;
+
+/**
+ * An optional hook that connects a {@link MessageBusImpl} to message-buses
+ * in other processes, so the micro-services of one simulation can be spread
+ * over several JVMs.
+ * <p>
+ * The bus calls the transport for everything that may concern the other
+ * processes; messages arriving from them are handed back through
+ * {@link MessageBusImpl#deliverBroadcast} and {@link MessageBusImpl#deliverEvent},
+ * which deliver to local subscribers only. Implementations are called from
+ * many service threads concurrently and must be thread-safe.
+ */
+public interface MessageTransport {
+
+    /**
+     * Called whenever a local micro-service subscribes to {@code type}.
+     * <p>
+     * @param type The event or broadcast type.
+     */
+    void subscribed(Class<? extends Message> type);
+
+    /**
+     * Called after a broadcast has been delivered to the local subscribers.
+     * <p>
+     * @param b The broadcast to pass on to the other processes' subscribers.
+     */
+    void broadcast(Broadcast b);
+
+    /**
+     * Called for an event that no local micro-service subscribes to.
+     * <p>
+     * @param <T> The event's result type.
+     * @param e   The event.
+     * @return A future resolved when a remote subscriber completes the event,
+     *         or null if no other process subscribes to its type.
+     */
+    <T> Future<T> sendEvent(Event<T> e);
+
+    /**
+     * Called when a local micro-service completes an event, so that events
+     * received from another process can be resolved there.
+     * <p>
+     * @param <T>    The event's result type.
+     * @param e      The completed event.
+     * @param result Its result.
+     */
+    <T> void completed(Event<T> e, T result);
+}
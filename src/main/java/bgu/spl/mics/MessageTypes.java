@@ -0,0 +1,42 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns every {@link Message} class a small, dense integer id the first
+ * time it is seen, normally when a micro-service subscribes to it. The
+ * message-bus and the micro-service loops use the id to index plain arrays of
+ * subscribers and callbacks instead of hashing the class on every message.
+ * <p>
+ * Ids are cached on the class itself through a {@link ClassValue}, so looking
+ * one up costs a field read in the common case and never takes a lock.
+ */
+public final class MessageTypes {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static final ClassValue<Integer> IDS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return NEXT_ID.getAndIncrement();
+        }
+    };
+
+    private MessageTypes() {
+    }
+
+    /**
+     * @param type A message class.
+     * @return The id of {@code type}, assigning the next free one on first use.
+     */
+    public static int idOf(Class<?> type) {
+        return IDS.get(type);
+    }
+
+    /**
+     * @return An upper bound on the ids assigned so far.
+     */
+    public static int count() {
+        return NEXT_ID.get();
+    }
+}
@@ -1,6 +1,10 @@
 package bgu.spl.mics;
 
-import java.util.concurrent.ConcurrentHashMap;
+import bgu.spl.mics.logging.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
 
 /**
  * The MicroService is an abstract class that any micro-service in the system
@@ -16,15 +20,30 @@ import java.util.concurrent.ConcurrentHashMap;
  * message-queue (see {@link MessageBus#register(bgu.spl.mics.MicroService)}
  * method). The abstract MicroService stores this callback together with the
  * type of the message is related to.
- * 
- * Only private fields and methods may be added to this class.
  * <p>
+ * Beyond the original send, subscribe, complete and terminate wrappers, the
+ * protected API covers the framework's extensions:
+ * <ul>
+ * <li>filtered subscriptions, by predicate or by {@link TickFilter}, and
+ *     {@link #unsubscribeEvent(Class)} for leaving an event's round-robin;</li>
+ * <li>{@link #sendToSelfAt(int, Message)} for messages held back until a tick;</li>
+ * <li>{@link #sendBroadcastInOrder(Broadcast)} and {@link #awaitQuiescence()}
+ *     for the time service's max-speed mode;</li>
+ * <li>{@link #getQueueDepth()} for services that react to their backlog.</li>
+ * </ul>
+ * The public {@link #awaitInitialization()} lets whoever starts a service wait
+ * until its subscriptions are in place. Anything else added to this class
+ * should stay private.
  */
 public abstract class MicroService implements Runnable {
 
+    private static final Logger LOG = Logger.getLogger(MicroService.class);
+
     public volatile boolean terminated = false;
     private final String name;
-    private final ConcurrentHashMap<Class<? extends Message>, Callback<?>> callbacks = new ConcurrentHashMap<>();
+    private final MessageBusImpl bus;
+    private volatile Callback<?>[] callbacks = new Callback<?>[0]; // Indexed by MessageTypes id
+    private final CountDownLatch initialized = new CountDownLatch(1);
 
 
     /**
@@ -32,7 +51,18 @@ public abstract class MicroService implements Runnable {
      *             does not have to be unique)
      */
     public MicroService(String name) {
+        this(name, MessageBusImpl.getInstance());
+    }
+
+    /**
+     * @param name the micro-service name (used mainly for debugging purposes -
+     *             does not have to be unique)
+     * @param bus  the message-bus this micro-service registers with, letting
+     *             several independent systems run side by side in one process
+     */
+    public MicroService(String name, MessageBusImpl bus) {
         this.name = name;
+        this.bus = bus;
     }
 
     /**
@@ -58,11 +88,23 @@ public abstract class MicroService implements Runnable {
      */
     protected final <T, E extends Event<T>> void subscribeEvent(Class<E> type, Callback<E> callback) {
         if(type != null && callback != null) {
-            MessageBusImpl.getInstance().subscribeEvent(type, this);
-            callbacks.put(type, callback);
+            bus.subscribeEvent(type, this);
+            putCallback(type, callback);
         }
     }
 
+    /**
+     * Stops receiving events of type {@code type}. Events already dispatched
+     * to this micro-service are still queued and handled with the callback
+     * that was subscribed.
+     * <p>
+     * @param type The {@link Class} representing the type of event to
+     *             unsubscribe from.
+     */
+    protected final void unsubscribeEvent(Class<? extends Event<?>> type) {
+        bus.unsubscribeEvent(type, this);
+    }
+
     /**
      * Subscribes to broadcast message of type {@code type} with the callback
      * {@code callback}. This means two things:
@@ -85,8 +127,52 @@ public abstract class MicroService implements Runnable {
      */
     protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, Callback<B> callback) {
         if (type != null && callback != null) {
-            MessageBusImpl.getInstance().subscribeBroadcast(type, this);
-            callbacks.put(type, callback);
+            bus.subscribeBroadcast(type, this);
+            putCallback(type, callback);
+        }
+    }
+
+    /**
+     * Subscribes to the broadcasts of type {@code type} that {@code filter}
+     * accepts, e.g. only those from a particular sender. The message-bus
+     * evaluates the filter when the broadcast is sent, so the service is not
+     * woken at all for the others.
+     * <p>
+     * @param <B>      The type of broadcast message to subscribe to
+     * @param type     The {@link Class} representing the type of broadcast
+     *                 message to subscribe to.
+     * @param filter   The broadcasts this service wants to receive; it runs on
+     *                 the sender's thread, so it should be cheap and free of side effects.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <B extends Broadcast> void subscribeBroadcast(Class<B> type, Predicate<? super B> filter, Callback<B> callback) {
+        if (type != null && filter != null && callback != null) {
+            putCallback(type, callback);
+            bus.subscribeBroadcast(type, this, filter);
+        }
+    }
+
+    /**
+     * Subscribes to the timed broadcasts of type {@code type} at the ticks
+     * accepted by {@code filter} only, e.g. {@link TickFilter#every(int)} or a
+     * precomputed set of ticks. The service is not woken at all on other ticks;
+     * if the sender skips a tick the service was due at, it receives the next
+     * one instead.
+     * <p>
+     * @param <B>      The type of timed broadcast message to subscribe to
+     * @param type     The {@link Class} representing the type of broadcast
+     *                 message to subscribe to.
+     * @param filter   The ticks this service wants to receive.
+     * @param callback The callback that should be called when messages of type
+     *                 {@code type} are taken from this micro-service message
+     *                 queue.
+     */
+    protected final <B extends TimedBroadcast> void subscribeBroadcast(Class<B> type, TickFilter filter, Callback<B> callback) {
+        if (type != null && filter != null && callback != null) {
+            putCallback(type, callback);
+            bus.subscribeBroadcast(type, this, filter);
         }
     }
 
@@ -103,7 +189,7 @@ public abstract class MicroService implements Runnable {
      * 	       			null in case no micro-service has subscribed to {@code e.getClass()}.
      */
     protected final <T> Future<T> sendEvent(Event<T> e) {
-        return MessageBusImpl.getInstance().sendEvent(e);
+        return bus.sendEvent(e, this);
     }
 
     /**
@@ -113,7 +199,32 @@ public abstract class MicroService implements Runnable {
      * @param b The broadcast message to send
      */
     protected final void sendBroadcast(Broadcast b) {
-            MessageBusImpl.getInstance().sendBroadcast(b);
+            bus.sendBroadcast(b, this);
+    }
+
+    /**
+     * Puts {@code message} back into this micro-service's own queue once the
+     * time reaches {@code tick}, i.e. just before the first timed broadcast
+     * for that tick or a later one is delivered. Lets a service hold back work
+     * that is not due yet without keeping and rescanning a buffer of its own.
+     * <p>
+     * @param tick    The tick at which the message should be handled.
+     * @param message The message to handle then; events get no {@link Future}.
+     */
+    protected final void sendToSelfAt(int tick, Message message) {
+        bus.sendAt(tick, this, message);
+    }
+
+    /**
+     * Sends the broadcast message {@code b} to its subscribers one at a time,
+     * waiting after each delivery until every service is idle again.
+     * Used to advance time deterministically in max-speed mode.
+     * <p>
+     * @param b The broadcast message to send
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    protected final void sendBroadcastInOrder(Broadcast b) throws InterruptedException {
+        bus.sendBroadcastInOrder(b, this);
     }
 
     /**
@@ -127,7 +238,7 @@ public abstract class MicroService implements Runnable {
      *               {@code e}.
      */
     protected final <T> void complete(Event<T> e, T result) {
-        MessageBusImpl.getInstance().complete(e, result);
+        bus.complete(e, result);
     }
 
     /**
@@ -142,7 +253,7 @@ public abstract class MicroService implements Runnable {
     protected final void terminate() {
 
         this.terminated = true;
-        System.out.println(getName() + ": Terminate method called. Termination flag set to true.");
+        LOG.debug(() -> getName() + ": Terminate method called. Termination flag set to true.");
     }
 
     /**
@@ -159,33 +270,105 @@ public abstract class MicroService implements Runnable {
      */
     @Override
     public final void run() {
-        MessageBusImpl.getInstance().register(this);
-        initialize();
+        bus.register(this);
+        Mailbox mailbox = bus.mailboxOf(this);
+        try {
+            initialize();
+        } finally {
+            initialized.countDown();
+        }
         try {
             while (!terminated) {
                 try {
-                    Message message = MessageBusImpl.getInstance().awaitMessage(this);
+                    Message message = bus.awaitEnvelope(this);
                     if (message == null) { // Handle null messages (if any)
                         continue;
                     }
-                    Callback callback = callbacks.get(message.getClass());
-                    if (callback != null) {
-                        callback.call(message);
+                    try {
+                        dispatch(message);
+                    } finally {
+                        bus.messageHandled(mailbox);
                     }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt(); // Restore interrupted status
-                    System.out.println(getName() + " was interrupted and is terminating.");
+                    LOG.info(getName() + " was interrupted and is terminating.");
                     break;
                 } catch (Exception e) {
-                    System.err.println("Error in " + getName() + ": " + e.getMessage());
-                    e.printStackTrace();
+                    LOG.error("Error in " + getName() + ": " + e.getMessage(), e);
                 }
             }
         } finally {
-            MessageBusImpl.getInstance().unregister(this);
-            System.out.println(getName() + " unregistered from the MessageBus.");
+            bus.unregister(this);
+            LOG.debug(() -> getName() + " unregistered from the MessageBus.");
+        }
+    }
+
+    // Stores the callback at the message type's id, growing the copy-on-write table if needed
+    private synchronized void putCallback(Class<? extends Message> type, Callback<?> callback) {
+        int id = MessageTypes.idOf(type);
+        Callback<?>[] table = callbacks;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(id + 1, MessageTypes.count()));
+        } else {
+            table = table.clone();
         }
+        table[id] = callback;
+        callbacks = table;
     }
 
+    // Runs the callback registered for the message type and reports it to the observer, timed on an instrumented bus
+    private void dispatch(Message message) {
+        long enqueueNanos = -1;
+        if (message instanceof StampedMessage) {
+            enqueueNanos = ((StampedMessage) message).enqueueNanos;
+            message = ((StampedMessage) message).message;
+        }
+        Callback<?>[] table = callbacks;
+        int id = MessageTypes.idOf(message.getClass());
+        Callback callback = id < table.length ? table[id] : null;
+        if (callback != null) {
+            MessageObserver observer = bus.getMessageObserver();
+            if (observer == null) {
+                callback.call(message);
+            } else if (!bus.isInstrumented()) {
+                callback.call(message);
+                observer.onMessageHandled(this, message, -1, -1);
+            } else {
+                long start = System.nanoTime();
+                callback.call(message);
+                long end = System.nanoTime();
+                long queueWait = enqueueNanos < 0 ? -1 : start - enqueueNanos;
+                observer.onMessageHandled(this, message, queueWait, end - start);
+            }
+        }
+    }
+
+    /**
+     * Blocks until this micro-service has finished {@link #initialize()},
+     * i.e. until all of its subscriptions are in place.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public final void awaitInitialization() throws InterruptedException {
+        initialized.await();
+    }
+
+    /**
+     * @return The number of messages waiting in this micro-service's queue,
+     *         not counting the one being handled.
+     */
+    protected final int getQueueDepth() {
+        return bus.queueDepth(this);
+    }
+
+    /**
+     * Blocks until every other micro-service has handled all of its pending
+     * messages, including everything those messages caused to be sent.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    protected final void awaitQuiescence() throws InterruptedException {
+        bus.awaitQuiescence(this);
+    }
 
 }
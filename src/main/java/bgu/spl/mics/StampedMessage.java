@@ -0,0 +1,19 @@
+package bgu.spl.mics;
+
+/**
+ * Mailbox envelope used by {@link MessageBusImpl} while instrumentation is
+ * enabled. It pairs a message with the {@link System#nanoTime()} reading taken
+ * when the message was enqueued so the receiving {@link MicroService} can
+ * measure how long it waited. Envelopes never leave the framework:
+ * {@link MessageBusImpl#awaitMessage(MicroService)} unwraps them.
+ */
+final class StampedMessage implements Message {
+
+    final Message message;
+    final long enqueueNanos;
+
+    StampedMessage(Message message, long enqueueNanos) {
+        this.message = message;
+        this.enqueueNanos = enqueueNanos;
+    }
+}
@@ -0,0 +1,42 @@
+package bgu.spl.mics;
+
+/**
+ * Describes the ticks at which a micro-service wants to receive a
+ * {@link TimedBroadcast}. The message-bus only asks a filter for the next
+ * interesting tick after each delivery, so a filter may be a simple formula
+ * or a lookup in a precomputed set of ticks.
+ */
+public interface TickFilter {
+
+    /**
+     * @param tick A tick.
+     * @return The first tick after {@code tick} that should be delivered,
+     *         or -1 if no further ticks should be delivered.
+     */
+    int nextAfter(int tick);
+
+    /**
+     * @param period The distance between delivered ticks, at least 1.
+     * @return A filter accepting every tick that is a multiple of {@code period}.
+     */
+    static TickFilter every(int period) {
+        return every(period, 0);
+    }
+
+    /**
+     * @param period The distance between delivered ticks, at least 1.
+     * @param offset The first delivered tick, shifted by whole periods.
+     * @return A filter accepting the ticks {@code offset + n * period}.
+     */
+    static TickFilter every(int period, int offset) {
+        if (period < 1) {
+            throw new IllegalArgumentException("Tick period must be positive: " + period);
+        }
+        return tick -> {
+            if (tick < offset) {
+                return offset;
+            }
+            return offset + ((tick - offset) / period + 1) * period;
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package bgu.spl.mics;
+
+/**
+ * A broadcast that marks a point in simulated time, such as a clock tick.
+ * Micro-services may subscribe to timed broadcasts with a {@link TickFilter}
+ * and are then only sent the broadcasts for ticks they are interested in.
+ */
+public interface TimedBroadcast extends Broadcast {
+
+    /**
+     * @return The tick this broadcast marks.
+     */
+    int getTime();
+}
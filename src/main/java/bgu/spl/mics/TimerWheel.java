@@ -0,0 +1,104 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel holding the filtered subscriptions to one type of
+ * {@link TimedBroadcast}. Each subscription sits in the slot of the next tick
+ * it is due at, so advancing the clock by one tick only looks at the
+ * subscriptions hashed to that tick instead of asking every subscriber.
+ * <p>
+ * Ticks the clock jumps over are swept as well, and a subscription whose due
+ * tick was skipped fires at the first tick that is actually delivered.
+ * Subscriptions due more than one lap ahead share a slot with nearer ones and
+ * are simply left in place until their lap comes round.
+ */
+final class TimerWheel {
+
+    private static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    // A subscriber waiting in the wheel
+    private static final class Entry {
+        final MicroService subscriber;
+        final TickFilter filter;
+        final long order; // Subscription order, so deliveries are deterministic
+        int due;
+
+        Entry(MicroService subscriber, TickFilter filter, long order) {
+            this.subscriber = subscriber;
+            this.filter = filter;
+            this.order = order;
+        }
+    }
+
+    private final List<List<Entry>> slots = new ArrayList<>(SLOTS);
+    private int cursor; // Last tick the wheel was advanced to
+    private long nextOrder;
+
+    TimerWheel() {
+        for (int i = 0; i < SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds a subscription; its first delivery is the first tick after the
+     * last one delivered that {@code filter} accepts.
+     */
+    synchronized void schedule(MicroService subscriber, TickFilter filter) {
+        Entry entry = new Entry(subscriber, filter, nextOrder++);
+        entry.due = filter.nextAfter(cursor);
+        insert(entry);
+    }
+
+    /**
+     * Removes every subscription of {@code subscriber}.
+     */
+    synchronized void remove(MicroService subscriber) {
+        for (List<Entry> slot : slots) {
+            slot.removeIf(entry -> entry.subscriber == subscriber);
+        }
+    }
+
+    /**
+     * Advances the wheel to {@code tick} and returns the subscribers due at or
+     * before it, in subscription order. Each of them is rescheduled at the
+     * next tick its filter accepts.
+     */
+    synchronized List<MicroService> advance(int tick) {
+        List<Entry> fired = new ArrayList<>();
+        if (tick > cursor) {
+            // Sweep every slot passed since the last tick, at most one full lap
+            int swept = (int) Math.min((long) tick - cursor, SLOTS);
+            for (int i = 0; i < swept; i++) {
+                Iterator<Entry> it = slots.get((tick - i) & MASK).iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (entry.due <= tick) {
+                        it.remove();
+                        fired.add(entry);
+                    }
+                }
+            }
+            cursor = tick;
+        }
+
+        fired.sort((a, b) -> Long.compare(a.order, b.order));
+        List<MicroService> due = new ArrayList<>(fired.size());
+        for (Entry entry : fired) {
+            due.add(entry.subscriber);
+            entry.due = entry.filter.nextAfter(tick);
+            insert(entry);
+        }
+        return due;
+    }
+
+    private void insert(Entry entry) {
+        if (entry.due > 0) { // A filter with no further ticks drops out of the wheel
+            slots.get(entry.due & MASK).add(entry);
+        }
+    }
+}
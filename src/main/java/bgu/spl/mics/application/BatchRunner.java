@@ -0,0 +1,247 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.SensorDataCache;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many configuration files in one JVM, e.g. a sweep of TickTime,
+ * Duration and frequency variations over the same recordings.
+ * <p>
+ * Usage: {@code BatchRunner <directory|manifest> [threads]}. A directory is
+ * scanned for configuration files (JSON objects with a "Cameras" entry); a
+ * manifest is a text file listing one configuration path per line, relative
+ * to the manifest, with blank lines and lines starting with '#' ignored.
+ * <p>
+ * Every run gets its own {@link SimulationContext} and runs on a bounded
+ * pool, while a single {@link SensorDataCache} parses each data file once for
+ * all runs. A configuration {@code name.json} writes {@code name_output.json}
+ * next to itself, and {@code batch_report.json} collects the timing of every run.
+ */
+public class BatchRunner {
+
+    private static final Logger LOG = Logger.getLogger(BatchRunner.class);
+
+    static final String REPORT_FILE = "batch_report.json";
+    private static final String OUTPUT_SUFFIX = "_output.json";
+
+    private final int threads;
+    private final SensorDataCache sensorData = new SensorDataCache();
+
+    /**
+     * @param threads The number of simulations to run at once.
+     */
+    public BatchRunner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchRunner <configuration directory|manifest file> [threads]");
+            System.exit(1);
+        }
+        int exitCode = 0;
+        try {
+            File source = new File(args[0]).getAbsoluteFile();
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            File reportFile = new File(source.isDirectory() ? source : source.getParentFile(), REPORT_FILE);
+            JsonObject report = new BatchRunner(threads).run(findConfigurations(source));
+            writeJson(report, reportFile);
+            LOG.info("Batch report written to: " + reportFile);
+            if (report.getAsJsonObject("summary").get("failed").getAsInt() > 0) {
+                exitCode = 2;
+            }
+        } catch (Exception e) {
+            LOG.error("Error: " + e.getMessage(), e);
+            exitCode = 1;
+        }
+        AsyncAppender.getInstance().flush();
+        System.exit(exitCode);
+    }
+
+    /**
+     * Lists the configuration files of a directory or manifest.
+     *
+     * @param source A directory of configuration files or a manifest listing them.
+     * @return The configuration files, in directory-name or manifest order.
+     * @throws IOException if the source cannot be read.
+     */
+    static List<File> findConfigurations(File source) throws IOException {
+        List<File> configurations = new ArrayList<>();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles((dir, name) -> name.endsWith(".json")
+                    && !name.endsWith(OUTPUT_SUFFIX) && !name.equals(REPORT_FILE));
+            if (files == null) {
+                throw new IOException("Cannot list directory: " + source);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (isConfiguration(file)) {
+                    configurations.add(file);
+                }
+            }
+        } else {
+            for (String line : Files.readAllLines(source.toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    File file = new File(line);
+                    configurations.add(file.isAbsolute() ? file : new File(source.getParentFile(), line));
+                }
+            }
+        }
+        return configurations;
+    }
+
+    // Tells configuration files apart from the sensor data files that usually sit next to them
+    private static boolean isConfiguration(File file) {
+        try (FileReader reader = new FileReader(file)) {
+            JsonElement json = JsonParser.parseReader(reader);
+            return json.isJsonObject() && json.getAsJsonObject().has("Cameras");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs every configuration and collects their timings.
+     *
+     * @param configurations The configuration files.
+     * @return The batch report: one entry per run, in input order, and a summary.
+     */
+    public JsonObject run(List<File> configurations) {
+        LOG.info("Running " + configurations.size() + " simulations on " + threads + " threads...");
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<JsonObject>> results = new ArrayList<>();
+        try {
+            for (File configuration : configurations) {
+                results.add(pool.submit(() -> runOne(configuration)));
+            }
+            JsonArray runs = new JsonArray();
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    runs.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    runs.add(failedRun(configurations.get(i), e.getCause(), 0));
+                }
+            }
+            return report(runs, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the batch", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Runs one configuration in its own context; failures become part of the report
+    private JsonObject runOne(File configuration) {
+        String configFilePath = configuration.getAbsolutePath();
+        String name = configuration.getName().replaceFirst("\\.json$", "");
+        String outputFilePath = new File(configuration.getAbsoluteFile().getParentFile(), name + OUTPUT_SUFFIX).getPath();
+        long start = System.nanoTime();
+        try {
+            Configuration config = GurionRockRunner.loadConfiguration(configFilePath);
+            SimulationContext context = new SimulationContext(sensorData);
+            new GurionRockRunner(context).startSimulation(config, configFilePath, outputFilePath);
+            long elapsed = System.nanoTime() - start;
+
+            StatisticalFolder statistics = context.getStatistics();
+            JsonObject run = new JsonObject();
+            run.addProperty("configuration", configFilePath);
+            run.addProperty("output", outputFilePath);
+            run.addProperty("status", context.hasCrashOccurred() ? "crashed" : "completed");
+            if (context.hasCrashOccurred()) {
+                run.addProperty("faultySensor", context.getFaultySensor());
+            }
+            run.addProperty("wallMillis", elapsed / 1_000_000.0);
+            run.addProperty("systemRuntime", statistics.getSystemRuntime());
+            run.addProperty("ticksPerSecond", elapsed == 0 ? 0 : statistics.getSystemRuntime() * 1e9 / elapsed);
+            run.addProperty("numDetectedObjects", statistics.getNumDetectedObjects());
+            run.addProperty("numTrackedObjects", statistics.getNumTrackedObjects());
+            run.addProperty("numLandmarks", statistics.getNumLandmarks());
+            LOG.info(() -> "Finished " + configFilePath + " in " + elapsed / 1_000_000 + " ms");
+            return run;
+        } catch (Exception e) {
+            LOG.error("Simulation " + configFilePath + " failed: " + e.getMessage(), e);
+            return failedRun(configuration, e, System.nanoTime() - start);
+        }
+    }
+
+    private static JsonObject failedRun(File configuration, Throwable error, long elapsedNanos) {
+        JsonObject run = new JsonObject();
+        run.addProperty("configuration", configuration.getAbsolutePath());
+        run.addProperty("status", "failed");
+        run.addProperty("error", String.valueOf(error.getMessage()));
+        run.addProperty("wallMillis", elapsedNanos / 1_000_000.0);
+        return run;
+    }
+
+    // Adds the aggregate timings to the per-run entries
+    private JsonObject report(JsonArray runs, long elapsedNanos) {
+        int failed = 0;
+        double totalMillis = 0;
+        double minMillis = Double.MAX_VALUE;
+        double maxMillis = 0;
+        for (JsonElement element : runs) {
+            JsonObject run = element.getAsJsonObject();
+            if ("failed".equals(run.get("status").getAsString())) {
+                failed++;
+                continue;
+            }
+            double millis = run.get("wallMillis").getAsDouble();
+            totalMillis += millis;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+        int succeeded = runs.size() - failed;
+
+        JsonObject summary = new JsonObject();
+        summary.addProperty("runs", runs.size());
+        summary.addProperty("succeeded", succeeded);
+        summary.addProperty("failed", failed);
+        summary.addProperty("threads", threads);
+        summary.addProperty("wallMillis", elapsedNanos / 1_000_000.0);
+        summary.addProperty("totalRunMillis", totalMillis);
+        summary.addProperty("minRunMillis", succeeded == 0 ? 0 : minMillis);
+        summary.addProperty("meanRunMillis", succeeded == 0 ? 0 : totalMillis / succeeded);
+        summary.addProperty("maxRunMillis", maxMillis);
+        summary.addProperty("parsedDataFiles", sensorData.size());
+
+        JsonObject report = new JsonObject();
+        report.add("summary", summary);
+        report.add("runs", runs);
+        return report;
+    }
+
+    private static void writeJson(JsonObject json, File file) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            gson.toJson(json, writer);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package bgu.spl.mics.application;
 
+import bgu.spl.mics.application.objects.SensorStream;
 import com.google.gson.annotations.SerializedName;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Configuration {
 
@@ -17,9 +19,30 @@ public class Configuration {
     @SerializedName("TickTime")
     private int tickTime;
 
+    @SerializedName("TickTimeUnit")
+    private String tickTimeUnit; // Unit of TickTime, seconds when absent
+
     @SerializedName("Duration")
     private int duration;
 
+    @SerializedName("Instrumentation")
+    private boolean instrumentation;
+
+    @SerializedName("MaxSpeed")
+    private boolean maxSpeed;
+
+    @SerializedName("GridResolution")
+    private double gridResolution; // Cell size in meters of the occupancy grid to write, none when absent
+
+    @SerializedName("Streaming")
+    private boolean streaming; // Read the sensor data as NDJSON streams instead of loading it up front
+
+    @SerializedName("StreamReadAhead")
+    private int streamReadAhead; // Records parsed ahead of each sensor, the default when absent
+
+    @SerializedName("StreamIdleMillis")
+    private long streamIdleMillis; // How long a tailed file may stop growing before it is over, the default when absent
+
     // Getters and Setters
     public Cameras getCameras() {
         return cameras;
@@ -37,10 +60,70 @@ public class Configuration {
         return tickTime;
     }
 
+    /**
+     * @return The unit {@code TickTime} is expressed in: SECONDS (the default),
+     *         MILLISECONDS or MICROSECONDS.
+     * @throws IllegalArgumentException if the configured unit is not supported.
+     */
+    public TimeUnit getTickTimeUnit() {
+        if (tickTimeUnit == null || tickTimeUnit.trim().isEmpty()) {
+            return TimeUnit.SECONDS;
+        }
+        TimeUnit unit = TimeUnit.valueOf(tickTimeUnit.trim().toUpperCase());
+        if (unit != TimeUnit.SECONDS && unit != TimeUnit.MILLISECONDS && unit != TimeUnit.MICROSECONDS) {
+            throw new IllegalArgumentException("Unsupported TickTimeUnit: " + tickTimeUnit);
+        }
+        return unit;
+    }
+
+    public void setTickTimeUnit(TimeUnit unit) {
+        this.tickTimeUnit = unit.name();
+    }
+
     public int getDuration() {
         return duration;
     }
 
+    public boolean isInstrumentation() {
+        return instrumentation;
+    }
+
+    public void setInstrumentation(boolean instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    public boolean isMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(boolean maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    public double getGridResolution() {
+        return gridResolution;
+    }
+
+    public void setGridResolution(double gridResolution) {
+        this.gridResolution = gridResolution;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getStreamReadAhead() {
+        return streamReadAhead > 0 ? streamReadAhead : SensorStream.DEFAULT_READ_AHEAD;
+    }
+
+    public long getStreamIdleMillis() {
+        return streamIdleMillis > 0 ? streamIdleMillis : SensorStream.DEFAULT_IDLE_MILLIS;
+    }
+
     // Nested class for Cameras
     public static class Cameras {
         @SerializedName("CamerasConfigurations")
@@ -96,6 +179,15 @@ public class Configuration {
         @SerializedName("lidars_data_path")
         private String lidarsDataPath;
 
+        @SerializedName("voxel_size")
+        private double voxelSize; // Cell size in meters for downsampling clouds, no downsampling when absent
+
+        @SerializedName("max_workers")
+        private int maxWorkers; // Largest pool with spares started under backlog, a fixed pool when absent
+
+        @SerializedName("parallel_threshold")
+        private String parallelThreshold; // "off", "auto" or the smallest frame processed in parallel; auto when absent
+
         // Getters and Setters
         public List<LidarConfiguration> getLidarConfigurations() {
             return lidarConfigurations;
@@ -105,6 +197,30 @@ public class Configuration {
             return lidarsDataPath;
         }
 
+        public double getVoxelSize() {
+            return voxelSize;
+        }
+
+        public void setVoxelSize(double voxelSize) {
+            this.voxelSize = voxelSize;
+        }
+
+        public int getMaxWorkers() {
+            return maxWorkers;
+        }
+
+        public void setMaxWorkers(int maxWorkers) {
+            this.maxWorkers = maxWorkers;
+        }
+
+        public String getParallelThreshold() {
+            return parallelThreshold;
+        }
+
+        public void setParallelThreshold(String parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+        }
+
         // Nested class for LidarConfiguration
         public static class LidarConfiguration {
             @SerializedName("id")
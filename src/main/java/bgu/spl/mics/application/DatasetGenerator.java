@@ -0,0 +1,323 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic camera, LiDAR and pose recordings of any size, plus a
+ * configuration file that runs them, for load tests.
+ * <p>
+ * The world holds {@code worldObjects} objects. At every tick each camera
+ * detects {@code objectsPerFrame} of them, and no two cameras detect the same
+ * object at the same tick, so the LiDAR data holds exactly one cloud of
+ * {@code pointsPerObject} points for every detection. The robot has a pose
+ * at every tick. Optionally one camera or the LiDAR database reports an
+ * error at {@code errorTick}.
+ * <p>
+ * Everything is derived from the parameters and the seed, so the files are
+ * written as a stream with {@link JsonWriter} in constant memory, whatever
+ * their size.
+ * <p>
+ * Usage: {@code DatasetGenerator <output directory> [name=value ...]}, with
+ * the names of the setters below, e.g. {@code cameras=4 ticks=100000}.
+ */
+public class DatasetGenerator {
+
+    private static final Logger LOG = Logger.getLogger(DatasetGenerator.class);
+
+    public static final String CONFIGURATION_FILE = "configuration_file.json";
+    static final String CAMERA_DATA_FILE = "camera_data.json";
+    static final String LIDAR_DATA_FILE = "lidar_data.json";
+    static final String POSE_DATA_FILE = "pose_data.json";
+
+    private static final String[] DESCRIPTIONS = {"Wall", "Chair", "Door", "Table", "Shelf", "Sofa", "Lamp", "Bed"};
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private int cameras = 2;
+    private int lidars = 2;
+    private int objectsPerFrame = 4;
+    private int pointsPerObject = 8;
+    private int ticks = 100;
+    private int worldObjects = -1; // Defaults to twice what a tick's frames need
+    private int cameraFrequency = 0;
+    private int lidarFrequency = 0;
+    private int tickTime = 1;
+    private boolean maxSpeed = true;
+    private int errorTick = -1;
+    private String errorSensor = "camera";
+    private long seed = 1;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: DatasetGenerator <output directory> [name=value ...]");
+            System.exit(1);
+        }
+        try {
+            DatasetGenerator generator = new DatasetGenerator();
+            for (int i = 1; i < args.length; i++) {
+                generator.set(args[i]);
+            }
+            long bytes = generator.generate(new File(args[0]));
+            LOG.info("Generated " + bytes / 1024 + " KB of data in: " + args[0]);
+        } catch (Exception e) {
+            LOG.error("Error: " + e.getMessage(), e);
+            AsyncAppender.getInstance().flush();
+            System.exit(1);
+        }
+        AsyncAppender.getInstance().flush();
+    }
+
+    /**
+     * Applies a {@code name=value} parameter from the command line.
+     *
+     * @param assignment The parameter.
+     * @return This generator.
+     */
+    public DatasetGenerator set(String assignment) {
+        int equals = assignment.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("Expected name=value: " + assignment);
+        }
+        String name = assignment.substring(0, equals).trim();
+        String value = assignment.substring(equals + 1).trim();
+        switch (name) {
+            case "cameras": return setCameras(Integer.parseInt(value));
+            case "lidars": return setLidars(Integer.parseInt(value));
+            case "objectsPerFrame": return setObjectsPerFrame(Integer.parseInt(value));
+            case "pointsPerObject": return setPointsPerObject(Integer.parseInt(value));
+            case "ticks": return setTicks(Integer.parseInt(value));
+            case "worldObjects": return setWorldObjects(Integer.parseInt(value));
+            case "cameraFrequency": return setCameraFrequency(Integer.parseInt(value));
+            case "lidarFrequency": return setLidarFrequency(Integer.parseInt(value));
+            case "tickTime": return setTickTime(Integer.parseInt(value));
+            case "maxSpeed": return setMaxSpeed(Boolean.parseBoolean(value));
+            case "errorTick": return setErrorTick(Integer.parseInt(value));
+            case "errorSensor": return setErrorSensor(value);
+            case "seed": return setSeed(Long.parseLong(value));
+            default: throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+    }
+
+    public DatasetGenerator setCameras(int cameras) {
+        this.cameras = positive("cameras", cameras);
+        return this;
+    }
+
+    public DatasetGenerator setLidars(int lidars) {
+        this.lidars = positive("lidars", lidars);
+        return this;
+    }
+
+    public DatasetGenerator setObjectsPerFrame(int objectsPerFrame) {
+        this.objectsPerFrame = positive("objectsPerFrame", objectsPerFrame);
+        return this;
+    }
+
+    public DatasetGenerator setPointsPerObject(int pointsPerObject) {
+        this.pointsPerObject = positive("pointsPerObject", pointsPerObject);
+        return this;
+    }
+
+    public DatasetGenerator setTicks(int ticks) {
+        this.ticks = positive("ticks", ticks);
+        return this;
+    }
+
+    public DatasetGenerator setWorldObjects(int worldObjects) {
+        this.worldObjects = worldObjects;
+        return this;
+    }
+
+    public DatasetGenerator setCameraFrequency(int cameraFrequency) {
+        this.cameraFrequency = Math.max(0, cameraFrequency);
+        return this;
+    }
+
+    public DatasetGenerator setLidarFrequency(int lidarFrequency) {
+        this.lidarFrequency = Math.max(0, lidarFrequency);
+        return this;
+    }
+
+    public DatasetGenerator setTickTime(int tickTime) {
+        this.tickTime = Math.max(0, tickTime);
+        return this;
+    }
+
+    public DatasetGenerator setMaxSpeed(boolean maxSpeed) {
+        this.maxSpeed = maxSpeed;
+        return this;
+    }
+
+    /**
+     * @param errorTick The tick at which {@link #setErrorSensor the error sensor} fails, -1 for none.
+     * @return This generator.
+     */
+    public DatasetGenerator setErrorTick(int errorTick) {
+        this.errorTick = errorTick;
+        return this;
+    }
+
+    /**
+     * @param errorSensor "camera" for the first camera or "lidar" for the LiDAR database.
+     * @return This generator.
+     */
+    public DatasetGenerator setErrorSensor(String errorSensor) {
+        if (!"camera".equals(errorSensor) && !"lidar".equals(errorSensor)) {
+            throw new IllegalArgumentException("errorSensor must be camera or lidar: " + errorSensor);
+        }
+        this.errorSensor = errorSensor;
+        return this;
+    }
+
+    public DatasetGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the data files and the configuration into {@code directory}.
+     *
+     * @param directory The output directory, created if missing.
+     * @return The total size of the written files in bytes.
+     * @throws IOException if a file cannot be written.
+     */
+    public long generate(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        int world = worldObjects > 0 ? worldObjects : 2 * cameras * objectsPerFrame;
+        if (world < cameras * objectsPerFrame) {
+            throw new IllegalArgumentException("worldObjects must be at least cameras * objectsPerFrame = "
+                    + cameras * objectsPerFrame);
+        }
+        writeCameraData(new File(directory, CAMERA_DATA_FILE), world);
+        writeLidarData(new File(directory, LIDAR_DATA_FILE), world);
+        writePoseData(new File(directory, POSE_DATA_FILE));
+        writeConfiguration(new File(directory, CONFIGURATION_FILE));
+        return new File(directory, CAMERA_DATA_FILE).length() + new File(directory, LIDAR_DATA_FILE).length()
+                + new File(directory, POSE_DATA_FILE).length() + new File(directory, CONFIGURATION_FILE).length();
+    }
+
+    // The index of the j-th object camera c sees at tick t; the cameras' blocks never overlap within a tick
+    private int objectIndex(int t, int c, int j, int world) {
+        long first = ((long) t * cameras + c) * objectsPerFrame;
+        return (int) ((first + j) % world);
+    }
+
+    private static String objectId(int index) {
+        return DESCRIPTIONS[index % DESCRIPTIONS.length] + "_" + index;
+    }
+
+    private void writeCameraData(File file, int world) throws IOException {
+        try (JsonWriter json = open(file)) {
+            json.beginObject();
+            for (int c = 0; c < cameras; c++) {
+                json.name("camera" + (c + 1)).beginArray();
+                for (int t = 1; t <= ticks; t++) {
+                    json.beginObject().name("time").value(t).name("detectedObjects").beginArray();
+                    for (int j = 0; j < objectsPerFrame; j++) {
+                        int index = objectIndex(t, c, j, world);
+                        json.beginObject()
+                                .name("id").value(objectId(index))
+                                .name("description").value(DESCRIPTIONS[index % DESCRIPTIONS.length])
+                                .endObject();
+                    }
+                    if (c == 0 && t == errorTick && "camera".equals(errorSensor)) {
+                        json.beginObject().name("id").value("ERROR").name("description").value("fault").endObject();
+                    }
+                    json.endArray().endObject();
+                }
+                json.endArray();
+            }
+            json.endObject();
+        }
+    }
+
+    private void writeLidarData(File file, int world) throws IOException {
+        try (JsonWriter json = open(file)) {
+            json.beginArray();
+            for (int t = 1; t <= ticks; t++) {
+                for (int c = 0; c < cameras; c++) {
+                    for (int j = 0; j < objectsPerFrame; j++) {
+                        int index = objectIndex(t, c, j, world);
+                        // The same object always has the same shape, seen with a little noise
+                        SplittableRandom shape = new SplittableRandom(seed * 31 + index);
+                        SplittableRandom noise = new SplittableRandom(seed ^ ((long) t << 32 | index));
+                        json.beginObject().name("time").value(t).name("id").value(objectId(index)).name("cloudPoints").beginArray();
+                        for (int p = 0; p < pointsPerObject; p++) {
+                            json.beginArray()
+                                    .value(shape.nextDouble(0, 5) + noise.nextDouble(-0.01, 0.01))
+                                    .value(shape.nextDouble(0, 5) + noise.nextDouble(-0.01, 0.01))
+                                    .value(0.1)
+                                    .endArray();
+                        }
+                        json.endArray().endObject();
+                    }
+                }
+                if (t == errorTick && "lidar".equals(errorSensor)) {
+                    json.beginObject().name("time").value(t).name("id").value("ERROR").name("cloudPoints").beginArray().endArray().endObject();
+                }
+            }
+            json.endArray();
+        }
+    }
+
+    private void writePoseData(File file) throws IOException {
+        try (JsonWriter json = open(file)) {
+            json.beginArray();
+            for (int t = 1; t <= ticks; t++) {
+                json.beginObject()
+                        .name("time").value(t)
+                        .name("x").value(t * 0.05)
+                        .name("y").value(Math.sin(t * 0.01))
+                        .name("yaw").value((t * 3) % 360)
+                        .endObject();
+            }
+            json.endArray();
+        }
+    }
+
+    private void writeConfiguration(File file) throws IOException {
+        try (JsonWriter json = open(file)) {
+            json.setIndent(" ");
+            json.beginObject();
+            json.name("Cameras").beginObject().name("CamerasConfigurations").beginArray();
+            for (int c = 1; c <= cameras; c++) {
+                json.beginObject().name("id").value(c).name("frequency").value(cameraFrequency)
+                        .name("camera_key").value("camera" + c).endObject();
+            }
+            json.endArray().name("camera_datas_path").value("./" + CAMERA_DATA_FILE).endObject();
+            json.name("LiDarWorkers").beginObject().name("LidarConfigurations").beginArray();
+            for (int l = 1; l <= lidars; l++) {
+                json.beginObject().name("id").value(l).name("frequency").value(lidarFrequency).endObject();
+            }
+            json.endArray().name("lidars_data_path").value("./" + LIDAR_DATA_FILE).endObject();
+            json.name("poseJsonFile").value("./" + POSE_DATA_FILE);
+            json.name("TickTime").value(tickTime);
+            json.name("Duration").value(ticks + Math.max(cameraFrequency, lidarFrequency) + 2);
+            json.name("MaxSpeed").value(maxSpeed);
+            json.endObject();
+        }
+    }
+
+    private static JsonWriter open(File file) throws IOException {
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    private static int positive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+}
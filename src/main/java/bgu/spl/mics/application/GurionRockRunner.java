@@ -1,6 +1,10 @@
 package bgu.spl.mics.application;
 
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.JournalCodecs;
+import bgu.spl.mics.journal.MessageJournal;
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -9,41 +13,40 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 import bgu.spl.mics.application.objects.*;
 import bgu.spl.mics.application.services.*;
 
 public class GurionRockRunner {
 
-    private static volatile boolean crashOccurred = false;
-    private static volatile String faultySensor = null;
-    private static volatile String sensorType = null;
-    private final Map<String, CameraService> camerasMap = new HashMap<>();
-    private final Map<String, LiDarService> lidarWorkersMap = new HashMap<>();
-
-    public static synchronized void reportCrash(String sensor, String type) {
-        if (!crashOccurred) {
-            crashOccurred = true;
-            faultySensor = sensor;
-            sensorType = type;
-            System.out.println("Crash reported by: " + sensor);
-        }
-    }
+    private static final Logger LOG = Logger.getLogger(GurionRockRunner.class);
 
-    public static boolean hasCrashOccurred() {
-        return crashOccurred;
-    }
+    private final SimulationContext context;
+    private final Map<String, CameraService> camerasMap = new LinkedHashMap<>();
+    private final Map<String, LiDarService> lidarWorkersMap = new LinkedHashMap<>();
+    private final List<SensorStream<?>> streams = new ArrayList<>(); // Opened in streaming mode, closed after the run
 
-    public static String getFaultySensor() {
-        return faultySensor;
+    /**
+     * Creates a runner for a single simulation in a fresh, isolated context.
+     */
+    public GurionRockRunner() {
+        this(new SimulationContext());
     }
 
-    public static String getFaultySensorType() {
-        return sensorType;
+    /**
+     * Creates a runner for a single simulation.
+     *
+     * @param context The context owning the simulation's bus, map, statistics and data.
+     */
+    public GurionRockRunner(SimulationContext context) {
+        this.context = context;
     }
 
     public static void main(String[] args) {
@@ -57,97 +60,190 @@ public class GurionRockRunner {
 
         try {
             Configuration config = loadConfiguration(configFilePath);
-            new GurionRockRunner().startSimulation(config, configFilePath, outputFilePath);
+            SimulationContext context = new SimulationContext();
+            String journalPath = System.getProperty("gurion.journal");
+            MessageJournal journal = journalPath == null ? null : new MessageJournal(Paths.get(journalPath), JournalCodecs.create());
+            context.getMessageBus().setJournal(journal);
+            try {
+                new GurionRockRunner(context).startSimulation(config, configFilePath, outputFilePath);
+            } finally {
+                if (journal != null) {
+                    context.getMessageBus().setJournal(null);
+                    journal.close();
+                    LOG.info("Journaled " + journal.getMessageCount() + " messages to: " + journalPath);
+                }
+            }
         } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error: " + e.getMessage(), e);
+            AsyncAppender.getInstance().flush();
             System.exit(1);
         }
+        AsyncAppender.getInstance().flush();
     }
 
-    private static Configuration loadConfiguration(String filePath) throws IOException {
+    static Configuration loadConfiguration(String filePath) throws IOException {
         try (FileReader reader = new FileReader(filePath)) {
             Gson gson = new Gson();
             Configuration config = gson.fromJson(reader, Configuration.class);
-            System.out.println("Parsed Configuration: " + new Gson().toJson(config));
+            LOG.debug(() -> "Parsed Configuration: " + new Gson().toJson(config));
             return config;
         } catch (Exception e) {
             throw new IOException("Failed to load configuration from file: " + filePath, e);
         }
     }
 
+    /**
+     * Runs one simulation to completion and writes its output file.
+     * Failures propagate to the caller, which decides whether to exit.
+     *
+     * @param config         The parsed configuration.
+     * @param configFilePath The configuration's path; data paths are resolved against its directory.
+     * @param outputFilePath Where to write the output JSON.
+     */
     public void startSimulation(Configuration config, String configFilePath, String outputFilePath) {
-        FusionSlam fusionSlam = FusionSlam.getInstance();
-        StatisticalFolder statistics = StatisticalFolder.getInstance();
+        FusionSlam fusionSlam = context.getFusionSlam();
+        StatisticalFolder statistics = context.getStatistics();
+        context.setInstrumented(config.isInstrumentation() || Boolean.getBoolean("gurion.instrument"));
+        List<Camera> cameras = new ArrayList<>();
+        List<LiDarWorkerTracker> lidarWorkers = new ArrayList<>();
+        double gridResolution = config.getGridResolution() > 0 ? config.getGridResolution()
+                : Double.parseDouble(System.getProperty("gurion.grid.resolution", "0"));
+        if (gridResolution > 0) {
+            fusionSlam.setOccupancyGrid(new OccupancyGrid(gridResolution, OccupancyGrid.DEFAULT_TILE_SIZE));
+        }
         try {
-            List<Camera> cameras = new ArrayList<>();
-            List<LiDarWorkerTracker> lidarWorkers = new ArrayList<>();
             GPSIMU gpsimu = initializeSimulation(config, configFilePath, cameras, lidarWorkers);
             runSimulation(config, gpsimu, cameras, lidarWorkers);
-
-            if (hasCrashOccurred()) {
-                generateCrashOutput(fusionSlam, statistics, getFaultySensor(), getFaultySensorType() , outputFilePath);
-            } else {
-                generateOutput(fusionSlam, statistics, outputFilePath, null);
+            for (LiDarWorkerTracker lidarWorker : lidarWorkers) {
+                VoxelFilter filter = lidarWorker.getVoxelFilter();
+                if (filter != null) {
+                    statistics.recordDownsampling(filter.getPointsIn(), filter.getPointsOut());
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Unexpected error: " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
+        } finally {
+            streams.forEach(SensorStream::close);
+        }
+
+        if (context.hasCrashOccurred()) {
+            generateCrashOutput(fusionSlam, statistics, context.getFaultySensor(), context.getFaultySensorType() , outputFilePath);
+        } else {
+            generateOutput(fusionSlam, statistics, outputFilePath, null);
+        }
+        if (fusionSlam.getOccupancyGrid() != null) {
+            writeGrid(fusionSlam.getOccupancyGrid(), outputFilePath.replaceFirst("\\.json$", "") + "_grid.bin");
         }
     }
 
 
 
     private GPSIMU initializeSimulation(Configuration config, String configFilePath, List<Camera> cameras, List<LiDarWorkerTracker> lidarWorkers) {
-        System.out.println("Initializing simulation...");
+        LOG.info("Initializing simulation...");
         String basePath = new File(configFilePath).getParent();
 
         // Resolve paths
-        String absoluteCameraDataPath = new File(basePath, config.getCameras().getCameraDatasPath()).getAbsolutePath();
-        String absoluteLidarDataPath = new File(basePath, config.getLidarWorkers().getLidarsDataPath()).getAbsolutePath();
-        String absolutePoseJsonPath = new File(basePath, config.getPoseJsonFile()).getAbsolutePath();
+        String absoluteCameraDataPath = resolve(basePath, config.getCameras().getCameraDatasPath());
+        String absoluteLidarDataPath = resolve(basePath, config.getLidarWorkers().getLidarsDataPath());
+        String absolutePoseJsonPath = resolve(basePath, config.getPoseJsonFile());
+        SensorDataCache sensorData = context.getSensorData();
+        boolean streaming = config.isStreaming() || Boolean.getBoolean("gurion.streaming");
+        if (streaming) {
+            LOG.info("Streaming sensor data, reading up to " + config.getStreamReadAhead() + " records ahead per sensor");
+        }
 
         // Initialize Cameras
         config.getCameras().getCamerasConfigurations().forEach(cameraConfig -> {
-            System.out.println("Initializing Camera with ID: " + cameraConfig.getId());
-            Camera camera = new Camera(
-                    cameraConfig.getId(),
-                    cameraConfig.getFrequency(),
-                    absoluteCameraDataPath,
-                    cameraConfig.getCameraKey()
-            );
-            CameraService cameraService = new CameraService(camera);
+            LOG.info("Initializing Camera with ID: " + cameraConfig.getId());
+            Camera camera = streaming
+                    ? new Camera(cameraConfig.getId(), cameraConfig.getFrequency(),
+                            openStream(config, cameraSource(config.getCameras().getCameraDatasPath(), basePath, cameraConfig.getCameraKey()),
+                                    Camera::parseFrame, StampedDetectedObjects::getTime))
+                    : new Camera(
+                            cameraConfig.getId(),
+                            cameraConfig.getFrequency(),
+                            sensorData.getCameraData(absoluteCameraDataPath, cameraConfig.getCameraKey())
+                    );
+            CameraService cameraService = new CameraService(camera, context);
             cameras.add(camera); // Collect all camera objects
             camerasMap.put("Camera-" + camera.getId(), cameraService);
         });
 
+        // A streamed LiDAR database is shared by the workers and keeps each sample until the slowest
+        // camera's frame could have reached the slowest worker
+        LiDarDataBase streamedLidarDB = null;
+        if (streaming) {
+            int retention = 1
+                    + config.getCameras().getCamerasConfigurations().stream().mapToInt(Configuration.Cameras.CamerasConfiguration::getFrequency).max().orElse(0)
+                    + config.getLidarWorkers().getLidarConfigurations().stream().mapToInt(Configuration.LidarWorkers.LidarConfiguration::getFrequency).max().orElse(0);
+            streamedLidarDB = LiDarDataBase.stream(openStream(config, source(basePath, config.getLidarWorkers().getLidarsDataPath()),
+                    LiDarDataBase::parseCloudPoints, StampedCloudPoints::getTime), retention);
+        }
+        LiDarDataBase sharedLidarDB = streamedLidarDB;
+        double voxelSize = config.getLidarWorkers().getVoxelSize() > 0 ? config.getLidarWorkers().getVoxelSize()
+                : Double.parseDouble(System.getProperty("gurion.lidar.voxelSize", "0"));
+        ParallelismTuner lidarTuner = ParallelismTuner.parse(config.getLidarWorkers().getParallelThreshold() != null
+                ? config.getLidarWorkers().getParallelThreshold() : System.getProperty("gurion.lidar.parallelThreshold"));
+
         // Initialize LiDAR Workers
         config.getLidarWorkers().getLidarConfigurations().forEach(lidarConfig -> {
-            System.out.println("Initializing LiDAR with ID: " + lidarConfig.getId());
-            LiDarDataBase lidarDB = LiDarDataBase.getInstance(absoluteLidarDataPath);
+            LOG.info("Initializing LiDAR with ID: " + lidarConfig.getId());
+            LiDarDataBase lidarDB = sharedLidarDB != null ? sharedLidarDB : sensorData.getLiDarDataBase(absoluteLidarDataPath);
             LiDarWorkerTracker lidarWorker = new LiDarWorkerTracker(
                     lidarConfig.getId(),
                     lidarConfig.getFrequency(),
-                    lidarDB
+                    lidarDB,
+                    lidarTuner.copy(),
+                    VoxelFilter.ofSize(voxelSize)
             );
-            LiDarService lidarService = new LiDarService(lidarWorker);
+            LiDarService lidarService = new LiDarService(lidarWorker, !"local".equalsIgnoreCase(System.getProperty("gurion.lidar.holdBack")), context);
             lidarWorkers.add(lidarWorker); // Collect all lidar worker objects
             lidarWorkersMap.put("LiDAR-" + lidarWorker.getId(), lidarService);
         });
 
         // Initialize GPSIMU
-        System.out.println("Initializing GPSIMU...");
-        return new GPSIMU(absolutePoseJsonPath);
+        LOG.info("Initializing GPSIMU...");
+        if (streaming) {
+            return new GPSIMU(openStream(config, source(basePath, config.getPoseJsonFile()), GPSIMU::parsePose, Pose::getTime));
+        }
+        return new GPSIMU(sensorData.getPoseData(absolutePoseJsonPath));
+    }
+
+    // Opens one sensor's stream and remembers it for closing after the run
+    private <T> SensorStream<T> openStream(Configuration config, String source, Function<JsonObject, T> parser, ToIntFunction<T> time) {
+        try {
+            SensorStream<T> stream = SensorStream.open(source, config.getStreamReadAhead(), config.getStreamIdleMillis(), parser, time);
+            streams.add(stream);
+            return stream;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open sensor stream: " + source, e);
+        }
     }
 
+    // A camera's stream: the cameras' data path with the camera's key in place of {camera_key}
+    private static String cameraSource(String path, String basePath, String cameraKey) {
+        if (!path.contains("{camera_key}")) {
+            throw new IllegalArgumentException("In streaming mode camera_datas_path must contain {camera_key}: " + path);
+        }
+        return source(basePath, path.replace("{camera_key}", cameraKey));
+    }
 
+    // A stream source: a socket address as is, or a path resolved against the configuration's directory
+    private static String source(String basePath, String source) {
+        return source.startsWith("tcp://") ? source : resolve(basePath, source);
+    }
+
+
+
+    // Resolves a data path against the configuration's directory unless it is already absolute
+    private static String resolve(String basePath, String path) {
+        File file = new File(path);
+        return (file.isAbsolute() ? file : new File(basePath, path)).getAbsolutePath();
+    }
 
     private void runSimulation(Configuration config, GPSIMU gpsimu, List<Camera> cameras, List<LiDarWorkerTracker> lidarWorkers) {
-        System.out.println("Running simulation...");
+        LOG.info("Running simulation...");
 
         try {
-            // Determine minimum duration
+            // Determine minimum duration; streams that have not ended yet leave it to the configuration
             int latestTime = Math.max(
                     gpsimu.getLatestDetectionTime(),
                     Math.max(
@@ -156,21 +252,49 @@ public class GurionRockRunner {
                     )
             );
             int duration = Math.min(config.getDuration(), latestTime);
-            System.out.println("Simulation duration set to: " + duration);
+            LOG.info("Simulation duration set to: " + duration);
 
-            // Add services
+            // Add services - pose and LiDAR workers come first so that, as in real time, each tick's
+            // pose is known and the workers' clocks have advanced before the cameras' detections arrive
             List<MicroService> services = new ArrayList<>();
-            camerasMap.values().forEach(services::add);
+            PoseService poseService = new PoseService(gpsimu, context);
+            services.add(poseService);
             lidarWorkersMap.values().forEach(services::add);
+            camerasMap.values().forEach(services::add);
+            services.add(new FusionSlamService("FusionSlamService", context));
+
+            // Spare LiDAR workers join the pool under backlog when the configuration allows more than the configured ones
+            int maxLidarWorkers = config.getLidarWorkers().getMaxWorkers() > 0 ? config.getLidarWorkers().getMaxWorkers()
+                    : Integer.getInteger("gurion.lidar.maxWorkers", 0);
+            LiDarSupervisor supervisor = null;
+            if (maxLidarWorkers > lidarWorkersMap.size() && !lidarWorkersMap.isEmpty()) {
+                supervisor = new LiDarSupervisor(new ArrayList<>(lidarWorkersMap.values()), maxLidarWorkers,
+                        Integer.getInteger("gurion.lidar.scaleUpDepth", LiDarSupervisor.DEFAULT_SCALE_UP_DEPTH),
+                        Integer.getInteger("gurion.lidar.scaleDownDepth", LiDarSupervisor.DEFAULT_SCALE_DOWN_DEPTH),
+                        context);
+                services.add(supervisor);
+            }
 
-            services.add(new PoseService(gpsimu));
-            services.add(new FusionSlamService("FusionSlamService"));
-            services.add(new TimeService(config.getTickTime(), duration));
-
-            // Start threads
+            // Start services one at a time so round-robin subscription order follows the
+            // configuration, and only start ticking once every service has subscribed
             List<Thread> threads = new ArrayList<>();
-            services.forEach(service -> threads.add(new Thread(service)));
-            threads.forEach(Thread::start);
+            for (MicroService service : services) {
+                Thread thread = new Thread(service);
+                threads.add(thread);
+                thread.start();
+                service.awaitInitialization();
+            }
+            // In max-speed mode only the ticks at which some sensor acts are broadcast
+            List<TickSchedule> schedules = new ArrayList<>();
+            schedules.add(poseService.getTickSchedule());
+            lidarWorkersMap.values().forEach(lidarService -> schedules.add(lidarService.getTickSchedule()));
+            camerasMap.values().forEach(cameraService -> schedules.add(cameraService.getTickSchedule()));
+            // Streaming services do not know their ticks ahead, and then every tick is broadcast
+            TickSchedule schedule = schedules.contains(null) ? null : TickSchedule.union(schedules);
+            Thread timeThread = new Thread(new TimeService(config.getTickTime(), config.getTickTimeUnit(), duration,
+                    config.isMaxSpeed() || Boolean.getBoolean("gurion.maxSpeed"), schedule, context));
+            threads.add(timeThread);
+            timeThread.start();
 
             for (Thread thread : threads) {
                 try {
@@ -179,8 +303,13 @@ public class GurionRockRunner {
                     thread.interrupt();
                 }
             }
+            if (supervisor != null) {
+                supervisor.awaitSpares();
+                LOG.info("LiDAR pool: " + supervisor.getStarted() + " spares started, " + supervisor.getRetired()
+                        + " retired, peak of " + supervisor.getPeakWorkers() + " workers");
+            }
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("Simulation failed: " + e.getMessage(), e);
         }
     }
 
@@ -193,14 +322,15 @@ public class GurionRockRunner {
             output.addProperty("numTrackedObjects", statistics.getNumTrackedObjects());
             output.addProperty("numLandmarks", statistics.getNumLandmarks());
             output.add("landMarks", new Gson().toJsonTree(fusionSlam.getLandmarks()));
+            output.add("metrics", statistics.toJson());
         } else {
             output.addProperty("Error", error.getMessage());
             output.addProperty("faultySensor", "Unknown");
         }
 
         // Log the statistics
-        System.out.println("Simulation completed.");
-        System.out.println(statistics); // Prints the entire StatisticalFolder's details to the console
+        LOG.info("Simulation completed.");
+        LOG.debug(() -> statistics + ", landmarks:" + fusionSlam.getLandmarks()); // Prints the entire StatisticalFolder's details to the console
 
         writeToFile(output, outputFilePath);
     }
@@ -224,6 +354,7 @@ public class GurionRockRunner {
         statisticsJson.addProperty("numTrackedObjects", statistics.getNumTrackedObjects());
         statisticsJson.addProperty("numLandmarks", statistics.getNumLandmarks());
         statisticsJson.add("landMarks", new Gson().toJsonTree(fusionSlam.getLandmarks()));
+        statisticsJson.add("metrics", statistics.toJson());
         output.add("statistics", statisticsJson);
 
         writeToFile(output, outputFilePath);
@@ -258,14 +389,24 @@ public class GurionRockRunner {
         return lastFrames;
     }
 
+    private void writeGrid(OccupancyGrid grid, String gridFilePath) {
+        try {
+            long bytes = grid.writeTo(Paths.get(gridFilePath));
+            LOG.info("Occupancy grid of " + grid.getTileCount() + " tiles (" + grid.getOccupiedCells()
+                    + " occupied cells, " + bytes + " bytes) written to: " + gridFilePath);
+        } catch (IOException e) {
+            LOG.error("Failed to write occupancy grid: " + e.getMessage());
+        }
+    }
+
     private void writeToFile(JsonObject output, String outputFilePath) {
         try (FileWriter writer = new FileWriter(outputFilePath)) {
             // Use GsonBuilder for pretty-printed JSON
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             gson.toJson(output, writer);
-            System.out.println("Output written to: " + outputFilePath);
+            LOG.info("Output written to: " + outputFilePath);
         } catch (IOException e) {
-            System.err.println("Failed to write output file: " + e.getMessage());
+            LOG.error("Failed to write output file: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,94 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.messages.JournalCodecs;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.services.FusionSlamService;
+import bgu.spl.mics.application.services.ReplayService;
+import bgu.spl.mics.journal.JournalReader;
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Replays a message journal recorded with {@code -Dgurion.journal=<file>}
+ * into a fresh Fusion-SLAM service and reports how fast it went and the map
+ * it produced.
+ * <p>
+ * Usage: {@code JournalReplay <journal> [report file]}. The report defaults to
+ * {@code <journal>.replay.json}. Replay runs in lockstep unless
+ * {@code -Dgurion.replay.lockstep=false} is given.
+ */
+public class JournalReplay {
+
+    private static final Logger LOG = Logger.getLogger(JournalReplay.class);
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: JournalReplay <journal> [report file]");
+            System.exit(1);
+        }
+        String reportPath = args.length > 1 ? args[1] : args[0] + ".replay.json";
+        boolean lockstep = !"false".equalsIgnoreCase(System.getProperty("gurion.replay.lockstep"));
+        try {
+            JsonObject report = replay(args[0], lockstep);
+            try (FileWriter writer = new FileWriter(reportPath)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            }
+            LOG.info("Replay report written to: " + reportPath);
+        } catch (Exception e) {
+            LOG.error("Error: " + e.getMessage(), e);
+            AsyncAppender.getInstance().flush();
+            System.exit(1);
+        }
+        AsyncAppender.getInstance().flush();
+    }
+
+    /**
+     * Replays a journal into a fresh context.
+     *
+     * @param journalPath The journal file.
+     * @param lockstep    true to wait for each message to be handled before sending the next.
+     * @return The replay report: message counts, timing and the resulting landmarks.
+     * @throws IOException          if the journal cannot be read.
+     * @throws InterruptedException if interrupted while waiting for the replay.
+     */
+    public static JsonObject replay(String journalPath, boolean lockstep) throws IOException, InterruptedException {
+        SimulationContext context = new SimulationContext();
+        try (JournalReader reader = new JournalReader(Paths.get(journalPath), JournalCodecs.create())) {
+            FusionSlamService fusionSlamService = new FusionSlamService("FusionSlamService", context);
+            ReplayService replayService = new ReplayService(reader, lockstep, context);
+
+            Thread fusionThread = start(fusionSlamService);
+            start(replayService).join();
+            fusionThread.join();
+
+            FusionSlam fusionSlam = context.getFusionSlam();
+            long elapsed = replayService.getElapsedNanos();
+            JsonObject report = new JsonObject();
+            report.addProperty("journal", journalPath);
+            report.addProperty("lockstep", lockstep);
+            report.addProperty("replayed", replayService.getReplayed());
+            report.addProperty("skipped", replayService.getSkipped());
+            report.addProperty("elapsedMillis", elapsed / 1_000_000.0);
+            report.addProperty("messagesPerSecond", elapsed == 0 ? 0 : replayService.getReplayed() * 1e9 / elapsed);
+            report.addProperty("numLandmarks", context.getStatistics().getNumLandmarks());
+            report.add("landMarks", new Gson().toJsonTree(fusionSlam.getLandmarks()));
+            return report;
+        }
+    }
+
+    // Starts a service and waits until it has subscribed
+    private static Thread start(MicroService service) throws InterruptedException {
+        Thread thread = new Thread(service);
+        thread.start();
+        service.awaitInitialization();
+        return thread;
+    }
+}
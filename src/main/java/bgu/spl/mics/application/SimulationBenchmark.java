@@ -0,0 +1,337 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.SensorDataCache;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * End-to-end benchmark of whole simulations. Generates datasets of
+ * increasing length and sensor count with {@link DatasetGenerator}, runs each
+ * through {@link GurionRockRunner#startSimulation} in max-speed mode and
+ * writes a JSON report that can be compared between versions.
+ * <p>
+ * Every run records wall time, ticks, handled events and messages per
+ * second, the camera-to-landmark p99 latency, peak heap and GC time. Data
+ * files are parsed once per scenario, during the first warm-up run, so the
+ * measured runs time the simulation itself; the report keeps the time of
+ * that first, cold run separately.
+ * <p>
+ * Usage: {@code SimulationBenchmark <work directory> [name=value ...]} with
+ * {@code ticks} and {@code sensors} (comma-separated lists, every combination
+ * is run; {@code sensors} is the number of cameras and of LiDAR workers),
+ * {@code objectsPerFrame}, {@code pointsPerObject}, {@code voxelSize} (the
+ * LiDAR workers' downsampling cell, 0 for none), {@code warmups},
+ * {@code repeats} and {@code report} (defaults to
+ * {@code benchmark_report.json} in the work directory). Generated datasets
+ * are kept in the work directory and reused by later runs.
+ */
+public class SimulationBenchmark {
+
+    private static final Logger LOG = Logger.getLogger(SimulationBenchmark.class);
+
+    static final String REPORT_FILE = "benchmark_report.json";
+
+    private int[] ticks = {1000, 2000, 5000};
+    private int[] sensors = {1, 2, 4};
+    private int objectsPerFrame = 4;
+    private int pointsPerObject = 8;
+    private double voxelSize;
+    private int warmups = 1;
+    private int repeats = 3;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SimulationBenchmark <work directory> [name=value ...]");
+            System.exit(1);
+        }
+        try {
+            File workDirectory = new File(args[0]).getAbsoluteFile();
+            File reportFile = new File(workDirectory, REPORT_FILE);
+            SimulationBenchmark benchmark = new SimulationBenchmark();
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("report=")) {
+                    reportFile = new File(args[i].substring("report=".length())).getAbsoluteFile();
+                } else {
+                    benchmark.set(args[i]);
+                }
+            }
+            JsonObject report = benchmark.run(workDirectory);
+            try (FileWriter writer = new FileWriter(reportFile)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            }
+            LOG.info("Benchmark report written to: " + reportFile);
+        } catch (Exception e) {
+            LOG.error("Error: " + e.getMessage(), e);
+            AsyncAppender.getInstance().flush();
+            System.exit(1);
+        }
+        AsyncAppender.getInstance().flush();
+    }
+
+    /**
+     * Applies a {@code name=value} parameter from the command line.
+     *
+     * @param assignment The parameter.
+     * @return This benchmark.
+     */
+    public SimulationBenchmark set(String assignment) {
+        int equals = assignment.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("Expected name=value: " + assignment);
+        }
+        String name = assignment.substring(0, equals).trim();
+        String value = assignment.substring(equals + 1).trim();
+        switch (name) {
+            case "ticks": return setTicks(parseList(value));
+            case "sensors": return setSensors(parseList(value));
+            case "objectsPerFrame": return setObjectsPerFrame(Integer.parseInt(value));
+            case "pointsPerObject": return setPointsPerObject(Integer.parseInt(value));
+            case "voxelSize": return setVoxelSize(Double.parseDouble(value));
+            case "warmups": return setWarmups(Integer.parseInt(value));
+            case "repeats": return setRepeats(Integer.parseInt(value));
+            default: throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+    }
+
+    public SimulationBenchmark setTicks(int... ticks) {
+        this.ticks = ticks.clone();
+        return this;
+    }
+
+    public SimulationBenchmark setSensors(int... sensors) {
+        this.sensors = sensors.clone();
+        return this;
+    }
+
+    public SimulationBenchmark setObjectsPerFrame(int objectsPerFrame) {
+        this.objectsPerFrame = objectsPerFrame;
+        return this;
+    }
+
+    public SimulationBenchmark setPointsPerObject(int pointsPerObject) {
+        this.pointsPerObject = pointsPerObject;
+        return this;
+    }
+
+    public SimulationBenchmark setVoxelSize(double voxelSize) {
+        this.voxelSize = voxelSize;
+        return this;
+    }
+
+    public SimulationBenchmark setWarmups(int warmups) {
+        this.warmups = Math.max(0, warmups);
+        return this;
+    }
+
+    public SimulationBenchmark setRepeats(int repeats) {
+        if (repeats < 1) {
+            throw new IllegalArgumentException("repeats must be positive: " + repeats);
+        }
+        this.repeats = repeats;
+        return this;
+    }
+
+    /**
+     * Runs every combination of tick count and sensor count.
+     *
+     * @param workDirectory Where datasets and run outputs are kept.
+     * @return The benchmark report.
+     * @throws IOException if a dataset cannot be generated or a configuration read.
+     */
+    public JsonObject run(File workDirectory) throws IOException {
+        JsonArray scenarios = new JsonArray();
+        for (int sensorCount : sensors) {
+            for (int tickCount : ticks) {
+                scenarios.add(runScenario(workDirectory, tickCount, sensorCount));
+            }
+        }
+        JsonObject parameters = new JsonObject();
+        parameters.addProperty("objectsPerFrame", objectsPerFrame);
+        parameters.addProperty("pointsPerObject", pointsPerObject);
+        parameters.addProperty("voxelSize", voxelSize);
+        parameters.addProperty("warmups", warmups);
+        parameters.addProperty("repeats", repeats);
+
+        JsonObject report = new JsonObject();
+        report.add("environment", environment());
+        report.add("parameters", parameters);
+        report.add("scenarios", scenarios);
+        return report;
+    }
+
+    private JsonObject runScenario(File workDirectory, int tickCount, int sensorCount) throws IOException {
+        String name = "t" + tickCount + "_s" + sensorCount + "_o" + objectsPerFrame + "_p" + pointsPerObject;
+        File directory = new File(workDirectory, name);
+        File configuration = new File(directory, DatasetGenerator.CONFIGURATION_FILE);
+        if (!configuration.isFile()) {
+            LOG.info("Generating dataset " + name + "...");
+            new DatasetGenerator()
+                    .setTicks(tickCount)
+                    .setCameras(sensorCount)
+                    .setLidars(sensorCount)
+                    .setObjectsPerFrame(objectsPerFrame)
+                    .setPointsPerObject(pointsPerObject)
+                    .generate(directory);
+        }
+        String configFilePath = configuration.getPath();
+        String outputFilePath = new File(directory, "output_file.json").getPath();
+        Configuration config = GurionRockRunner.loadConfiguration(configFilePath);
+        config.setMaxSpeed(true);
+        config.getLidarWorkers().setVoxelSize(voxelSize);
+
+        // One cache per scenario: the first run parses the data, the others reuse it
+        SensorDataCache sensorData = new SensorDataCache();
+        JsonObject cold = null;
+        JsonArray runs = new JsonArray();
+        for (int i = 0; i < warmups + repeats; i++) {
+            JsonObject run = runOnce(config, configFilePath, outputFilePath, sensorData);
+            if (cold == null) {
+                cold = run;
+            }
+            if (i >= warmups) {
+                runs.add(run);
+            }
+            LOG.info(name + (i < warmups ? " warm-up: " : " run: ") + run.get("wallMillis").getAsDouble() + " ms");
+        }
+
+        JsonObject scenario = new JsonObject();
+        scenario.addProperty("name", name);
+        scenario.addProperty("ticks", tickCount);
+        scenario.addProperty("cameras", sensorCount);
+        scenario.addProperty("lidars", sensorCount);
+        scenario.addProperty("datasetBytes", datasetBytes(directory));
+        scenario.addProperty("coldWallMillis", cold.get("wallMillis").getAsDouble());
+        scenario.add("median", median(runs));
+        scenario.add("runs", runs);
+        return scenario;
+    }
+
+    // Runs one simulation in a fresh context and measures it
+    private static JsonObject runOnce(Configuration config, String configFilePath, String outputFilePath,
+                                      SensorDataCache sensorData) {
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcMillisBefore = gcMillis();
+        long gcCountBefore = gcCount();
+
+        SimulationContext context = new SimulationContext(sensorData);
+        long start = System.nanoTime();
+        new GurionRockRunner(context).startSimulation(config, configFilePath, outputFilePath);
+        long elapsed = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        StatisticalFolder statistics = context.getStatistics();
+        double seconds = elapsed / 1e9;
+        JsonObject run = new JsonObject();
+        run.addProperty("status", context.hasCrashOccurred() ? "crashed" : "completed");
+        run.addProperty("wallMillis", elapsed / 1_000_000.0);
+        run.addProperty("systemRuntime", statistics.getSystemRuntime());
+        run.addProperty("ticksPerSecond", statistics.getSystemRuntime() / seconds);
+        run.addProperty("eventsPerSecond", statistics.getHandledEvents() / seconds);
+        run.addProperty("messagesPerSecond", statistics.getHandledMessages() / seconds);
+        run.addProperty("numTrackedObjects", statistics.getNumTrackedObjects());
+        run.addProperty("numLandmarks", statistics.getNumLandmarks());
+        run.addProperty("pointsIn", statistics.getDownsampledPointsIn());
+        run.addProperty("pointsOut", statistics.getDownsampledPointsOut());
+        run.addProperty("detectionToLandmarkP99Micros",
+                statistics.getDetectionToLandmarkLatency().getValueAtQuantile(0.99) / 1000.0);
+        run.addProperty("peakHeapBytes", peakHeap);
+        run.addProperty("gcMillis", gcMillis() - gcMillisBefore);
+        run.addProperty("gcCount", gcCount() - gcCountBefore);
+        return run;
+    }
+
+    // The per-metric median of the measured runs
+    private static JsonObject median(JsonArray runs) {
+        String[] metrics = {"wallMillis", "ticksPerSecond", "eventsPerSecond", "messagesPerSecond",
+                "detectionToLandmarkP99Micros", "peakHeapBytes", "gcMillis"};
+        JsonObject median = new JsonObject();
+        for (String metric : metrics) {
+            double[] values = new double[runs.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = runs.get(i).getAsJsonObject().get(metric).getAsDouble();
+            }
+            Arrays.sort(values);
+            int middle = values.length / 2;
+            median.addProperty(metric, values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2);
+        }
+        return median;
+    }
+
+    private static JsonObject environment() {
+        Runtime runtime = Runtime.getRuntime();
+        JsonObject environment = new JsonObject();
+        environment.addProperty("timestamp", System.currentTimeMillis());
+        environment.addProperty("javaVersion", System.getProperty("java.version"));
+        environment.addProperty("vm", System.getProperty("java.vm.name"));
+        environment.addProperty("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        environment.addProperty("availableProcessors", runtime.availableProcessors());
+        environment.addProperty("maxHeapBytes", runtime.maxMemory());
+        environment.addProperty("lidarHoldBack", System.getProperty("gurion.lidar.holdBack", "bus"));
+        environment.addProperty("instrumented", Boolean.getBoolean("gurion.instrument")); // Timing every message slows the runs down
+        return environment;
+    }
+
+    private static long datasetBytes(File directory) {
+        long bytes = 0;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".json") && !name.equals("output_file.json"));
+        for (File file : files == null ? new File[0] : files) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static int[] parseList(String value) {
+        String[] parts = value.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
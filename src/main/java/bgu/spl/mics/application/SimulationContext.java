@@ -0,0 +1,127 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.SensorDataCache;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.logging.Logger;
+
+/**
+ * Everything one simulation run owns: its message-bus, Fusion-SLAM map,
+ * statistics, crash state and the sensor data its services read.
+ * <p>
+ * Services are bound to a context when they are created and touch nothing
+ * JVM-wide, so any number of contexts can run concurrently in one process.
+ * Sensor data is read-only once loaded; contexts created with the same
+ * {@link SensorDataCache} share a single parsed copy of each data file.
+ * <p>
+ * {@link #getDefault()} wraps the process-wide singletons, for code that
+ * predates contexts.
+ */
+public class SimulationContext {
+
+    private static final Logger LOG = Logger.getLogger(SimulationContext.class);
+
+    private final MessageBusImpl messageBus;
+    private final StatisticalFolder statistics;
+    private final FusionSlam fusionSlam;
+    private final SensorDataCache sensorData;
+
+    private volatile boolean crashOccurred = false;
+    private volatile String faultySensor = null;
+    private volatile String sensorType = null;
+
+    // Singleton holder for the context wrapping the process-wide instances
+    private static class Holder {
+        private static final SimulationContext DEFAULT = new SimulationContext(MessageBusImpl.getInstance(),
+                StatisticalFolder.getInstance(), FusionSlam.getInstance(), new SensorDataCache());
+    }
+
+    /**
+     * Creates an isolated context that loads its sensor data for itself.
+     */
+    public SimulationContext() {
+        this(new SensorDataCache());
+    }
+
+    /**
+     * Creates an isolated context reading sensor data through the given cache,
+     * which may be shared with other contexts.
+     *
+     * @param sensorData The cache of parsed sensor data files.
+     */
+    public SimulationContext(SensorDataCache sensorData) {
+        this(new MessageBusImpl(), new StatisticalFolder(), null, sensorData);
+    }
+
+    private SimulationContext(MessageBusImpl messageBus, StatisticalFolder statistics, FusionSlam fusionSlam,
+                              SensorDataCache sensorData) {
+        this.messageBus = messageBus;
+        this.statistics = statistics;
+        this.fusionSlam = fusionSlam != null ? fusionSlam : new FusionSlam(statistics);
+        this.sensorData = sensorData;
+        messageBus.setMessageObserver(statistics);
+    }
+
+    /**
+     * @return The context backed by the process-wide singletons.
+     */
+    public static SimulationContext getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * Turns the metrics that cost time on every message on or off: enqueue
+     * stamps for queue-wait latency and the timing of every callback. Both
+     * are off for a new context; handled messages are counted either way.
+     *
+     * @param enabled true to time every message.
+     */
+    public void setInstrumented(boolean enabled) {
+        messageBus.setInstrumented(enabled);
+        statistics.setInstrumented(enabled);
+    }
+
+    public MessageBusImpl getMessageBus() {
+        return messageBus;
+    }
+
+    public StatisticalFolder getStatistics() {
+        return statistics;
+    }
+
+    public FusionSlam getFusionSlam() {
+        return fusionSlam;
+    }
+
+    public SensorDataCache getSensorData() {
+        return sensorData;
+    }
+
+    /**
+     * Records that a sensor has failed. Only the first report is kept.
+     *
+     * @param sensor The failed sensor's name.
+     * @param type   The failed sensor's type.
+     */
+    public synchronized void reportCrash(String sensor, String type) {
+        if (!crashOccurred) {
+            crashOccurred = true;
+            faultySensor = sensor;
+            sensorType = type;
+            LOG.info("Crash reported by: " + sensor);
+        }
+    }
+
+    public boolean hasCrashOccurred() {
+        return crashOccurred;
+    }
+
+    public String getFaultySensor() {
+        return faultySensor;
+    }
+
+    public String getFaultySensorType() {
+        return sensorType;
+    }
+}
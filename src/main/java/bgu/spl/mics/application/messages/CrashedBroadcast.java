@@ -1,11 +1,11 @@
 package bgu.spl.mics.application.messages;
 
-import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlBroadcast;
 
 /**
  * A broadcast message sent to notify all MicroServices that a component has crashed.
  */
-public class CrashedBroadcast implements Broadcast {
+public class CrashedBroadcast implements ControlBroadcast {
 
     private final String source;
 
@@ -9,6 +9,7 @@ import bgu.spl.mics.application.objects.StampedDetectedObjects;
 public class DetectObjectsEvent implements Event<Void> {
 
     private final StampedDetectedObjects detectedObjects;
+    private final int tick;
 
     /**
      * Constructor for DetectObjectsEvent.
@@ -16,7 +17,28 @@ public class DetectObjectsEvent implements Event<Void> {
      * @param detectedObjects The list of detected objects from the camera.
      */
     public DetectObjectsEvent(StampedDetectedObjects detectedObjects) {
+        this(detectedObjects, detectedObjects.getTime());
+    }
+
+    /**
+     * Constructor for DetectObjectsEvent.
+     *
+     * @param detectedObjects The list of detected objects from the camera.
+     * @param tick            The tick at which the camera sent the objects.
+     */
+    public DetectObjectsEvent(StampedDetectedObjects detectedObjects, int tick) {
         this.detectedObjects = detectedObjects;
+        this.tick = tick;
+    }
+
+    /**
+     * Gets the tick at which the event was sent. A receiver that is not woken
+     * on every tick uses it to bring its own clock up to date.
+     *
+     * @return The send tick.
+     */
+    public int getTick() {
+        return tick;
     }
 
     /**
@@ -32,6 +54,7 @@ public class DetectObjectsEvent implements Event<Void> {
     public String toString() {
         return "DetectObjectsEvent{" +
                 "detectedObjects=" + detectedObjects +
+                ", tick=" + tick +
                 '}';
     }
 }
@@ -0,0 +1,137 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.journal.MessageCodec;
+import bgu.spl.mics.journal.MessageCodecs;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary journal codecs of the simulation's messages. Latency timestamps
+ * are not journaled; replayed messages carry none.
+ */
+public final class JournalCodecs {
+
+    private JournalCodecs() {
+    }
+
+    /**
+     * @return A registry holding a codec for every message type of the simulation.
+     */
+    public static MessageCodecs create() {
+        return new MessageCodecs()
+                .register(TickBroadcast.class, new MessageCodec<TickBroadcast>() {
+                    @Override
+                    public void encode(TickBroadcast message, ByteBuffer out) {
+                        out.putInt(message.getTime());
+                    }
+
+                    @Override
+                    public TickBroadcast decode(ByteBuffer in) {
+                        return new TickBroadcast(in.getInt());
+                    }
+                })
+                .register(TerminatedBroadcast.class, new MessageCodec<TerminatedBroadcast>() {
+                    @Override
+                    public void encode(TerminatedBroadcast message, ByteBuffer out) {
+                        MessageCodec.putString(out, message.getSource());
+                    }
+
+                    @Override
+                    public TerminatedBroadcast decode(ByteBuffer in) {
+                        return new TerminatedBroadcast(MessageCodec.getString(in));
+                    }
+                })
+                .register(CrashedBroadcast.class, new MessageCodec<CrashedBroadcast>() {
+                    @Override
+                    public void encode(CrashedBroadcast message, ByteBuffer out) {
+                        MessageCodec.putString(out, message.getSource());
+                    }
+
+                    @Override
+                    public CrashedBroadcast decode(ByteBuffer in) {
+                        return new CrashedBroadcast(MessageCodec.getString(in));
+                    }
+                })
+                .register(PoseEvent.class, new MessageCodec<PoseEvent>() {
+                    @Override
+                    public void encode(PoseEvent message, ByteBuffer out) {
+                        Pose pose = message.getPose();
+                        out.putFloat(pose.getX());
+                        out.putFloat(pose.getY());
+                        out.putFloat(pose.getYaw());
+                        out.putInt(pose.getTime());
+                    }
+
+                    @Override
+                    public PoseEvent decode(ByteBuffer in) {
+                        return new PoseEvent(new Pose(in.getFloat(), in.getFloat(), in.getFloat(), in.getInt()));
+                    }
+                })
+                .register(DetectObjectsEvent.class, new MessageCodec<DetectObjectsEvent>() {
+                    @Override
+                    public void encode(DetectObjectsEvent message, ByteBuffer out) {
+                        StampedDetectedObjects frame = message.getDetectedObjects();
+                        out.putInt(message.getTick());
+                        out.putInt(frame.getTime());
+                        out.putInt(frame.getDetectedObjects().size());
+                        for (DetectedObject object : frame.getDetectedObjects()) {
+                            MessageCodec.putString(out, object.getId());
+                            MessageCodec.putString(out, object.getDescription());
+                        }
+                    }
+
+                    @Override
+                    public DetectObjectsEvent decode(ByteBuffer in) {
+                        int tick = in.getInt();
+                        int time = in.getInt();
+                        int count = in.getInt();
+                        List<DetectedObject> objects = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            objects.add(new DetectedObject(MessageCodec.getString(in), MessageCodec.getString(in)));
+                        }
+                        return new DetectObjectsEvent(new StampedDetectedObjects(time, objects), tick);
+                    }
+                })
+                .register(TrackedObjectsEvent.class, new MessageCodec<TrackedObjectsEvent>() {
+                    @Override
+                    public void encode(TrackedObjectsEvent message, ByteBuffer out) {
+                        out.putInt(message.getTrackedObjects().size());
+                        for (TrackedObject object : message.getTrackedObjects()) {
+                            MessageCodec.putString(out, object.getId());
+                            out.putInt(object.getTimestamp());
+                            MessageCodec.putString(out, object.getDescription());
+                            out.putInt(object.getCoordinates().size());
+                            for (CloudPoint point : object.getCoordinates()) {
+                                out.putDouble(point.getX());
+                                out.putDouble(point.getY());
+                            }
+                        }
+                    }
+
+                    @Override
+                    public TrackedObjectsEvent decode(ByteBuffer in) {
+                        int count = in.getInt();
+                        List<TrackedObject> objects = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            String id = MessageCodec.getString(in);
+                            int timestamp = in.getInt();
+                            String description = MessageCodec.getString(in);
+                            int points = in.getInt();
+                            List<CloudPoint> coordinates = new ArrayList<>(points);
+                            for (int j = 0; j < points; j++) {
+                                coordinates.add(new CloudPoint(in.getDouble(), in.getDouble()));
+                            }
+                            objects.add(new TrackedObject(id, timestamp, description, coordinates));
+                        }
+                        return new TrackedObjectsEvent(objects);
+                    }
+                });
+    }
+}
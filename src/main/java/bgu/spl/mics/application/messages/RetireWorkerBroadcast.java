@@ -0,0 +1,39 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Broadcast;
+
+import java.util.function.Predicate;
+
+/**
+ * A broadcast sent by the LiDarSupervisor to retire one spare LiDAR worker.
+ * The worker stops taking new DetectObjectsEvents, finishes those it already
+ * has and then terminates.
+ */
+public class RetireWorkerBroadcast implements Broadcast {
+
+    private final int workerId;
+
+    /**
+     * @param workerId The ID of the worker to retire.
+     */
+    public RetireWorkerBroadcast(int workerId) {
+        this.workerId = workerId;
+    }
+
+    /**
+     * @return The ID of the worker to retire.
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * A subscription filter for the broadcasts addressed to one worker.
+     *
+     * @param workerId The worker's ID.
+     * @return A predicate accepting only the broadcasts retiring {@code workerId}.
+     */
+    public static Predicate<RetireWorkerBroadcast> to(int workerId) {
+        return retire -> retire.getWorkerId() == workerId;
+    }
+}
@@ -1,11 +1,13 @@
 package bgu.spl.mics.application.messages;
 
-import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlBroadcast;
+
+import java.util.function.Predicate;
 
 /**
  * A broadcast message sent to notify all MicroServices that the system is terminating.
  */
-public class TerminatedBroadcast implements Broadcast {
+public class TerminatedBroadcast implements ControlBroadcast {
     private final String source;
 
     /**
@@ -25,4 +27,15 @@ public class TerminatedBroadcast implements Broadcast {
     public String getSource() {
         return source;
     }
+
+    /**
+     * A subscription filter for the termination signal of one sender, so that
+     * a service is not woken by the signals of the others.
+     *
+     * @param source The sender's name.
+     * @return A predicate accepting only the broadcasts from {@code source}.
+     */
+    public static Predicate<TerminatedBroadcast> from(String source) {
+        return terminated -> source.equals(terminated.getSource());
+    }
 }
@@ -1,12 +1,12 @@
 package bgu.spl.mics.application.messages;
 
-import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.TimedBroadcast;
 
 /**
  * TickBroadcast is a message sent periodically by the TimeService
  * to indicate the passage of time (ticks) in the system.
  */
-public class TickBroadcast implements Broadcast {
+public class TickBroadcast implements TimedBroadcast {
 
     private final int time;
 
@@ -24,6 +24,7 @@ public class TickBroadcast implements Broadcast {
      *
      * @return The current tick time.
      */
+    @Override
     public int getTime() {
         return time;
     }
@@ -16,11 +16,16 @@ import java.util.List;
  * Responsible for detecting objects in the environment.
  */
 public class Camera {
+    private static final Gson GSON = new Gson();
+
     private final int id;
     private final int frequency;
     private STATUS status;
-    private final List<StampedDetectedObjects> detectedObjectsList;
+    private final List<StampedDetectedObjects> detectedObjectsList; // Every frame, or only those read ahead when streaming
     private StampedDetectedObjects lastDetectedObjects;
+    private final SensorStream<StampedDetectedObjects> stream; // null when all frames were loaded up front
+    private int streamedErrorTime = -1;
+    private int streamedLatestTime = -1;
 
 
     /**
@@ -37,6 +42,43 @@ public class Camera {
         this.status = STATUS.UP; // Default status is UP
         this.detectedObjectsList = loadDetectedObjects(filePath, cameraKey);
         this.lastDetectedObjects = null; // Initialize as null
+        this.stream = null;
+    }
+
+    /**
+     * Constructor for Camera over frames that were already loaded, e.g. by a
+     * {@link SensorDataCache}. The list is only read, so it may be shared.
+     *
+     * @param id              The ID of the camera.
+     * @param frequency       The frequency at which the camera sends new events.
+     * @param detectedObjects The camera's frames.
+     */
+    public Camera(int id, int frequency, List<StampedDetectedObjects> detectedObjects) {
+        this.id = id;
+        this.frequency = frequency;
+        this.status = STATUS.UP;
+        this.detectedObjectsList = detectedObjects;
+        this.lastDetectedObjects = null;
+        this.stream = null;
+    }
+
+    /**
+     * Constructor for Camera over frames read incrementally from a stream.
+     * Only the frames read ahead of the camera's clock and not yet published
+     * are kept, so the camera's error time and last frame are unknown until
+     * the stream reaches them.
+     *
+     * @param id        The ID of the camera.
+     * @param frequency The frequency at which the camera sends new events.
+     * @param stream    The camera's frames, parsed with {@link #parseFrame(JsonObject)}.
+     */
+    public Camera(int id, int frequency, SensorStream<StampedDetectedObjects> stream) {
+        this.id = id;
+        this.frequency = frequency;
+        this.status = STATUS.UP;
+        this.detectedObjectsList = new ArrayList<>();
+        this.lastDetectedObjects = null;
+        this.stream = stream;
     }
 
     public Camera(int id, int frequency) {
@@ -44,9 +86,20 @@ public class Camera {
         this.frequency = frequency;
         this.detectedObjectsList = new ArrayList<>();
         this.lastDetectedObjects = null;
+        this.stream = null;
 
     }
 
+    /**
+     * Parses one line of a camera stream, a frame in the same form as in camera data files.
+     *
+     * @param json The line's object.
+     * @return The frame.
+     */
+    public static StampedDetectedObjects parseFrame(JsonObject json) {
+        return GSON.fromJson(json, StampedDetectedObjects.class);
+    }
+
     /**
      * Loads the detected objects data from a JSON file.
      *
@@ -64,6 +117,33 @@ public class Camera {
         }
     }
 
+    /**
+     * @return true if the camera reads its frames from a stream.
+     */
+    public boolean isStreaming() {
+        return stream != null;
+    }
+
+    /**
+     * Reads the frames detected up to {@code tick} from the camera's stream,
+     * waiting for the stream to catch up if needed. Does nothing for a camera
+     * whose frames were loaded up front.
+     *
+     * @param tick The current simulation time.
+     */
+    public void readThrough(int tick) {
+        if (stream == null) {
+            return;
+        }
+        for (StampedDetectedObjects frame = stream.pollThrough(tick); frame != null; frame = stream.pollThrough(tick)) {
+            detectedObjectsList.add(frame);
+            streamedLatestTime = frame.getTime();
+            if (streamedErrorTime == -1 && frame.getDetectedObjects().stream().anyMatch(obj -> "ERROR".equals(obj.getId()))) {
+                streamedErrorTime = frame.getTime();
+            }
+        }
+    }
+
     public StampedDetectedObjects getLastDetectedObjects() {
         return lastDetectedObjects;
     }
@@ -79,10 +159,14 @@ public class Camera {
             lastDetectedObjects = new StampedDetectedObjects(time, Collections.emptyList());
             return lastDetectedObjects;
         }
+        if (stream != null) {
+            detectedObjectsList.removeIf(frame -> frame.getTime() + frequency < time); // Already published
+        }
 
         StampedDetectedObjects detected = detectedObjectsList.stream()
                 .filter(detectedObj -> detectedObj.getTime() + frequency == time)
                 .findFirst() // Retrieve the first matching StampedDetectedObjects
+                .map(frame -> new StampedDetectedObjects(frame.getTime(), frame.getDetectedObjects())) // Own copy, as the frame may be shared
                 .orElse(new StampedDetectedObjects(time, Collections.emptyList())); // Default to empty if no match
 
         // Check if all objects in the detected StampedDetectedObjects have valid IDs
@@ -99,9 +183,16 @@ public class Camera {
     /**
      * Returns the latest time that an object will be detected by the camera.
      *
-     * @return The latest detection time, adjusted by the camera's frequency.
+     * @return The latest detection time, adjusted by the camera's frequency,
+     *         or {@link SensorStream#OPEN} while the camera's stream has not ended.
      */
     public int getLatestDetectionTime() {
+        if (stream != null) {
+            if (!stream.isEnded()) {
+                return SensorStream.OPEN;
+            }
+            return streamedLatestTime == -1 ? -1 : streamedLatestTime + frequency;
+        }
         int maxTime = detectedObjectsList.stream()
                 .mapToInt(StampedDetectedObjects::getTime)
                 .max()
@@ -109,6 +200,19 @@ public class Camera {
         return maxTime == -1 ? -1 : maxTime + frequency;
     }
 
+    /**
+     * Returns the ticks at which the camera publishes a frame, i.e. every
+     * detection time delayed by the camera's frequency.
+     *
+     * @return The camera's publishing schedule, or null for a streaming camera, which may publish at any tick.
+     */
+    public TickSchedule getSchedule() {
+        if (stream != null) {
+            return null;
+        }
+        return TickSchedule.of(detectedObjectsList.stream()
+                .mapToInt(detected -> detected.getTime() + frequency));
+    }
 
     public void addDetectedObjects(StampedDetectedObjects detectedObjects) {
         if (detectedObjects == null || detectedObjects.getDetectedObjects() == null) {
@@ -144,9 +248,13 @@ public class Camera {
      * Checks if the camera has any detected objects with an "ERROR" ID.
      *
      * @return The time of the first occurrence of an "ERROR" detected object,
-     *         or -1 if no errors are found.
+     *         or -1 if no errors are found. A streaming camera only knows
+     *         of the errors in the frames read so far.
      */
     public int hasError() {
+        if (stream != null) {
+            return streamedErrorTime;
+        }
         return detectedObjectsList.stream()
                 .filter(detected -> detected.getDetectedObjects().stream()
                         .anyMatch(obj -> "ERROR".equals(obj.getId())))
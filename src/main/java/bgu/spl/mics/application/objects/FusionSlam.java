@@ -6,13 +6,14 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Manages the fusion of sensor data for simultaneous localization and mapping (SLAM).
  * Combines data from multiple sensors (e.g., LiDAR, camera) to build and update a global map.
- * Implements the Singleton pattern to ensure a single instance of FusionSlam exists.
+ * A shared instance is available through {@link #getInstance()}; each
+ * simulation context creates its own so that concurrent runs keep separate maps.
  */
 public class FusionSlam {
 
     // Singleton instance holder
     private static class FusionSlamHolder {
-        private static final FusionSlam INSTANCE = new FusionSlam();
+        private static final FusionSlam INSTANCE = new FusionSlam(StatisticalFolder.getInstance());
     }
 
     // Retrieve the singleton instance
@@ -23,9 +24,12 @@ public class FusionSlam {
     // Fields for managing SLAM data
     private final Map<String, LandMark> landmarks;
     private final List<Pose> poses;
+    private final StatisticalFolder statistics; // Counts the landmarks this map discovers
+    private volatile OccupancyGrid occupancyGrid; // Also rasterizes every observation when set
 
-    // Private constructor to enforce singleton pattern
-    private FusionSlam() {
+    // Creates an empty map reporting to the given statistics
+    public FusionSlam(StatisticalFolder statistics) {
+        this.statistics = statistics;
         this.landmarks = new ConcurrentHashMap<>();
         this.poses = Collections.synchronizedList(new ArrayList<>());
     }
@@ -44,9 +48,13 @@ public class FusionSlam {
         synchronized (landmarks) {
             LandMark landmark = landmarks.get(id);
             List<CloudPoint> transformedCoordinates = transformCoordinates(newCoordinates, currentPose);
+            OccupancyGrid grid = occupancyGrid;
+            if (grid != null) {
+                grid.addObservation(transformedCoordinates);
+            }
             if (landmark == null) {
                 landmarks.put(id, new LandMark(id, description, transformedCoordinates));
-                StatisticalFolder.getInstance().incrementLandmarks(1);
+                statistics.incrementLandmarks(1);
             } else {
                 landmark.setCoordinates(averageCoordinates(landmark.getCoordinates(), transformedCoordinates));
             }
@@ -86,6 +94,20 @@ public class FusionSlam {
     }
 
 
+    /**
+     * Starts maintaining an occupancy grid from the observations that follow.
+     *
+     * @param occupancyGrid The grid, or null to stop.
+     */
+    public void setOccupancyGrid(OccupancyGrid occupancyGrid) {
+        this.occupancyGrid = occupancyGrid;
+    }
+
+    // Retrieve the occupancy grid, null unless one was set
+    public OccupancyGrid getOccupancyGrid() {
+        return occupancyGrid;
+    }
+
     // Retrieve all landmarks
     public Map<String, LandMark> getLandmarks() {
         return landmarks;
@@ -1,12 +1,14 @@
 package bgu.spl.mics.application.objects;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
 import java.util.List;
 
 /**
@@ -18,6 +20,9 @@ public class GPSIMU {
     private int currentTick; // Represents the current time in ticks.
     private final STATUS status;
     private final List<Pose> poseList; // A list of Pose objects representing time-stamped poses of the robot.
+    private final SensorStream<Pose> stream; // null when all poses were loaded up front
+    private final ArrayDeque<Pose> readAhead; // Streamed poses not yet reached by the clock
+    private int streamedLatestTime = -1;
 
 
     /**
@@ -28,6 +33,47 @@ public class GPSIMU {
         this.currentTick = 0;
         this.status = STATUS.UP;
         this.poseList = loadPoseList(filePath);
+        this.stream = null;
+        this.readAhead = null;
+    }
+
+    /**
+     * Constructor for GPSIMU over poses that were already loaded, e.g. by a
+     * {@link SensorDataCache}. The list is only read, so it may be shared.
+     *
+     * @param poses The time-stamped poses.
+     */
+    public GPSIMU(List<Pose> poses) {
+        this.currentTick = 0;
+        this.status = STATUS.UP;
+        this.poseList = poses;
+        this.stream = null;
+        this.readAhead = null;
+    }
+
+    /**
+     * Constructor for GPSIMU over poses read incrementally from a stream.
+     * Poses are dropped once the clock has passed them, so the last pose is
+     * unknown until the stream ends.
+     *
+     * @param stream The poses, parsed with {@link #parsePose(JsonObject)}.
+     */
+    public GPSIMU(SensorStream<Pose> stream) {
+        this.currentTick = 0;
+        this.status = STATUS.UP;
+        this.poseList = null;
+        this.stream = stream;
+        this.readAhead = new ArrayDeque<>();
+    }
+
+    /**
+     * Parses one line of a pose stream, a pose in the same form as in pose data files.
+     *
+     * @param json The line's object.
+     * @return The pose.
+     */
+    public static Pose parsePose(JsonObject json) {
+        return new Gson().fromJson(json, Pose.class);
     }
 
     private List<Pose> loadPoseList(String filePath) {
@@ -59,7 +105,20 @@ public class GPSIMU {
     }
 
 
+    /**
+     * @return true if the poses come from a stream.
+     */
+    public boolean isStreaming() {
+        return stream != null;
+    }
+
+    /**
+     * @return The time of the last pose, or {@link SensorStream#OPEN} while the pose stream has not ended.
+     */
     public int getLatestDetectionTime() {
+        if (stream != null) {
+            return stream.isEnded() ? streamedLatestTime : SensorStream.OPEN;
+        }
         int maxTime = poseList.stream()
                 .mapToInt(Pose::getTime)
                 .max()
@@ -67,7 +126,48 @@ public class GPSIMU {
         return maxTime;
     }
 
+    /**
+     * @return The ticks at which a pose is available, or null when streaming, as any tick may have one.
+     */
+    public TickSchedule getSchedule() {
+        if (stream != null) {
+            return null;
+        }
+        return TickSchedule.of(poseList.stream().mapToInt(Pose::getTime));
+    }
+
+    /**
+     * Reads the poses up to {@code tick} from the stream, waiting for it to
+     * catch up if needed, and forgets the poses before {@code tick}. Does
+     * nothing for poses loaded up front.
+     *
+     * @param tick The current tick.
+     */
+    public void readThrough(int tick) {
+        if (stream == null) {
+            return;
+        }
+        for (Pose pose = stream.pollThrough(tick); pose != null; pose = stream.pollThrough(tick)) {
+            readAhead.add(pose);
+            streamedLatestTime = pose.getTime();
+        }
+        while (!readAhead.isEmpty() && readAhead.peek().getTime() < tick) {
+            readAhead.poll();
+        }
+    }
+
+    /**
+     * Finds the pose at the given time. A streaming GPSIMU reads up to that
+     * time first, so times must not go backwards.
+     *
+     * @param timeTick The time.
+     * @return The pose, or null if there is none at that time.
+     */
     public Pose getPoseByTime(int timeTick) {
+        if (stream != null) {
+            readThrough(timeTick);
+            return readAhead.isEmpty() || readAhead.peek().getTime() != timeTick ? null : readAhead.peek();
+        }
         return poseList.stream()
                 .filter(pose -> pose.getTime() == timeTick)
                 .findFirst()
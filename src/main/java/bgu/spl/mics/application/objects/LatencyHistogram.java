@@ -0,0 +1,119 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free log-linear histogram of latencies in nanoseconds.
+ * Every power-of-two range is split into 16 linear sub-buckets, so any
+ * recorded value is reported with at most ~6% relative error while the whole
+ * histogram stays a fixed array of 1024 counters regardless of how many values
+ * are recorded.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * @return The largest recorded value in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds, or 0 if empty.
+     */
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Returns the value at the given quantile.
+     *
+     * @param quantile A quantile in [0, 1], e.g. 0.99 for the 99th percentile.
+     * @return The upper bound of the bucket holding the quantile, in nanoseconds.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Exports the summary of this histogram, converted to microseconds.
+     *
+     * @return A JSON object with the count, mean, p50, p99, p999 and max.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", getCount());
+        json.addProperty("meanMicros", getMean() / 1000.0);
+        json.addProperty("p50Micros", getValueAtQuantile(0.50) / 1000.0);
+        json.addProperty("p99Micros", getValueAtQuantile(0.99) / 1000.0);
+        json.addProperty("p999Micros", getValueAtQuantile(0.999) / 1000.0);
+        json.addProperty("maxMicros", getMax() / 1000.0);
+        return json;
+    }
+
+    // Values below 16 get an exact bucket; larger ones are indexed by magnitude and 4 leading bits
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int sub = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int index) {
+        int bucket = index / SUB_BUCKETS;
+        long sub = index % SUB_BUCKETS;
+        if (bucket == 0) {
+            return sub;
+        }
+        long lower = (SUB_BUCKETS + sub) << (bucket - 1);
+        return lower + (1L << (bucket - 1)) - 1;
+    }
+}
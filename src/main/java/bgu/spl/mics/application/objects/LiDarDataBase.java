@@ -8,8 +8,14 @@ import java.io.IOException;
 import java.util.*;
 
 /**
- * LiDarDataBase is a singleton class responsible for managing LiDAR data.
+ * LiDarDataBase is responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * Once loaded the database is only read, so a single instance from
+ * {@link #load(String)} can be shared by every worker of every simulation in the process.
+ * A database from {@link #stream(SensorStream, int)} instead reads its data
+ * as the workers' clocks advance and only holds a window of recent samples;
+ * it is shared by the workers of one simulation.
  */
 public class LiDarDataBase {
 
@@ -26,24 +32,97 @@ public class LiDarDataBase {
     private final List<StampedCloudPoints> cloudPoints;
 
     /**
-     * Private constructor for LiDarDataBase to ensure singleton pattern.
+     * The files already loaded into this database, so that asking for the same file again does not duplicate its data.
+     */
+    private final Set<String> loadedFiles;
+
+    private final SensorStream<StampedCloudPoints> stream; // null when the data was loaded up front
+    private final int retention; // Ticks a streamed sample is kept after its time
+    private final Map<Integer, Integer> readerTicks = new HashMap<>(); // Each worker's latest tick, by worker ID
+    private int streamedErrorTime = -1;
+    private int streamedLatestTime = -1;
+
+    /**
+     * Private constructor; instances come from {@link #getInstance(String)}, {@link #load(String)}
+     * or {@link #stream(SensorStream, int)}.
      */
     private LiDarDataBase() {
+        this(null, 0);
+    }
+
+    private LiDarDataBase(SensorStream<StampedCloudPoints> stream, int retention) {
         this.cloudPoints = new ArrayList<>();
+        this.loadedFiles = new HashSet<>();
+        this.stream = stream;
+        this.retention = retention;
     }
 
     /**
-     * Returns the singleton instance of LiDarDataBase.
+     * Returns the singleton instance of LiDarDataBase, loading the given file into it on first use.
      *
      * @param filePath The path to the LiDAR data file.
      * @return The singleton instance of LiDarDataBase.
      */
     public static LiDarDataBase getInstance(String filePath) {
         LiDarDataBase instance = Holder.INSTANCE;
-        instance.loadData(filePath);
+        synchronized (instance) {
+            if (instance.loadedFiles.add(filePath)) {
+                instance.loadData(filePath);
+            }
+        }
         return instance;
     }
 
+    /**
+     * Creates a database holding the data of a single file, independent of the singleton.
+     *
+     * @param filePath The path to the LiDAR data file.
+     * @return The loaded database.
+     */
+    public static LiDarDataBase load(String filePath) {
+        LiDarDataBase database = new LiDarDataBase();
+        database.loadedFiles.add(filePath);
+        database.loadData(filePath);
+        return database;
+    }
+
+    /**
+     * Creates a database over samples read incrementally from a stream.
+     * A sample is forgotten once the slowest worker reading it is
+     * {@code retention} ticks past its time, so the retention must cover the
+     * longest delay between a detection and its processing by a worker, i.e.
+     * the largest camera frequency plus the largest worker frequency.
+     *
+     * @param stream    The samples, parsed with {@link #parseCloudPoints(JsonObject)}.
+     * @param retention The number of ticks a sample is kept after its time.
+     * @return The database, empty until a worker reads from it.
+     */
+    public static LiDarDataBase stream(SensorStream<StampedCloudPoints> stream, int retention) {
+        return new LiDarDataBase(stream, retention);
+    }
+
+    /**
+     * Parses one sample, in the same form as in LiDAR data files and streams.
+     *
+     * @param jsonObject The sample's object.
+     * @return The sample.
+     */
+    public static StampedCloudPoints parseCloudPoints(JsonObject jsonObject) {
+        int time = jsonObject.get("time").getAsInt();
+        String id = jsonObject.get("id").getAsString();
+
+        // Manually process cloudPoints
+        JsonArray cloudPointsArray = jsonObject.get("cloudPoints").getAsJsonArray();
+        List<CloudPoint> cloudPoints = new ArrayList<>();
+        for (com.google.gson.JsonElement pointElement : cloudPointsArray) {
+            JsonArray pointArray = pointElement.getAsJsonArray();
+            double x = pointArray.get(0).getAsDouble();
+            double y = pointArray.get(1).getAsDouble();
+            cloudPoints.add(new CloudPoint(x, y));
+        }
+        return new StampedCloudPoints(id, time, cloudPoints);
+    }
+
     /**
      * Loads LiDAR data from a JSON file.
      *
@@ -58,23 +137,7 @@ public class LiDarDataBase {
 
             // Process each JSON element in the array
             for (com.google.gson.JsonElement element : jsonArray) {
-                JsonObject jsonObject = element.getAsJsonObject();
-                int time = jsonObject.get("time").getAsInt();
-                String id = jsonObject.get("id").getAsString();
-
-                // Manually process cloudPoints
-                JsonArray cloudPointsArray = jsonObject.get("cloudPoints").getAsJsonArray();
-                List<CloudPoint> cloudPoints = new ArrayList<>();
-                for (com.google.gson.JsonElement pointElement : cloudPointsArray) {
-                    JsonArray pointArray = pointElement.getAsJsonArray();
-                    double x = pointArray.get(0).getAsDouble();
-                    double y = pointArray.get(1).getAsDouble();
-                    cloudPoints.add(new CloudPoint(x, y));
-                }
-
-                // Create StampedCloudPoints object and add to list
-                StampedCloudPoints stampedCloudPoints = new StampedCloudPoints(id, time, cloudPoints);
-                data.add(stampedCloudPoints);
+                data.add(parseCloudPoints(element.getAsJsonObject()));
             }
 
             // Add all processed data to cloudPoints
@@ -85,7 +148,8 @@ public class LiDarDataBase {
     }
 
     /**
-     * Retrieves all stamped cloud points in the database.
+     * Retrieves all stamped cloud points in the database; for a streaming
+     * database, those read and not yet forgotten.
      *
      * @return A list of all stamped cloud points.
      */
@@ -93,4 +157,130 @@ public class LiDarDataBase {
         return Collections.unmodifiableList(cloudPoints);
     }
 
+    /**
+     * Collects the cloud points of the object {@code id} sampled at {@code time}.
+     *
+     * @param id   The object's ID.
+     * @param time The sample time.
+     * @return The points of every matching sample, in database order.
+     */
+    public List<CloudPoint> findCloudPoints(String id, int time) {
+        if (stream != null) {
+            synchronized (this) {
+                return collect(id, time);
+            }
+        }
+        return collect(id, time);
+    }
+
+    private List<CloudPoint> collect(String id, int time) {
+        List<CloudPoint> points = new ArrayList<>();
+        for (StampedCloudPoints scp : cloudPoints) {
+            if (scp.getId().equals(id) && scp.getTime() == time) {
+                points.addAll(scp.getCloudPoints());
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return true if the database reads its samples from a stream.
+     */
+    public boolean isStreaming() {
+        return stream != null;
+    }
+
+    /**
+     * Registers a worker reading a streamed database, at the tick of the
+     * slowest worker already registered, so that nothing it may still be
+     * sent is forgotten before it first reads; does nothing for a database
+     * loaded up front.
+     *
+     * @param reader The worker's ID.
+     */
+    public synchronized void register(int reader) {
+        if (stream != null) {
+            readerTicks.putIfAbsent(reader, slowestTick());
+        }
+    }
+
+    /**
+     * Unregisters a worker that has stopped reading, so that it no longer
+     * holds samples back.
+     *
+     * @param reader The worker's ID.
+     */
+    public synchronized void release(int reader) {
+        readerTicks.remove(reader);
+    }
+
+    /**
+     * Reads the samples up to {@code tick} from the stream, waiting for it to
+     * catch up if needed, and forgets those the slowest registered worker no
+     * longer needs. Every worker sharing the database calls this as its clock
+     * advances; it does nothing for a database loaded up front.
+     *
+     * @param reader The worker's ID.
+     * @param tick   The worker's current tick.
+     */
+    public synchronized void readThrough(int reader, int tick) {
+        if (stream == null) {
+            return;
+        }
+        readerTicks.merge(reader, tick, Math::max);
+        for (StampedCloudPoints sample = stream.pollThrough(tick); sample != null; sample = stream.pollThrough(tick)) {
+            cloudPoints.add(sample);
+            streamedLatestTime = sample.getTime();
+            if (streamedErrorTime == -1 && "ERROR".equals(sample.getId())) {
+                streamedErrorTime = sample.getTime();
+            }
+        }
+        int oldest = slowestTick() - retention;
+        if (!cloudPoints.isEmpty() && cloudPoints.get(0).getTime() < oldest) {
+            cloudPoints.removeIf(sample -> sample.getTime() < oldest);
+        }
+    }
+
+    // The lowest tick among the registered workers, 0 if none is registered
+    private int slowestTick() {
+        int slowest = Integer.MAX_VALUE;
+        for (int tick : readerTicks.values()) {
+            slowest = Math.min(slowest, tick);
+        }
+        return slowest == Integer.MAX_VALUE ? 0 : slowest;
+    }
+
+    /**
+     * @return The latest sample time, -1 if there are no samples, or
+     *         {@link SensorStream#OPEN} while the stream has not ended.
+     */
+    public int getLatestTime() {
+        if (stream != null) {
+            synchronized (this) {
+                return stream.isEnded() ? streamedLatestTime : SensorStream.OPEN;
+            }
+        }
+        return cloudPoints.stream()
+                .mapToInt(StampedCloudPoints::getTime)
+                .max()
+                .orElse(-1);
+    }
+
+    /**
+     * @return The time of the first sample with the id "ERROR", or -1 if there
+     *         is none; a streaming database only knows of the samples read so far.
+     */
+    public int getErrorTime() {
+        if (stream != null) {
+            synchronized (this) {
+                return streamedErrorTime;
+            }
+        }
+        return cloudPoints.stream()
+                .filter(scp -> "ERROR".equals(scp.getId()))
+                .mapToInt(StampedCloudPoints::getTime)
+                .findFirst()
+                .orElse(-1);
+    }
+
 }
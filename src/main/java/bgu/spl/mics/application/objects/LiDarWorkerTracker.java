@@ -15,6 +15,8 @@ public class LiDarWorkerTracker {
     private final STATUS status; // Enum indicating the status
     private List<TrackedObject> lastTrackedObjects;
     private final LiDarDataBase dataBase;
+    private final ParallelismTuner tuner; // Decides when a frame is large enough to process in parallel
+    private final VoxelFilter voxelFilter; // Downsamples each object's cloud, or null to forward every point
 
 
     /**
@@ -25,11 +27,39 @@ public class LiDarWorkerTracker {
      * @param dataBase The LiDarDataBase to retrieve cloud point data.
      */
     public LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase) {
+        this(id, frequency, dataBase, ParallelismTuner.parse(System.getProperty("gurion.lidar.parallelThreshold")));
+    }
+
+    /**
+     * Constructor for LiDarWorkerTracker.
+     *
+     * @param id The ID of the LiDAR worker.
+     * @param frequency The frequency of updates for this LiDAR worker.
+     * @param dataBase The LiDarDataBase to retrieve cloud point data.
+     * @param tuner Decides which frames are processed in parallel.
+     */
+    public LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase, ParallelismTuner tuner) {
+        this(id, frequency, dataBase, tuner, null);
+    }
+
+    /**
+     * Constructor for LiDarWorkerTracker.
+     *
+     * @param id The ID of the LiDAR worker.
+     * @param frequency The frequency of updates for this LiDAR worker.
+     * @param dataBase The LiDarDataBase to retrieve cloud point data.
+     * @param tuner Decides which frames are processed in parallel.
+     * @param voxelFilter Downsamples each object's cloud before it is sent to Fusion-SLAM, or null.
+     */
+    public LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase, ParallelismTuner tuner, VoxelFilter voxelFilter) {
         this.id = id;
         this.frequency = frequency;
         this.status = STATUS.UP; // Default status is UP
         this.lastTrackedObjects = new ArrayList<>();
         this.dataBase = dataBase;
+        this.tuner = tuner;
+        this.voxelFilter = voxelFilter;
+        dataBase.register(id);
     }
 
     /**
@@ -52,36 +82,99 @@ public class LiDarWorkerTracker {
 
     public int getId() {return id;}
 
+    /**
+     * @return The filter downsampling this worker's clouds, or null if they are forwarded whole.
+     */
+    public VoxelFilter getVoxelFilter() {
+        return voxelFilter;
+    }
+
+    /**
+     * Creates a worker with the same frequency, database and voxel filter as
+     * this one, e.g. a spare that takes over part of its load.
+     *
+     * @param id The new worker's ID.
+     * @return The new worker, with a tuner of the same settings but its own measurements.
+     */
+    public LiDarWorkerTracker copy(int id) {
+        return new LiDarWorkerTracker(id, frequency, dataBase, tuner.copy(), voxelFilter);
+    }
+
     /**
      * Gets the latest detection time from the database.
      *
-     * @return The latest detection time plus the frequency, or -1 if no detections.
+     * @return The latest detection time plus the frequency, or -1 if no detections;
+     *         {@link SensorStream#OPEN} or more while a streamed database has not ended.
      */
     public int getLatestDetectionTime() {
-        return dataBase.getCloudPoints().stream()
-                .mapToInt(StampedCloudPoints::getTime)
-                .max()
-                .orElse(-1) + frequency;
+        return dataBase.getLatestTime() + frequency;
+    }
+
+    /**
+     * Returns the ticks at which this worker's samples become due, i.e. every
+     * time stamp in the database delayed by the worker's frequency.
+     *
+     * @return The worker's release schedule, or null for a streamed database,
+     *         whose samples may become due at any tick.
+     */
+    public TickSchedule getSchedule() {
+        if (dataBase.isStreaming()) {
+            return null;
+        }
+        return TickSchedule.of(dataBase.getCloudPoints().stream()
+                .mapToInt(points -> points.getTime() + frequency));
+    }
+
+    /**
+     * @return true if the worker's database reads its samples from a stream.
+     */
+    public boolean isStreaming() {
+        return dataBase.isStreaming();
+    }
+
+    /**
+     * Reads the samples up to {@code tick} into a streamed database; does
+     * nothing if the database was loaded up front.
+     *
+     * @param tick The worker's current tick.
+     */
+    public void readThrough(int tick) {
+        dataBase.readThrough(id, tick);
+    }
+
+    /**
+     * Stops this worker from holding samples back in a streamed database,
+     * once it will no longer read them.
+     */
+    public void release() {
+        dataBase.release(id);
     }
 
 
     /**
      * Processes a list of detected objects and returns corresponding TrackedObjects.
+     * Objects are independent of each other, so frames at or above the tuner's
+     * threshold are split across the common fork-join pool; the result keeps
+     * the order of the detected objects either way.
      *
      * @param objectsToTrack The list of objects to track.
      * @param detectionTime The current time to set for the tracked objects.
      * @return A list of TrackedObjects representing the processed data.
      */
     public List<TrackedObject> processData(StampedDetectedObjects objectsToTrack, int detectionTime) {
-        lastTrackedObjects = new ArrayList<>();
+        List<DetectedObject> detectedObjects = objectsToTrack.getDetectedObjects();
+        long sentNanos = objectsToTrack.getSentNanos();
+        boolean parallel = tuner.shouldParallelize(detectedObjects.size());
 
         // Process each detected object individually
-        objectsToTrack.getDetectedObjects().forEach(detectedObject -> {
-            TrackedObject trackedObject = processSingleObject(detectedObject, detectionTime);
-                lastTrackedObjects.add(trackedObject);
-        });
+        long start = System.nanoTime();
+        List<TrackedObject> trackedObjects = (parallel ? detectedObjects.parallelStream() : detectedObjects.stream())
+                .map(detectedObject -> processSingleObject(detectedObject, detectionTime, sentNanos))
+                .collect(Collectors.toList());
+        tuner.record(detectedObjects.size(), System.nanoTime() - start, parallel);
 
-        return lastTrackedObjects;
+        lastTrackedObjects = trackedObjects;
+        return trackedObjects;
     }
 
 
@@ -90,21 +183,23 @@ public class LiDarWorkerTracker {
      *
      * @param detectedObject The detected object to process.
      * @param detectionTime The current time to set for the tracked object.
+     * @param sentNanos When the camera frame holding the object was sent.
      * @return A TrackedObject representing the processed data.
      */
-    private TrackedObject processSingleObject(DetectedObject detectedObject, int detectionTime) {
+    private TrackedObject processSingleObject(DetectedObject detectedObject, int detectionTime, long sentNanos) {
         // Retrieve relevant cloud points from the database
-        List<CloudPoint> cloudPoints = dataBase.getCloudPoints().stream()
-                .filter(scp -> scp.getId().equals(detectedObject.getId()) && scp.getTime() == detectionTime)
-                .flatMap(scp -> scp.getCloudPoints().stream())
-                .collect(Collectors.toList());
+        List<CloudPoint> cloudPoints = dataBase.findCloudPoints(detectedObject.getId(), detectionTime);
+        if (voxelFilter != null) {
+            cloudPoints = voxelFilter.apply(cloudPoints);
+        }
 
         // Create a TrackedObject with the retrieved data
         TrackedObject trackedObject = new TrackedObject(
                 detectedObject.getId(),
                 detectionTime,
                 detectedObject.getDescription(),
-                cloudPoints
+                cloudPoints,
+                sentNanos
         );
 
         return trackedObject;
@@ -125,10 +220,6 @@ public class LiDarWorkerTracker {
      * @return The error time if found, or -1 if no errors.
      */
     public int hasError() {
-        return dataBase.getCloudPoints().stream()
-                .filter(scp -> "ERROR".equals(scp.getId()))
-                .mapToInt(StampedCloudPoints::getTime)
-                .findFirst()
-                .orElse(-1);
+        return dataBase.getErrorTime();
     }
 }
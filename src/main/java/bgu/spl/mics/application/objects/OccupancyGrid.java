@@ -0,0 +1,329 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A sparse occupancy grid of the world, built from the global coordinates of
+ * the objects Fusion-SLAM maps.
+ * <p>
+ * The plane is divided into square cells of {@code resolution} meters, and
+ * the cells into square tiles of {@code tileSize} by {@code tileSize} cells
+ * that are only allocated once something falls into them. A cell counts the
+ * observations that crossed it, saturating at {@link Short#MAX_VALUE}. Each
+ * observation is a polyline, as are landmarks: its segments are rasterized
+ * into cells, the cells are grouped by tile and the tiles are updated
+ * independently, in parallel when the {@link ParallelismTuner} finds the
+ * observation large enough.
+ * <p>
+ * {@link #writeTo(OutputStream)} dumps the tiles in a compact binary form:
+ * a header {@code [int magic][double resolution][int tileSize][int tiles]},
+ * then per tile {@code [int tileX][int tileY][byte encoding]} followed either
+ * by {@code [int count]} and that many {@code [char cell][short hits]} pairs
+ * for the occupied cells, or by all cells as shorts in row-major order,
+ * whichever is smaller. Tiles come in order of their coordinates.
+ */
+public class OccupancyGrid {
+
+    public static final int MAGIC = 0x47524431; // "GRD1"
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    private final double resolution;
+    private final int tileSize;
+    private final int shift; // log2(tileSize)
+    private final int mask;
+    private final ConcurrentHashMap<Long, short[]> tiles = new ConcurrentHashMap<>();
+    private final ParallelismTuner tuner;
+    private long observations;
+
+    /**
+     * @param resolution The side of a cell in meters.
+     * @param tileSize   The side of a tile in cells, a power of two no larger than 256.
+     */
+    public OccupancyGrid(double resolution, int tileSize) {
+        this(resolution, tileSize, ParallelismTuner.parse(System.getProperty("gurion.grid.parallelThreshold")));
+    }
+
+    /**
+     * @param resolution The side of a cell in meters.
+     * @param tileSize   The side of a tile in cells, a power of two no larger than 256.
+     * @param tuner      Decides which observations are rasterized in parallel.
+     */
+    public OccupancyGrid(double resolution, int tileSize, ParallelismTuner tuner) {
+        if (!(resolution > 0)) {
+            throw new IllegalArgumentException("Grid resolution must be positive: " + resolution);
+        }
+        if (tileSize < 1 || tileSize > 256 || Integer.bitCount(tileSize) != 1) {
+            throw new IllegalArgumentException("Tile size must be a power of two of at most 256: " + tileSize);
+        }
+        this.resolution = resolution;
+        this.tileSize = tileSize;
+        this.shift = Integer.numberOfTrailingZeros(tileSize);
+        this.mask = tileSize - 1;
+        this.tuner = tuner;
+    }
+
+    /**
+     * Adds one observation of an object: every cell on the polyline through
+     * {@code points}, or the single cell of a lone point, gains a hit each
+     * time the polyline enters it. Observations are applied one at a time.
+     *
+     * @param points The object's points in global coordinates.
+     */
+    public synchronized void addObservation(List<CloudPoint> points) {
+        if (points.isEmpty()) {
+            return;
+        }
+        CellBuffer cells = new CellBuffer();
+        int previousX = cell(points.get(0).getX());
+        int previousY = cell(points.get(0).getY());
+        cells.add(previousX, previousY);
+        for (int i = 1; i < points.size(); i++) {
+            int x = cell(points.get(i).getX());
+            int y = cell(points.get(i).getY());
+            line(previousX, previousY, x, y, cells);
+            previousX = x;
+            previousY = y;
+        }
+
+        // Group the cells by tile, allocating new tiles here so that the tile tasks never touch the map
+        Map<Long, CellBuffer> byTile = new HashMap<>();
+        for (int i = 0; i < cells.size; i++) {
+            int x = cells.xs[i];
+            int y = cells.ys[i];
+            long key = tileKey(x >> shift, y >> shift);
+            byTile.computeIfAbsent(key, k -> {
+                tiles.computeIfAbsent(k, t -> new short[tileSize * tileSize]);
+                return new CellBuffer();
+            }).add(x & mask, y & mask);
+        }
+
+        boolean parallel = byTile.size() > 1 && tuner.shouldParallelize(cells.size);
+        long start = System.nanoTime();
+        (parallel ? byTile.entrySet().parallelStream() : byTile.entrySet().stream())
+                .forEach(entry -> hit(tiles.get(entry.getKey()), entry.getValue()));
+        tuner.record(cells.size, System.nanoTime() - start, parallel);
+        observations++;
+    }
+
+    /**
+     * @param x A global X coordinate.
+     * @param y A global Y coordinate.
+     * @return The hits of the cell holding the point, 0 if its tile was never allocated.
+     */
+    public synchronized int getHits(double x, double y) {
+        int cellX = cell(x);
+        int cellY = cell(y);
+        short[] tile = tiles.get(tileKey(cellX >> shift, cellY >> shift));
+        return tile == null ? 0 : tile[(cellY & mask) * tileSize + (cellX & mask)];
+    }
+
+    /**
+     * @return The side of a cell in meters.
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return The side of a tile in cells.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return The number of allocated tiles.
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return The number of cells with at least one hit.
+     */
+    public synchronized long getOccupiedCells() {
+        long occupied = 0;
+        for (short[] tile : tiles.values()) {
+            for (short hits : tile) {
+                if (hits != 0) {
+                    occupied++;
+                }
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * @return The number of observations added.
+     */
+    public synchronized long getObservations() {
+        return observations;
+    }
+
+    /**
+     * Writes the grid to a file in the binary form described above.
+     *
+     * @param file The file.
+     * @return The number of bytes written.
+     * @throws IOException if the file cannot be written.
+     */
+    public long writeTo(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeTo(out);
+        }
+        return Files.size(file);
+    }
+
+    /**
+     * Writes the grid in the binary form described above.
+     *
+     * @param stream The stream; it is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    public synchronized void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        Long[] keys = tiles.keySet().toArray(new Long[0]);
+        Arrays.sort(keys);
+        out.writeInt(MAGIC);
+        out.writeDouble(resolution);
+        out.writeInt(tileSize);
+        out.writeInt(keys.length);
+        for (Long key : keys) {
+            short[] tile = tiles.get(key);
+            int occupied = 0;
+            for (short hits : tile) {
+                if (hits != 0) {
+                    occupied++;
+                }
+            }
+            out.writeInt((int) (key >> 32));
+            out.writeInt((int) (long) key);
+            if (occupied * 4 + 4 < tile.length * 2) {
+                out.writeByte(SPARSE);
+                out.writeInt(occupied);
+                for (int i = 0; i < tile.length; i++) {
+                    if (tile[i] != 0) {
+                        out.writeChar(i);
+                        out.writeShort(tile[i]);
+                    }
+                }
+            } else {
+                out.writeByte(DENSE);
+                for (short hits : tile) {
+                    out.writeShort(hits);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a grid written by {@link #writeTo(OutputStream)}.
+     *
+     * @param stream The stream, positioned at the grid.
+     * @return The grid.
+     * @throws IOException if the stream cannot be read or does not hold a grid.
+     */
+    public static OccupancyGrid read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an occupancy grid");
+        }
+        OccupancyGrid grid = new OccupancyGrid(in.readDouble(), in.readInt(), ParallelismTuner.disabled());
+        int count = in.readInt();
+        for (int t = 0; t < count; t++) {
+            int tileX = in.readInt();
+            int tileY = in.readInt();
+            short[] tile = new short[grid.tileSize * grid.tileSize];
+            byte encoding = in.readByte();
+            if (encoding == SPARSE) {
+                int occupied = in.readInt();
+                for (int i = 0; i < occupied; i++) {
+                    tile[in.readChar()] = in.readShort();
+                }
+            } else if (encoding == DENSE) {
+                for (int i = 0; i < tile.length; i++) {
+                    tile[i] = in.readShort();
+                }
+            } else {
+                throw new IOException("Unknown tile encoding: " + encoding);
+            }
+            grid.tiles.put(tileKey(tileX, tileY), tile);
+        }
+        return grid;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / resolution);
+    }
+
+    private static long tileKey(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+
+    // Adds the cells of the segment from (x0, y0), exclusive, to (x1, y1), inclusive (Bresenham)
+    private static void line(int x0, int y0, int x1, int y1, CellBuffer cells) {
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int stepX = x0 < x1 ? 1 : -1;
+        int stepY = y0 < y1 ? 1 : -1;
+        int error = dx + dy;
+        int x = x0;
+        int y = y0;
+        while (x != x1 || y != y1) {
+            int doubled = 2 * error;
+            if (doubled >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (doubled <= dx) {
+                error += dx;
+                y += stepY;
+            }
+            cells.add(x, y);
+        }
+    }
+
+    // Adds a hit to each of a tile's cells, saturating; cells may repeat
+    private void hit(short[] tile, CellBuffer cells) {
+        for (int i = 0; i < cells.size; i++) {
+            int index = cells.ys[i] * tileSize + cells.xs[i];
+            if (tile[index] != Short.MAX_VALUE) {
+                tile[index]++;
+            }
+        }
+    }
+
+    // A growable list of cell coordinates over two int arrays
+    private static final class CellBuffer {
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        int size;
+
+        void add(int x, int y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decides whether a batch of independent items is large enough to be worth
+ * splitting across the fork-join pool.
+ * <p>
+ * In adaptive mode the tuner keeps an exponentially weighted moving average of
+ * the measured cost per item and sets the threshold to the number of items
+ * whose sequential cost covers {@link #TARGET_BATCH_NANOS}, well above the
+ * cost of forking and joining the tasks. Cheap items therefore stay
+ * sequential while expensive ones (e.g. large database scans) go parallel
+ * from a few items up.
+ */
+public class ParallelismTuner {
+
+    // Sequential work a batch must amount to before splitting it pays off
+    static final long TARGET_BATCH_NANOS = 100_000L;
+    private static final int MIN_THRESHOLD = 8;
+    private static final int MAX_THRESHOLD = 1 << 16;
+    private static final double ALPHA = 0.2; // Weight of the newest sample in the moving average
+
+    private final boolean adaptive;
+    private volatile int threshold;
+    private volatile double nanosPerItem = -1; // Moving average, -1 until the first sample
+
+    private ParallelismTuner(boolean adaptive, int threshold) {
+        this.adaptive = adaptive;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return A tuner that never parallelizes.
+     */
+    public static ParallelismTuner disabled() {
+        return new ParallelismTuner(false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param threshold The smallest batch to parallelize.
+     * @return A tuner with a fixed threshold.
+     */
+    public static ParallelismTuner fixed(int threshold) {
+        return new ParallelismTuner(false, Math.max(1, threshold));
+    }
+
+    /**
+     * @return A tuner that derives its threshold from the measured cost per item.
+     */
+    public static ParallelismTuner adaptive() {
+        return new ParallelismTuner(true, 64);
+    }
+
+    /**
+     * Parses a setting such as the {@code gurion.lidar.parallelThreshold}
+     * system property: "off", "auto" or a fixed threshold.
+     *
+     * @param setting The setting, null for "auto".
+     * @return The matching tuner.
+     */
+    public static ParallelismTuner parse(String setting) {
+        if (setting == null || setting.trim().isEmpty() || "auto".equalsIgnoreCase(setting.trim())) {
+            return adaptive();
+        }
+        if ("off".equalsIgnoreCase(setting.trim())) {
+            return disabled();
+        }
+        try {
+            return fixed(Integer.parseInt(setting.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid parallel threshold: " + setting, e);
+        }
+    }
+
+    /**
+     * @return A tuner with the same settings as this one and none of its measurements, e.g. for another worker.
+     */
+    public ParallelismTuner copy() {
+        return adaptive ? adaptive() : new ParallelismTuner(false, threshold);
+    }
+
+    /**
+     * @param items The size of the batch about to be processed.
+     * @return true if the batch should be processed in parallel.
+     */
+    public boolean shouldParallelize(int items) {
+        return items >= threshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Feeds back how long a batch took. Parallel timings are scaled by the pool
+     * size to estimate the sequential cost.
+     *
+     * @param items        The size of the batch.
+     * @param elapsedNanos The wall-clock time the batch took.
+     * @param parallel     Whether the batch ran in parallel.
+     */
+    public void record(int items, long elapsedNanos, boolean parallel) {
+        if (!adaptive || items == 0) {
+            return;
+        }
+        double sample = (double) elapsedNanos / items;
+        if (parallel) {
+            sample *= Math.min(items, ForkJoinPool.getCommonPoolParallelism());
+        }
+        double average = nanosPerItem < 0 ? sample : ALPHA * sample + (1 - ALPHA) * nanosPerItem;
+        nanosPerItem = average;
+        long wanted = (long) Math.ceil(TARGET_BATCH_NANOS / Math.max(average, 1.0));
+        threshold = (int) Math.max(MIN_THRESHOLD, Math.min(MAX_THRESHOLD, wanted));
+    }
+
+    /**
+     * @return The current threshold.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return The estimated sequential cost per item in nanoseconds, or -1 before any sample.
+     */
+    public double getNanosPerItem() {
+        return nanosPerItem;
+    }
+}
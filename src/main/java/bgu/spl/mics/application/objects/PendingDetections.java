@@ -0,0 +1,87 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The camera frames a LiDAR worker has received but may not process yet,
+ * ordered by the tick at which they become due (detection time plus the
+ * worker's frequency). Frames due at the same tick keep their arrival order.
+ * <p>
+ * Backed by a binary min-heap, so adding a frame costs O(log n) and taking the
+ * k frames due at a tick costs O(k log n) however many frames are pending.
+ * Not thread-safe; it is owned by a single LiDAR service.
+ */
+public class PendingDetections {
+
+    // A pending frame with its due tick
+    private static final class Pending {
+        final int due;
+        final long order;
+        final StampedDetectedObjects frame;
+
+        Pending(int due, long order, StampedDetectedObjects frame) {
+            this.due = due;
+            this.order = order;
+            this.frame = frame;
+        }
+    }
+
+    private final int frequency;
+    private final PriorityQueue<Pending> heap;
+    private long nextOrder;
+
+    /**
+     * @param frequency The worker's frequency; a frame detected at t is due at t + frequency.
+     */
+    public PendingDetections(int frequency) {
+        this.frequency = frequency;
+        this.heap = new PriorityQueue<>((a, b) -> a.due != b.due
+                ? Integer.compare(a.due, b.due)
+                : Long.compare(a.order, b.order));
+    }
+
+    /**
+     * Adds a received frame.
+     *
+     * @param frame The frame.
+     */
+    public void add(StampedDetectedObjects frame) {
+        heap.add(new Pending(frame.getTime() + frequency, nextOrder++, frame));
+    }
+
+    /**
+     * Removes and returns every frame due at or before {@code tick}.
+     *
+     * @param tick The current tick.
+     * @return The due frames in due-tick order, possibly empty.
+     */
+    public List<StampedDetectedObjects> pollDue(int tick) {
+        if (heap.isEmpty() || heap.peek().due > tick) {
+            return Collections.emptyList();
+        }
+        List<StampedDetectedObjects> due = new ArrayList<>();
+        while (!heap.isEmpty() && heap.peek().due <= tick) {
+            due.add(heap.poll().frame);
+        }
+        return due;
+    }
+
+    /**
+     * Removes and returns every pending frame, e.g. when the worker shuts down.
+     *
+     * @return All pending frames in due-tick order.
+     */
+    public List<StampedDetectedObjects> pollAll() {
+        return pollDue(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The number of pending frames.
+     */
+    public int size() {
+        return heap.size();
+    }
+}
@@ -0,0 +1,83 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses camera, LiDAR and pose data files at most once each and hands the
+ * same read-only data to every simulation that asks for the same file.
+ * <p>
+ * Sensor data is never modified once loaded, so a single cache can be shared
+ * by any number of concurrent simulations; a sweep over hundreds of
+ * configurations of one recording parses the recording only once.
+ */
+public class SensorDataCache {
+
+    private final ConcurrentHashMap<String, Map<String, List<StampedDetectedObjects>>> cameraData = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<Pose>> poseData = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LiDarDataBase> lidarData = new ConcurrentHashMap<>();
+
+    /**
+     * @param filePath  The path to a camera data JSON file.
+     * @param cameraKey The key of one camera in that file.
+     * @return The camera's frames, empty if the file has no such key.
+     */
+    public List<StampedDetectedObjects> getCameraData(String filePath, String cameraKey) {
+        List<StampedDetectedObjects> frames = cameraData.computeIfAbsent(filePath, SensorDataCache::loadCameraData).get(cameraKey);
+        return frames != null ? frames : Collections.emptyList();
+    }
+
+    /**
+     * @param filePath The path to a pose data JSON file.
+     * @return The poses in the file.
+     */
+    public List<Pose> getPoseData(String filePath) {
+        return poseData.computeIfAbsent(filePath, SensorDataCache::loadPoseData);
+    }
+
+    /**
+     * @param filePath The path to a LiDAR data JSON file.
+     * @return The database holding the file's data.
+     */
+    public LiDarDataBase getLiDarDataBase(String filePath) {
+        return lidarData.computeIfAbsent(filePath, LiDarDataBase::load);
+    }
+
+    /**
+     * @return The number of distinct files parsed so far.
+     */
+    public int size() {
+        return cameraData.size() + poseData.size() + lidarData.size();
+    }
+
+    // Parses every camera's frames in the file
+    private static Map<String, List<StampedDetectedObjects>> loadCameraData(String filePath) {
+        try (FileReader reader = new FileReader(filePath)) {
+            Type type = new TypeToken<Map<String, List<StampedDetectedObjects>>>() {}.getType();
+            Map<String, List<StampedDetectedObjects>> cameras = new Gson().fromJson(JsonParser.parseReader(reader), type);
+            cameras.replaceAll((key, frames) -> Collections.unmodifiableList(frames));
+            return cameras;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load camera data from file: " + filePath, e);
+        }
+    }
+
+    private static List<Pose> loadPoseData(String filePath) {
+        try (FileReader reader = new FileReader(filePath)) {
+            Type type = new TypeToken<List<Pose>>() {}.getType();
+            List<Pose> poses = new Gson().fromJson(JsonParser.parseReader(reader).getAsJsonArray(), type);
+            return Collections.unmodifiableList(poses);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load GPSIMU data from file: " + filePath, e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package bgu.spl.mics.application.objects;
+
+import bgu.spl.mics.logging.Logger;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Reads the time-stamped records of one sensor incrementally from a
+ * newline-delimited JSON source, one record per line in time order, instead
+ * of loading a whole recording up front.
+ * <p>
+ * A reader thread parses lines ahead of the simulation into a queue of
+ * {@code readAhead} records and blocks while the queue is full, so memory is
+ * bounded by the read-ahead whatever the length of the recording. The sensor
+ * pulls records with {@link #pollThrough(int)} as its clock advances; the
+ * call waits until the source has produced a record later than the tick or
+ * ended, so a live feed that lags behind the clock holds the sensor back
+ * rather than making it miss data.
+ * <p>
+ * A source is a regular file, which is tailed: at its end the reader waits
+ * for it to grow and only gives up once it has not grown for
+ * {@code idleMillis}; a named pipe or any other stream, read until its end;
+ * or {@code tcp://host:port}, a socket read until the peer closes it.
+ */
+public final class SensorStream<T> implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(SensorStream.class);
+
+    /**
+     * The latest time reported by sensors whose stream has not ended yet,
+     * later than any tick of a simulation.
+     */
+    public static final int OPEN = Integer.MAX_VALUE / 2;
+
+    public static final int DEFAULT_READ_AHEAD = 1024;
+    public static final long DEFAULT_IDLE_MILLIS = 1000;
+
+    private static final long TAIL_POLL_MILLIS = 10;
+    private static final Object END = new Object();
+
+    private final String name;
+    private final InputStream in;
+    private final boolean tail;
+    private final long idleMillis;
+    private final Function<JsonObject, T> parser;
+    private final ToIntFunction<T> time;
+    private final BlockingQueue<Object> queue; // Records, then END or the IOException that ended the source
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private Object head; // The next record, taken from the queue but not yet handed out
+    private boolean ended;
+    private int lastTime = -1;
+
+    private SensorStream(String name, InputStream in, boolean tail, long idleMillis, int readAhead,
+                         Function<JsonObject, T> parser, ToIntFunction<T> time) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException("Read-ahead must be positive: " + readAhead);
+        }
+        this.name = name;
+        this.in = in;
+        this.tail = tail;
+        this.idleMillis = idleMillis;
+        this.parser = parser;
+        this.time = time;
+        this.queue = new ArrayBlockingQueue<>(readAhead);
+        this.reader = new Thread(this::readLoop, "SensorStream-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Opens a source: a {@code tcp://host:port} address, or the path of a
+     * file, which is tailed, or of a pipe.
+     *
+     * @param source     The source.
+     * @param readAhead  The maximum number of records parsed ahead of the sensor.
+     * @param idleMillis How long a tailed file may stop growing before its stream ends.
+     * @param parser     Builds a record from a line's JSON object.
+     * @param time       A record's time stamp.
+     * @return The stream, already reading.
+     * @throws IOException if the source cannot be opened.
+     */
+    public static <T> SensorStream<T> open(String source, int readAhead, long idleMillis,
+                                           Function<JsonObject, T> parser, ToIntFunction<T> time) throws IOException {
+        if (source.startsWith("tcp://")) {
+            URI address = URI.create(source);
+            Socket socket = new Socket(address.getHost(), address.getPort());
+            return new SensorStream<>(source, socket.getInputStream(), false, 0, readAhead, parser, time);
+        }
+        File file = new File(source);
+        return new SensorStream<>(source, new FileInputStream(file), file.isFile(), idleMillis, readAhead, parser, time);
+    }
+
+    /**
+     * Reads an already open stream until its end, e.g. a process's standard input.
+     *
+     * @param name      A name for log messages and the reader thread.
+     * @param in        The stream.
+     * @param readAhead The maximum number of records parsed ahead of the sensor.
+     * @param parser    Builds a record from a line's JSON object.
+     * @param time      A record's time stamp.
+     * @return The stream, already reading.
+     */
+    public static <T> SensorStream<T> of(String name, InputStream in, int readAhead,
+                                         Function<JsonObject, T> parser, ToIntFunction<T> time) {
+        return new SensorStream<>(name, in, false, 0, readAhead, parser, time);
+    }
+
+    /**
+     * Takes the next record if its time is at most {@code tick}, waiting
+     * until the source has produced it or shown that there is none.
+     *
+     * @param tick The sensor's current tick.
+     * @return The next record, or null if the next one is later than {@code tick} or the stream has ended.
+     * @throws IllegalStateException if the source failed or its records are not in time order.
+     */
+    @SuppressWarnings("unchecked")
+    public T pollThrough(int tick) {
+        if (head == null && !ended) {
+            try {
+                head = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (head == END) {
+                head = null;
+                ended = true;
+            } else if (head instanceof IOException) {
+                IOException failure = (IOException) head;
+                head = null;
+                ended = true;
+                throw new IllegalStateException("Failed to read sensor stream " + name, failure);
+            }
+        }
+        if (head == null || time.applyAsInt((T) head) > tick) {
+            return null;
+        }
+        T record = (T) head;
+        head = null;
+        int recordTime = time.applyAsInt(record);
+        if (recordTime < lastTime) {
+            throw new IllegalStateException("Sensor stream " + name + " went back in time from " + lastTime + " to " + recordTime);
+        }
+        lastTime = recordTime;
+        return record;
+    }
+
+    /**
+     * @return true once every record has been taken and the source has ended.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Stops reading and closes the source.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        reader.interrupt();
+        try {
+            in.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close sensor stream " + name + ": " + e.getMessage());
+        }
+    }
+
+    // Splits the source into lines itself, so that a line a tailed file is still being written is not cut short
+    private void readLoop() {
+        byte[] buffer = new byte[64 * 1024];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long idleSince = System.currentTimeMillis();
+        try {
+            while (!closed) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    if (!tail || System.currentTimeMillis() - idleSince > idleMillis) {
+                        break;
+                    }
+                    Thread.sleep(TAIL_POLL_MILLIS);
+                    continue;
+                }
+                idleSince = System.currentTimeMillis();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, start, i - start);
+                        parse(line);
+                        start = i + 1;
+                    }
+                }
+                line.write(buffer, start, read - start);
+            }
+            parse(line); // A last line without a newline
+            queue.put(END);
+        } catch (IOException e) {
+            if (!closed) {
+                try {
+                    queue.put(e);
+                } catch (InterruptedException closing) {
+                    // Closed meanwhile
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close sensor stream " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Queues the record on a complete line, waiting for room, and empties the line
+    private void parse(ByteArrayOutputStream line) throws InterruptedException, IOException {
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+        line.reset();
+        if (text.isEmpty()) {
+            return;
+        }
+        T record;
+        try {
+            record = parser.apply(JsonParser.parseString(text).getAsJsonObject());
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed record: " + text, e);
+        }
+        queue.put(record);
+    }
+}
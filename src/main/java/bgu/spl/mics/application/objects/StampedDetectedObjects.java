@@ -9,6 +9,7 @@ import java.util.List;
 public class StampedDetectedObjects {
     private final int time;
     private final List<DetectedObject> detectedObjects;
+    private transient long sentNanos; // System.nanoTime() when the camera sent this frame, 0 if unsent
 
     public StampedDetectedObjects(int time, List<DetectedObject> detectedObjects) {
         this.time = time;
@@ -22,4 +23,20 @@ public class StampedDetectedObjects {
     public List<DetectedObject> getDetectedObjects() {
         return detectedObjects;
     }
+
+    /**
+     * Marks the moment this frame was sent by its camera, for latency statistics.
+     *
+     * @param sentNanos A {@link System#nanoTime()} reading.
+     */
+    public void setSentNanos(long sentNanos) {
+        this.sentNanos = sentNanos;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} reading when this frame was sent, or 0 if unknown.
+     */
+    public long getSentNanos() {
+        return sentNanos;
+    }
 }
@@ -1,25 +1,69 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageObserver;
+import bgu.spl.mics.MicroService;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Holds statistical information about the system's operation.
  * This class aggregates metrics such as the runtime of the system,
  * the number of objects detected and tracked, and the number of landmarks identified.
+ * <p>
+ * Counters are {@link LongAdder}s so that the many camera and LiDAR threads
+ * updating them concurrently do not contend on a single cache line. Besides
+ * the totals, the folder acts as a small metrics registry: per-message-type
+ * handling counts and {@link LatencyHistogram}s for queue wait, callback
+ * execution and detection-to-landmark latency, all exported by {@link #toJson()}.
+ * The counts are always kept; the message latencies only on instrumented runs.
  */
-public class StatisticalFolder {
+public class StatisticalFolder implements MessageObserver {
+
+    private final LongAdder systemRuntime; // Total runtime of the system in ticks
+    private final LongAdder numDetectedObjects; // Number of objects detected by cameras
+    private final LongAdder numTrackedObjects; // Number of objects tracked by LiDAR workers
+    private final LongAdder numLandmarks; // Number of unique landmarks identified by Fusion-SLAM
 
-    private final AtomicInteger systemRuntime; // Total runtime of the system in ticks
-    private final AtomicInteger numDetectedObjects; // Number of objects detected by cameras
-    private final AtomicInteger numTrackedObjects; // Number of objects tracked by LiDAR workers
-    private final AtomicInteger numLandmarks; // Number of unique landmarks identified by Fusion-SLAM
+    private final ConcurrentHashMap<String, LongAdder> messageCounts; // Handled messages per message type
+    private final LongAdder handledEvents; // Handled messages that were events
+    private final LatencyHistogram queueWaitLatency; // Time messages spend in a mailbox
+    private final LatencyHistogram callbackLatency; // Time spent inside message callbacks
+    private final LatencyHistogram detectionToLandmarkLatency; // Camera send to Fusion-SLAM update
+    private final ConcurrentHashMap<String, LatencyHistogram[]> latencyByService; // {queue wait, callback} per service
+    private final ConcurrentHashMap<String, LatencyHistogram[]> latencyByType; // {queue wait, callback} per message type
+    private final LongAdder tickOverruns; // Ticks whose deadline had already passed when they finished
+    private final LongAdder missedTicks; // Whole tick periods the time service fell behind
+    private final LongAdder skippedTicks; // Ticks jumped over in max-speed mode because no sensor was due
+    private final LongAdder downsampledPointsIn; // Cloud points given to the LiDAR workers' voxel filters
+    private final LongAdder downsampledPointsOut; // Cloud points the voxel filters passed on to Fusion-SLAM
+    private final LatencyHistogram tickLag; // How late each tick was broadcast relative to its deadline
+    private volatile boolean instrumented; // Whether messages are timed, i.e. whether the latency histograms fill
 
-    // Private constructor for Singleton
-    private StatisticalFolder() {
-        this.systemRuntime = new AtomicInteger(0);
-        this.numDetectedObjects = new AtomicInteger(0);
-        this.numTrackedObjects = new AtomicInteger(0);
-        this.numLandmarks = new AtomicInteger(0);
+    // Creates empty statistics; each simulation context owns one
+    public StatisticalFolder() {
+        this.systemRuntime = new LongAdder();
+        this.numDetectedObjects = new LongAdder();
+        this.numTrackedObjects = new LongAdder();
+        this.numLandmarks = new LongAdder();
+        this.messageCounts = new ConcurrentHashMap<>();
+        this.handledEvents = new LongAdder();
+        this.queueWaitLatency = new LatencyHistogram();
+        this.callbackLatency = new LatencyHistogram();
+        this.detectionToLandmarkLatency = new LatencyHistogram();
+        this.latencyByService = new ConcurrentHashMap<>();
+        this.latencyByType = new ConcurrentHashMap<>();
+        this.tickOverruns = new LongAdder();
+        this.missedTicks = new LongAdder();
+        this.skippedTicks = new LongAdder();
+        this.downsampledPointsIn = new LongAdder();
+        this.downsampledPointsOut = new LongAdder();
+        this.tickLag = new LatencyHistogram();
     }
 
     // Bill Pugh Singleton Holder Pattern
@@ -42,7 +86,7 @@ public class StatisticalFolder {
      * @param ticks Number of ticks to increment.
      */
     public void incrementSystemRuntime(int ticks) {
-        this.systemRuntime.addAndGet(ticks);
+        this.systemRuntime.add(ticks);
     }
 
     /**
@@ -51,7 +95,7 @@ public class StatisticalFolder {
      * @param count Number of objects detected.
      */
     public void incrementDetectedObjects(int count) {
-        this.numDetectedObjects.addAndGet(count);
+        this.numDetectedObjects.add(count);
     }
 
     /**
@@ -60,7 +104,7 @@ public class StatisticalFolder {
      * @param count Number of objects tracked.
      */
     public void incrementTrackedObjects(int count) {
-        this.numTrackedObjects.addAndGet(count);
+        this.numTrackedObjects.add(count);
     }
 
     /**
@@ -69,7 +113,7 @@ public class StatisticalFolder {
      * @param count Number of new landmarks identified.
      */
     public void incrementLandmarks(int count) {
-        this.numLandmarks.addAndGet(count);
+        this.numLandmarks.add(count);
     }
 
     /**
@@ -78,7 +122,7 @@ public class StatisticalFolder {
      * @return The system runtime in ticks.
      */
     public int getSystemRuntime() {
-        return systemRuntime.get();
+        return systemRuntime.intValue();
     }
 
     /**
@@ -87,7 +131,7 @@ public class StatisticalFolder {
      * @return The number of detected objects.
      */
     public int getNumDetectedObjects() {
-        return numDetectedObjects.get();
+        return numDetectedObjects.intValue();
     }
 
     /**
@@ -96,7 +140,7 @@ public class StatisticalFolder {
      * @return The number of tracked objects.
      */
     public int getNumTrackedObjects() {
-        return numTrackedObjects.get();
+        return numTrackedObjects.intValue();
     }
 
     /**
@@ -105,7 +149,239 @@ public class StatisticalFolder {
      * @return The number of landmarks identified.
      */
     public int getNumLandmarks() {
-        return numLandmarks.get();
+        return numLandmarks.intValue();
+    }
+
+    /**
+     * Counts one handled message of the given type.
+     *
+     * @param type The message type name.
+     */
+    public void incrementMessageCount(String type) {
+        messageCounts.computeIfAbsent(type, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records how long a message waited in a mailbox before being taken.
+     *
+     * @param nanos The wait time in nanoseconds.
+     */
+    public void recordQueueWait(long nanos) {
+        queueWaitLatency.record(nanos);
+    }
+
+    /**
+     * Records how long a message callback ran.
+     *
+     * @param nanos The execution time in nanoseconds.
+     */
+    public void recordCallback(long nanos) {
+        callbackLatency.record(nanos);
+    }
+
+    /**
+     * Records the latency from a camera sending a detection to the
+     * corresponding landmark update in Fusion-SLAM.
+     *
+     * @param nanos The end-to-end latency in nanoseconds.
+     */
+    public void recordDetectionToLandmark(long nanos) {
+        detectionToLandmarkLatency.record(nanos);
+    }
+
+    /**
+     * Records how late a tick was broadcast relative to its scheduled deadline.
+     *
+     * @param nanos The lag in nanoseconds, 0 if the tick was on time.
+     */
+    public void recordTickLag(long nanos) {
+        tickLag.record(nanos);
+    }
+
+    /**
+     * Records a tick whose work ran past the deadline of the next tick.
+     *
+     * @param missed The number of whole tick periods the schedule fell behind.
+     */
+    public void recordTickOverrun(long missed) {
+        tickOverruns.increment();
+        missedTicks.add(missed);
+    }
+
+    /**
+     * Records ticks that were not broadcast because no sensor had anything due.
+     *
+     * @param ticks The number of skipped ticks.
+     */
+    public void recordSkippedTicks(int ticks) {
+        skippedTicks.add(ticks);
+    }
+
+    /**
+     * Records the work of a voxel filter.
+     *
+     * @param pointsIn  The cloud points it was given.
+     * @param pointsOut The cloud points it returned.
+     */
+    public void recordDownsampling(long pointsIn, long pointsOut) {
+        downsampledPointsIn.add(pointsIn);
+        downsampledPointsOut.add(pointsOut);
+    }
+
+    public long getDownsampledPointsIn() {
+        return downsampledPointsIn.sum();
+    }
+
+    public long getDownsampledPointsOut() {
+        return downsampledPointsOut.sum();
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks.sum();
+    }
+
+    public long getTickOverruns() {
+        return tickOverruns.sum();
+    }
+
+    public long getMissedTicks() {
+        return missedTicks.sum();
+    }
+
+    public LatencyHistogram getTickLag() {
+        return tickLag;
+    }
+
+    /**
+     * Gets the number of handled messages of the given type.
+     *
+     * @param type The message type name.
+     * @return The number of handled messages of that type.
+     */
+    public long getMessageCount(String type) {
+        LongAdder count = messageCounts.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return The number of handled messages of all types.
+     */
+    public long getHandledMessages() {
+        long total = 0;
+        for (LongAdder count : messageCounts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of handled events, i.e. messages other than broadcasts.
+     */
+    public long getHandledEvents() {
+        return handledEvents.sum();
+    }
+
+    public LatencyHistogram getQueueWaitLatency() {
+        return queueWaitLatency;
+    }
+
+    public LatencyHistogram getCallbackLatency() {
+        return callbackLatency;
+    }
+
+    public LatencyHistogram getDetectionToLandmarkLatency() {
+        return detectionToLandmarkLatency;
+    }
+
+    @Override
+    public void onMessageHandled(MicroService m, Message message, long queueWaitNanos, long callbackNanos) {
+        String type = message.getClass().getSimpleName();
+        incrementMessageCount(type);
+        if (message instanceof Event) {
+            handledEvents.increment();
+        }
+        if (callbackNanos < 0) {
+            return; // Not instrumented: counted only
+        }
+        recordCallback(callbackNanos);
+
+        LatencyHistogram[] byService = latencyByService.computeIfAbsent(m.getName(), k -> newLatencyPair());
+        LatencyHistogram[] byType = latencyByType.computeIfAbsent(type, k -> newLatencyPair());
+        byService[1].record(callbackNanos);
+        byType[1].record(callbackNanos);
+
+        // Queue wait is only known when the bus stamps messages at enqueue
+        if (queueWaitNanos >= 0) {
+            recordQueueWait(queueWaitNanos);
+            byService[0].record(queueWaitNanos);
+            byType[0].record(queueWaitNanos);
+        }
+    }
+
+    /**
+     * Marks whether the bus times the messages it delivers, so that the
+     * exported metrics tell empty latency histograms from untimed ones.
+     *
+     * @param instrumented true if queue waits and callbacks are timed.
+     */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    private static LatencyHistogram[] newLatencyPair() {
+        return new LatencyHistogram[]{new LatencyHistogram(), new LatencyHistogram()};
+    }
+
+    private static JsonObject latencyPairsToJson(Map<String, LatencyHistogram[]> pairs) {
+        JsonObject json = new JsonObject();
+        new TreeMap<>(pairs).forEach((key, pair) -> {
+            JsonObject entry = new JsonObject();
+            entry.add("queueWait", pair[0].toJson());
+            entry.add("callback", pair[1].toJson());
+            json.add(key, entry);
+        });
+        return json;
+    }
+
+    /**
+     * Exports the metrics registry (message counts, latency histograms and tick
+     * scheduling accuracy).
+     *
+     * @return A JSON object suitable for the simulation output file.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("instrumented", instrumented); // Without it the message latencies below stay empty
+
+        JsonObject counts = new JsonObject();
+        Map<String, LongAdder> sorted = new TreeMap<>(messageCounts);
+        sorted.forEach((type, count) -> counts.addProperty(type, count.sum()));
+        json.add("messageCounts", counts);
+
+        JsonObject latencies = new JsonObject();
+        latencies.add("queueWait", queueWaitLatency.toJson());
+        latencies.add("callback", callbackLatency.toJson());
+        latencies.add("detectionToLandmark", detectionToLandmarkLatency.toJson());
+        json.add("latencies", latencies);
+        json.add("latenciesByService", latencyPairsToJson(latencyByService));
+        json.add("latenciesByMessageType", latencyPairsToJson(latencyByType));
+
+        JsonObject ticks = new JsonObject();
+        ticks.addProperty("overruns", tickOverruns.sum());
+        ticks.addProperty("missedTicks", missedTicks.sum());
+        ticks.addProperty("skipped", skippedTicks.sum());
+        ticks.add("lag", tickLag.toJson());
+        json.add("tickSchedule", ticks);
+
+        long pointsIn = downsampledPointsIn.sum();
+        if (pointsIn > 0) {
+            JsonObject downsampling = new JsonObject();
+            downsampling.addProperty("pointsIn", pointsIn);
+            downsampling.addProperty("pointsOut", downsampledPointsOut.sum());
+            downsampling.addProperty("ratio", (double) downsampledPointsOut.sum() / pointsIn);
+            json.add("downsampling", downsampling);
+        }
+        return json;
     }
 
     @Override
@@ -115,7 +391,6 @@ public class StatisticalFolder {
                 ", numDetectedObjects=" + numDetectedObjects +
                 ", numTrackedObjects=" + numTrackedObjects +
                 ", numLandmarks=" + numLandmarks +
-                ", landmarks:" + FusionSlam.getInstance().getLandmarks() +
                 '}';
     }
 }
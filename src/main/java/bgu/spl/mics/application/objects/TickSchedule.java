@@ -0,0 +1,97 @@
+package bgu.spl.mics.application.objects;
+
+import bgu.spl.mics.TickFilter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, sorted set of the ticks at which a sensor has something to do
+ * (a frame to publish, a sample to release, an error to raise or a shutdown to
+ * perform). Sensors know all their timestamps when they are loaded, so their
+ * schedules can be computed up front and merged, letting the time service skip
+ * the ticks at which nothing would happen. A schedule is also a
+ * {@link TickFilter}, so a service can ask the bus to wake it on exactly these ticks.
+ */
+public final class TickSchedule implements TickFilter {
+
+    private static final TickSchedule EMPTY = new TickSchedule(new int[0]);
+
+    private final int[] ticks; // Sorted, distinct and positive
+
+    private TickSchedule(int[] ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Creates a schedule from the given ticks. Duplicates are merged and
+     * ticks below 1 (e.g. the -1 used for "no error") are ignored.
+     *
+     * @param ticks The scheduled ticks, in any order.
+     * @return The schedule.
+     */
+    public static TickSchedule of(IntStream ticks) {
+        int[] sorted = ticks.filter(tick -> tick > 0).sorted().distinct().toArray();
+        return sorted.length == 0 ? EMPTY : new TickSchedule(sorted);
+    }
+
+    /**
+     * @param ticks The scheduled ticks, in any order.
+     * @return The schedule.
+     */
+    public static TickSchedule of(int... ticks) {
+        return of(Arrays.stream(ticks));
+    }
+
+    /**
+     * Merges several schedules.
+     *
+     * @param schedules The schedules to merge.
+     * @return A schedule holding every tick of every schedule.
+     */
+    public static TickSchedule union(Collection<TickSchedule> schedules) {
+        return of(schedules.stream().flatMapToInt(schedule -> Arrays.stream(schedule.ticks)));
+    }
+
+    /**
+     * @param other Another schedule.
+     * @return A schedule holding the ticks of both schedules.
+     */
+    public TickSchedule with(TickSchedule other) {
+        return of(IntStream.concat(Arrays.stream(ticks), Arrays.stream(other.ticks)));
+    }
+
+    /**
+     * Finds the first scheduled tick strictly after {@code tick}.
+     *
+     * @param tick The current tick.
+     * @return The next scheduled tick, or -1 if the schedule is exhausted.
+     */
+    @Override
+    public int nextAfter(int tick) {
+        int index = Arrays.binarySearch(ticks, tick);
+        int next = index >= 0 ? index + 1 : -index - 1;
+        return next < ticks.length ? ticks[next] : -1;
+    }
+
+    /**
+     * @param tick A tick.
+     * @return true if {@code tick} is scheduled.
+     */
+    public boolean contains(int tick) {
+        return Arrays.binarySearch(ticks, tick) >= 0;
+    }
+
+    /**
+     * @return The number of scheduled ticks.
+     */
+    public int size() {
+        return ticks.length;
+    }
+
+    @Override
+    public String toString() {
+        return "TickSchedule" + Arrays.toString(ticks);
+    }
+}
@@ -13,6 +13,7 @@ public class TrackedObject {
     private final int timestamp;
     private final String description;
     private final List<CloudPoint> coordinates;
+    private final transient long detectedNanos; // When the originating camera frame was sent, 0 if unknown
 
     /**
      * Constructor for TrackedObject.
@@ -23,10 +24,24 @@ public class TrackedObject {
      * @param coordinates A list of CloudPoints representing the object's location.
      */
     public TrackedObject(String id, int timestamp, String description, List<CloudPoint> coordinates) {
+        this(id, timestamp, description, coordinates, 0);
+    }
+
+    /**
+     * Constructor for TrackedObject that keeps the send time of the camera frame it came from.
+     *
+     * @param id The unique ID of the tracked object.
+     * @param timestamp The time the object was tracked.
+     * @param description A description of the object.
+     * @param coordinates A list of CloudPoints representing the object's location.
+     * @param detectedNanos The {@link System#nanoTime()} reading when the camera sent the detection.
+     */
+    public TrackedObject(String id, int timestamp, String description, List<CloudPoint> coordinates, long detectedNanos) {
         this.id = id;
         this.timestamp = timestamp;
         this.description = description;
         this.coordinates = coordinates;
+        this.detectedNanos = detectedNanos;
     }
 
     /**
@@ -65,6 +80,15 @@ public class TrackedObject {
         return coordinates;
     }
 
+    /**
+     * Gets the time the originating camera frame was sent.
+     *
+     * @return A {@link System#nanoTime()} reading, or 0 if unknown.
+     */
+    public long getDetectedNanos() {
+        return detectedNanos;
+    }
+
     @Override
     public String toString() {
         return "TrackedObject{" +
@@ -0,0 +1,122 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downsamples a LiDAR cloud by replacing the points that fall into the same
+ * square cell of {@code cellSize} meters with their centroid.
+ * <p>
+ * Cells are emitted in the order their first point appears, so the outline
+ * of an object keeps its shape as a polyline. The cells of one cloud are
+ * found with an open-addressing table over primitive arrays, so filtering
+ * costs a few array accesses per point and no boxing. A cloud in which every
+ * point has a cell of its own is returned as is. The filter counts the points
+ * it was given and those it returned; it may be shared between threads.
+ */
+public class VoxelFilter {
+
+    private final double cellSize;
+    private final LongAdder pointsIn = new LongAdder();
+    private final LongAdder pointsOut = new LongAdder();
+
+    /**
+     * @param cellSize The side of a cell in meters.
+     */
+    public VoxelFilter(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Voxel size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @param cellSize The side of a cell in meters, or 0 for no filtering.
+     * @return A filter, or null if {@code cellSize} is 0.
+     */
+    public static VoxelFilter ofSize(double cellSize) {
+        return cellSize == 0 ? null : new VoxelFilter(cellSize);
+    }
+
+    /**
+     * @param points A cloud.
+     * @return The centroids of the cloud's occupied cells, in order of first appearance.
+     */
+    public List<CloudPoint> apply(List<CloudPoint> points) {
+        int n = points.size();
+        pointsIn.add(n);
+        if (n < 2) {
+            pointsOut.add(n);
+            return points;
+        }
+
+        // Open addressing: keys[slot] is a packed cell, slots[slot] its index in the sums, -1 when free
+        int capacity = Integer.highestOneBit(n * 2 - 1) << 1;
+        int mask = capacity - 1;
+        long[] keys = new long[capacity];
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        double[] sumX = new double[n];
+        double[] sumY = new double[n];
+        int[] counts = new int[n];
+        int cells = 0;
+        for (CloudPoint point : points) {
+            long key = ((long) cell(point.getX()) << 32) | (cell(point.getY()) & 0xFFFFFFFFL);
+            int slot = hash(key) & mask;
+            while (slots[slot] != -1 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] == -1) {
+                keys[slot] = key;
+                slots[slot] = cells++;
+            }
+            int index = slots[slot];
+            sumX[index] += point.getX();
+            sumY[index] += point.getY();
+            counts[index]++;
+        }
+        pointsOut.add(cells);
+        if (cells == n) {
+            return points;
+        }
+
+        List<CloudPoint> centroids = new ArrayList<>(cells);
+        for (int i = 0; i < cells; i++) {
+            centroids.add(new CloudPoint(sumX[i] / counts[i], sumY[i] / counts[i]));
+        }
+        return centroids;
+    }
+
+    /**
+     * @return The side of a cell in meters.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return The number of points given to the filter so far.
+     */
+    public long getPointsIn() {
+        return pointsIn.sum();
+    }
+
+    /**
+     * @return The number of points the filter returned so far.
+     */
+    public long getPointsOut() {
+        return pointsOut.sum();
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    // Spreads a packed cell over the table's low bits
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,9 +1,11 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.GurionRockRunner;
+import bgu.spl.mics.TickFilter;
+import bgu.spl.mics.application.SimulationContext;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.objects.*;
+import bgu.spl.mics.logging.Logger;
 
 
 /**
@@ -13,9 +15,12 @@ import bgu.spl.mics.application.objects.*;
  * the system's StatisticalFolder upon sending its observations.
  */
 public class CameraService extends MicroService {
+
+    private static final Logger LOG = Logger.getLogger(CameraService.class);
     public final Camera camera;
-    private final int terminationTime;
-    private final int errorTime;
+    private int terminationTime; // Only change for a streaming camera, as it reads ahead
+    private int errorTime;
+    private final SimulationContext context;
 
     /**
      * Constructor for CameraService.
@@ -23,12 +28,36 @@ public class CameraService extends MicroService {
      * @param camera The Camera object that this service will use to detect objects.
      */
     public CameraService(Camera camera) {
-        super("CameraService");
+        this(camera, SimulationContext.getDefault());
+    }
+
+    /**
+     * Constructor for CameraService.
+     *
+     * @param camera  The Camera object that this service will use to detect objects.
+     * @param context The simulation this service belongs to.
+     */
+    public CameraService(Camera camera, SimulationContext context) {
+        super("CameraService", context.getMessageBus());
+        this.context = context;
         this.camera = camera;
         this.terminationTime = camera.getLatestDetectionTime() + camera.getFrequency();
         this.errorTime = camera.hasError();
     }
 
+    /**
+     * Returns every tick at which this service acts: the camera's frame ticks,
+     * its error tick and the tick after its termination time, when it shuts down.
+     *
+     * @return The service's tick schedule, or null for a streaming camera, which acts on every tick.
+     */
+    public TickSchedule getTickSchedule() {
+        if (camera.isStreaming()) {
+            return null;
+        }
+        return camera.getSchedule().with(TickSchedule.of(errorTime, terminationTime + 1));
+    }
+
     /**
      * Initializes the CameraService.
      * Registers the service to handle TickBroadcasts and sets up callbacks for sending
@@ -36,10 +65,18 @@ public class CameraService extends MicroService {
      */
     @Override
     protected void initialize() {
-        System.out.println(getName() + " initialized.");
+        LOG.info(getName() + " initialized.");
+
+        // Subscribe to TickBroadcast, woken only on the ticks at which the camera has work
+        TickFilter ticks = camera.isStreaming() ? TickFilter.every(1) : getTickSchedule();
+        subscribeBroadcast(TickBroadcast.class, ticks, tick -> {
+            if (camera.isStreaming()) {
+                // Learn of the frames up to now, and with them of an error or the end of the stream
+                camera.readThrough(tick.getTime());
+                errorTime = camera.hasError();
+                terminationTime = camera.getLatestDetectionTime() + camera.getFrequency();
+            }
 
-        // Subscribe to TickBroadcast to process periodic tasks
-        subscribeBroadcast(TickBroadcast.class, tick -> {
             if (tick.getTime() > terminationTime) {
                 camera.setStatus(STATUS.DOWN);
                 sendBroadcast(new TerminatedBroadcast(this.getName()));
@@ -51,32 +88,31 @@ public class CameraService extends MicroService {
             // Detect objects and send a single event with the entire list
             StampedDetectedObjects detectedObjects = camera.detectObjects(tick.getTime());
             if (detectedObjects!=null && !detectedObjects.getDetectedObjects().isEmpty()) {
-                sendEvent(new DetectObjectsEvent(detectedObjects));
-                StatisticalFolder.getInstance().incrementDetectedObjects(detectedObjects.getDetectedObjects().size());
-                System.out.println(getName() + " sent DetectObjectsEvent with detected objects: " + detectedObjects.getDetectedObjects());
+                detectedObjects.setSentNanos(System.nanoTime());
+                sendEvent(new DetectObjectsEvent(detectedObjects, tick.getTime()));
+                context.getStatistics().incrementDetectedObjects(detectedObjects.getDetectedObjects().size());
+                LOG.debug(() -> getName() + " sent DetectObjectsEvent with detected objects: " + detectedObjects.getDetectedObjects());
             }
 
             if(tick.getTime() == errorTime){
                 sendBroadcast(new CrashedBroadcast(this.getName()));
-                GurionRockRunner.reportCrash("Camera" + camera.getId(), "Camera"); // Register the crash in GurionRockPro
+                context.reportCrash("Camera" + camera.getId(), "Camera"); // Register the crash in GurionRockPro
                 terminate();
             }
         });
 
         // Subscribe to TerminatedBroadcast for clean termination
-        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
-            if (terminated.getSource().equals("TimeService")) {
-                System.out.println(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
-                terminate();
-            }
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), terminated -> {
+            LOG.info(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
+            terminate();
         });
 
         // Subscribe to CrashedBroadcast to handle crashes (e.g., cleanup)
         subscribeBroadcast(CrashedBroadcast.class, crashed -> {
-            System.out.println("recieved CrashedBroadcast from " + crashed.getSource() + "Terminating.");
+            LOG.info(() -> getName() + " received CrashedBroadcast from " + crashed.getSource() + ". Terminating.");
             terminate();
         });
 
-        System.out.println(getName() + " is ready to process messages.");
+        LOG.debug(() -> getName() + " is ready to process messages.");
     }
 }
@@ -1,9 +1,10 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.*;
-import bgu.spl.mics.application.GurionRockRunner;
+import bgu.spl.mics.application.SimulationContext;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.objects.*;
+import bgu.spl.mics.logging.Logger;
 
 import java.util.List;
 
@@ -13,7 +14,10 @@ import java.util.List;
  */
 public class FusionSlamService extends MicroService {
 
+    private static final Logger LOG = Logger.getLogger(FusionSlamService.class);
+
     private final FusionSlam fusionSlam;
+    private final SimulationContext context;
 
     /**
      * Constructs a new FusionSlamService.
@@ -21,8 +25,19 @@ public class FusionSlamService extends MicroService {
      * @param name The name of the service.
      */
     public FusionSlamService(String name) {
-        super(name);
-        this.fusionSlam = FusionSlam.getInstance();
+        this(name, SimulationContext.getDefault());
+    }
+
+    /**
+     * Constructs a new FusionSlamService updating the context's map.
+     *
+     * @param name    The name of the service.
+     * @param context The simulation this service belongs to.
+     */
+    public FusionSlamService(String name, SimulationContext context) {
+        super(name, context.getMessageBus());
+        this.context = context;
+        this.fusionSlam = context.getFusionSlam();
     }
 
     @Override
@@ -31,7 +46,7 @@ public class FusionSlamService extends MicroService {
         subscribeEvent(TrackedObjectsEvent.class, event -> {
             List<TrackedObject> trackedObjects = event.getTrackedObjects();
                 for (TrackedObject obj : trackedObjects) {
-                    if(GurionRockRunner.hasCrashOccurred()){
+                    if(context.hasCrashOccurred()){
                         return;
                     }
                     int detectionTime = obj.getTimestamp(); // Use the detection time from the tracked object itself
@@ -47,6 +62,9 @@ public class FusionSlamService extends MicroService {
                             obj.getCoordinates(),
                             poseAtDetectionTime
                     );
+                    if (obj.getDetectedNanos() != 0) {
+                        context.getStatistics().recordDetectionToLandmark(System.nanoTime() - obj.getDetectedNanos());
+                    }
                 }
             }
         });
@@ -58,11 +76,9 @@ public class FusionSlamService extends MicroService {
         });
 
         // Subscribe to TerminatedBroadcast
-        subscribeBroadcast(TerminatedBroadcast.class, broadcast -> {
-            if (broadcast.getSource().equals("TimeService")) {
-                System.out.println(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
-                terminate();
-            }
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), broadcast -> {
+            LOG.info(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
+            terminate();
         });
 
         // Subscribe to CrashedBroadcast
@@ -1,13 +1,14 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.*;
-import bgu.spl.mics.application.GurionRockRunner;
+import bgu.spl.mics.application.SimulationContext;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.objects.*;
+import bgu.spl.mics.logging.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * LiDarService is responsible for processing data from the LiDAR sensor
@@ -17,13 +18,28 @@ import java.util.stream.Collectors;
  * - Subscribes to TickBroadcast for periodic updates.
  * - Interacts with the LiDarWorkerTracker to process LiDAR data.
  * - Sends TrackedObjectsEvents to FusionSLAM.
+ * A frame is only processed once the worker's frequency has passed since its
+ * detection time. Frames that arrive early are either handed back to the bus
+ * for delivery at their due tick (the default) or kept in a local
+ * {@link PendingDetections} heap. A worker whose database is streamed always
+ * keeps them locally, as it cannot know its shutdown tick when a frame arrives.
+ * <p>
+ * A spare worker, started by the {@link LiDarSupervisor} while the LiDAR
+ * backlog is high, always keeps its frames locally and leaves crash reports
+ * to the configured workers. When it is retired it stops taking new frames,
+ * finishes the ones it has and terminates.
  */
 public class LiDarService extends MicroService {
 
+    private static final Logger LOG = Logger.getLogger(LiDarService.class);
+
     public final LiDarWorkerTracker workerTracker;
-    private final List<StampedDetectedObjects> receivedObjects;
-    private final int terminationTime;
-    private final int errorTime;
+    private int terminationTime; // Only change for a streamed database, as it reads ahead
+    private int errorTime;
+    private final PendingDetections pending; // Frames not yet due, or null when the bus holds them back
+    private final SimulationContext context;
+    private final boolean spare;
+    private boolean retiring;
     private int currentTick;
 
     /**
@@ -32,14 +48,66 @@ public class LiDarService extends MicroService {
      * @param workerTracker The LiDarWorkerTracker object responsible for handling LiDAR data.
      */
     public LiDarService(LiDarWorkerTracker workerTracker) {
-        super("LiDarService");
+        this(workerTracker, true);
+    }
+
+    /**
+     * Constructor for LiDarService.
+     *
+     * @param workerTracker The LiDarWorkerTracker object responsible for handling LiDAR data.
+     * @param holdBackInBus true to let the message bus re-deliver frames at their due tick,
+     *                      false to keep them in a local due-time heap and wake on every due tick.
+     */
+    public LiDarService(LiDarWorkerTracker workerTracker, boolean holdBackInBus) {
+        this(workerTracker, holdBackInBus, SimulationContext.getDefault());
+    }
+
+    /**
+     * Constructor for LiDarService.
+     *
+     * @param workerTracker The LiDarWorkerTracker object responsible for handling LiDAR data.
+     * @param holdBackInBus true to let the message bus re-deliver frames at their due tick,
+     *                      false to keep them in a local due-time heap and wake on every due tick.
+     * @param context       The simulation this service belongs to.
+     */
+    public LiDarService(LiDarWorkerTracker workerTracker, boolean holdBackInBus, SimulationContext context) {
+        this(workerTracker, holdBackInBus, context, false);
+    }
+
+    private LiDarService(LiDarWorkerTracker workerTracker, boolean holdBackInBus, SimulationContext context, boolean spare) {
+        super("LiDarService", context.getMessageBus());
+        this.context = context;
         this.workerTracker = workerTracker;
-        this.receivedObjects = new ArrayList<>();
         this.terminationTime = workerTracker.getLatestDetectionTime();
         this.errorTime = workerTracker.hasError();
+        this.pending = holdBackInBus && !workerTracker.isStreaming() ? null : new PendingDetections(workerTracker.getFrequency());
+        this.spare = spare;
         this.currentTick = 0;
     }
 
+    /**
+     * Creates a spare worker, which can be retired with a {@link RetireWorkerBroadcast}.
+     *
+     * @param workerTracker The spare's own worker, sharing a configured worker's database.
+     * @param context       The simulation this service belongs to.
+     */
+    static LiDarService spare(LiDarWorkerTracker workerTracker, SimulationContext context) {
+        return new LiDarService(workerTracker, false, context, true);
+    }
+
+    /**
+     * Returns every tick at which this service acts: the ticks at which samples become due,
+     * its error tick and the tick after its termination time, when it shuts down.
+     *
+     * @return The service's tick schedule, or null for a streamed database, whose samples may become due at any tick.
+     */
+    public TickSchedule getTickSchedule() {
+        if (workerTracker.isStreaming()) {
+            return null;
+        }
+        return workerTracker.getSchedule().with(TickSchedule.of(errorTime, terminationTime + 1));
+    }
+
     /**
      * Initializes the LiDarService.
      * Subscribes to TickBroadcast and DetectObjectsEvent, and sets up callbacks
@@ -47,107 +115,143 @@ public class LiDarService extends MicroService {
      */
     @Override
     protected void initialize() {
-        System.out.println(getName() + " initialized.");
+        LOG.info(getName() + " initialized.");
 
-        // Subscribe to TickBroadcast for periodic updates
-        subscribeBroadcast(TickBroadcast.class, tick -> {
+        // Subscribe to TickBroadcast for the error and shutdown ticks, plus the due ticks if frames are held locally
+        TickFilter ticks = workerTracker.isStreaming() ? TickFilter.every(1)
+                : pending != null ? getTickSchedule() : TickSchedule.of(errorTime, terminationTime + 1);
+        subscribeBroadcast(TickBroadcast.class, ticks, tick -> {
 
             currentTick = tick.getTime();
+            readThrough();
 
             if(currentTick == errorTime){
+                if (spare) { // The configured worker sharing its database reports the crash
+                    workerTracker.release();
+                    terminate();
+                    return;
+                }
                 sendBroadcast(new CrashedBroadcast(this.getName()));
-                GurionRockRunner.reportCrash("WorkerTracker" + workerTracker.getId(), "LidarWorkerTracker"); // Register the crash in GurionRockPro
+                context.reportCrash("WorkerTracker" + workerTracker.getId(), "LidarWorkerTracker"); // Register the crash in GurionRockPro
                 terminate();
                 return;
             }
 
             if (currentTick > terminationTime) {
-                // Process these objects and create tracked data
-                List<TrackedObject> trackedObjects = receivedObjects.stream()
-                        .flatMap(objects -> workerTracker.processData(objects, objects.getTime()).stream())
-                        .collect(Collectors.toList());
-
-                // Send TrackedObjectsEvent with the entire list
-                if (!trackedObjects.isEmpty()) {
-                    sendEvent(new TrackedObjectsEvent(trackedObjects));
-                    StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
-                    System.out.println(getName() + " sent TrackedObjectsEvent with data: " + trackedObjects);
+                // Flush what is left; frames held in the bus were released just before this tick
+                if (pending != null) {
+                    track(pending.pollAll());
                 }
                 sendBroadcast(new TerminatedBroadcast(this.getName()));
+                workerTracker.release();
                 terminate();
                 return;
             }
 
-
-            System.out.println(getName() + " received TickBroadcast at tick: " + currentTick);
-
-            // Create a list of objects that need to be tracked now
-            List<StampedDetectedObjects> toTrack = receivedObjects.stream()
-                    .filter(obj -> obj.getTime() + workerTracker.getFrequency() <= currentTick)
-                    .collect(Collectors.toList());
-
-
-            // Remove the tracked objects from receivedObjects
-            receivedObjects.removeAll(toTrack);
-
-            // Process these objects and create tracked data
-            List<TrackedObject> trackedObjects = toTrack.stream()
-                    .flatMap(objects -> workerTracker.processData(objects, objects.getTime()).stream())
-                    .collect(Collectors.toList());
-            trackedObjects.forEach(trackedObject -> System.out.println("Tracked object: " + trackedObject));
-
-
-            // Send TrackedObjectsEvent with the entire list
-            if (!trackedObjects.isEmpty()) {
-                sendEvent(new TrackedObjectsEvent(trackedObjects));
-                StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
-                System.out.println(getName() + " sent TrackedObjectsEvent with data: " + trackedObjects);
+            LOG.trace(() -> getName() + " received TickBroadcast at tick: " + currentTick);
+            if (pending != null) {
+                track(pending.pollDue(currentTick));
             }
-
+            retireIfDone();
         });
 
         // Subscribe to DetectObjectsEvent to process detected objects
         subscribeEvent(DetectObjectsEvent.class, event -> {
-            System.out.println(getName() + " received DetectObjectsEvent with objects: " + event.getDetectedObjects().getDetectedObjects());
-            // Store the objects in the received objects list
-            receivedObjects.add(event.getDetectedObjects());
-            List<StampedDetectedObjects> toTrack = receivedObjects.stream()
-                    .filter(obj -> obj.getTime() + workerTracker.getFrequency() <= currentTick)
-                    .collect(Collectors.toList());
-
-
-            // Remove the tracked objects from receivedObjects
-            receivedObjects.removeAll(toTrack);
-
-            // Process these objects and create tracked data
-            List<TrackedObject> trackedObjects = toTrack.stream()
-                    .flatMap(objects -> workerTracker.processData(objects, objects.getTime()).stream())
-                    .collect(Collectors.toList());
-            trackedObjects.forEach(trackedObject -> System.out.println("Tracked object: " + trackedObject));
+            LOG.debug(() -> getName() + " received DetectObjectsEvent with objects: " + event.getDetectedObjects().getDetectedObjects());
+            // The worker sleeps through ticks it has no work on, so catch up with the sender's clock
+            currentTick = Math.max(currentTick, event.getTick());
+            readThrough();
 
+            StampedDetectedObjects objects = event.getDetectedObjects();
+            if (pending != null) {
+                pending.add(objects);
+                track(pending.pollDue(currentTick));
+                retireIfDone();
+                return;
+            }
 
-            // Send TrackedObjectsEvent with the entire list
-            if (!trackedObjects.isEmpty()) {
-                sendEvent(new TrackedObjectsEvent(trackedObjects));
-                StatisticalFolder.getInstance().incrementTrackedObjects(trackedObjects.size());
-                System.out.println(getName() + " sent TrackedObjectsEvent with data: " + trackedObjects);
+            // Hold the frame back until the worker's frequency has passed, or flush it at shutdown
+            int dueTick = Math.min(objects.getTime() + workerTracker.getFrequency(), terminationTime + 1);
+            if (dueTick > currentTick) {
+                if (errorTime == -1 || dueTick < errorTime) { // Otherwise the worker crashes before it is due
+                    sendToSelfAt(dueTick, new DetectObjectsEvent(objects, dueTick));
+                }
+                return;
             }
+
+            track(Collections.singletonList(objects));
         });
 
+        // A spare stops taking frames when retired; every frame already dispatched to it is queued by then
+        if (spare) {
+            subscribeBroadcast(RetireWorkerBroadcast.class, RetireWorkerBroadcast.to(workerTracker.getId()), retire -> {
+                LOG.info(getName() + " " + workerTracker.getId() + " is retiring.");
+                retiring = true;
+                unsubscribeEvent(DetectObjectsEvent.class);
+                retireIfDone();
+            });
+        }
+
         // Handle TerminatedBroadcast
-        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
-            if (terminated.getSource().equals("TimeService")) {
-                System.out.println(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
-                terminate();
-            }
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), terminated -> {
+            LOG.info(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
+            terminate();
         });
 
         // Handle CrashedBroadcast
         subscribeBroadcast(CrashedBroadcast.class, crashed -> {
-            System.out.println(getName() + " received CrashedBroadcast from " + crashed.getSource() + ". Terminating.");
+            LOG.info(() -> getName() + " received CrashedBroadcast from " + crashed.getSource() + ". Terminating.");
             terminate();
         });
 
-        System.out.println(getName() + " is ready to process messages.");
+        LOG.debug(() -> getName() + " is ready to process messages.");
+    }
+
+    /**
+     * Terminates a retiring spare once it holds no frames and none are queued for it.
+     */
+    private void retireIfDone() {
+        if (retiring && pending.size() == 0 && getQueueDepth() == 0) {
+            LOG.info(getName() + " " + workerTracker.getId() + " retired.");
+            workerTracker.release();
+            terminate();
+        }
+    }
+
+    /**
+     * Reads a streamed database up to the current tick, learning of an error
+     * or the end of the stream on the way; does nothing otherwise.
+     */
+    private void readThrough() {
+        if (workerTracker.isStreaming()) {
+            workerTracker.readThrough(currentTick);
+            errorTime = workerTracker.hasError();
+            terminationTime = workerTracker.getLatestDetectionTime();
+        }
+    }
+
+    /**
+     * Processes the given frames and sends the tracked objects to Fusion-SLAM
+     * in a single TrackedObjectsEvent.
+     *
+     * @param frames The frames that are due now.
+     */
+    private void track(List<StampedDetectedObjects> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        // Process these objects and create tracked data
+        List<TrackedObject> trackedObjects = new ArrayList<>();
+        for (StampedDetectedObjects objects : frames) {
+            trackedObjects.addAll(workerTracker.processData(objects, objects.getTime()));
+        }
+
+        // Send TrackedObjectsEvent with the entire list
+        if (!trackedObjects.isEmpty()) {
+            sendEvent(new TrackedObjectsEvent(trackedObjects));
+            context.getStatistics().incrementTrackedObjects(trackedObjects.size());
+            LOG.debug(() -> getName() + " sent TrackedObjectsEvent with data: " + trackedObjects);
+        }
     }
 }
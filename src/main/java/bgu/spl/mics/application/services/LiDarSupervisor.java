@@ -0,0 +1,191 @@
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.TickFilter;
+import bgu.spl.mics.application.SimulationContext;
+import bgu.spl.mics.application.messages.CrashedBroadcast;
+import bgu.spl.mics.application.messages.RetireWorkerBroadcast;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.logging.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * LiDarSupervisor grows and shrinks the pool of LiDAR workers with the
+ * DetectObjectsEvent backlog.
+ * <p>
+ * On every tick it sums the mailbox depths of the workers. While the backlog
+ * exceeds {@code scaleUpDepth} messages per worker and the pool is smaller
+ * than {@code maxWorkers}, it starts one spare {@link LiDarService} per tick.
+ * A spare copies one of the configured workers, in turn, and shares its
+ * database, so it tracks any frame exactly as the configured worker would.
+ * Once the backlog falls below {@code scaleDownDepth} messages per worker it
+ * retires the newest spare, again one per tick. A retired spare finishes the
+ * frames it already has before it terminates; configured workers are never
+ * retired. When the run ends the supervisor stops every spare still running.
+ * <p>
+ * In max-speed mode every tick is delivered to an idle system, so the pool
+ * keeps its configured size.
+ */
+public class LiDarSupervisor extends MicroService {
+
+    private static final Logger LOG = Logger.getLogger(LiDarSupervisor.class);
+
+    public static final int DEFAULT_SCALE_UP_DEPTH = 32;
+    public static final int DEFAULT_SCALE_DOWN_DEPTH = 2;
+
+    private final List<LiDarService> workers; // The configured workers, never retired
+    private final int maxWorkers;
+    private final int scaleUpDepth;
+    private final int scaleDownDepth;
+    private final SimulationContext context;
+    private final MessageBusImpl bus;
+    private final Deque<LiDarService> spares = new ArrayDeque<>(); // Running spares, newest last
+    private final List<Thread> spareThreads = new ArrayList<>();
+    private int nextId;
+    private int started;
+    private int retired;
+    private int peakWorkers;
+
+    /**
+     * Constructor for LiDarSupervisor.
+     *
+     * @param workers        The configured LiDAR workers, in configuration order.
+     * @param maxWorkers     The largest pool size, spares included.
+     * @param scaleUpDepth   The backlog per worker above which a spare is started.
+     * @param scaleDownDepth The backlog per worker below which a spare is retired.
+     * @param context        The simulation this service belongs to.
+     */
+    public LiDarSupervisor(List<LiDarService> workers, int maxWorkers, int scaleUpDepth, int scaleDownDepth,
+                           SimulationContext context) {
+        super("LiDarSupervisor", context.getMessageBus());
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("A LiDAR supervisor needs at least one configured worker");
+        }
+        if (scaleDownDepth >= scaleUpDepth) {
+            throw new IllegalArgumentException("Scale-down depth must be below scale-up depth: "
+                    + scaleDownDepth + " >= " + scaleUpDepth);
+        }
+        this.workers = new ArrayList<>(workers);
+        this.maxWorkers = maxWorkers;
+        this.scaleUpDepth = scaleUpDepth;
+        this.scaleDownDepth = scaleDownDepth;
+        this.context = context;
+        this.bus = context.getMessageBus();
+        this.nextId = workers.stream().mapToInt(worker -> worker.workerTracker.getId()).max().getAsInt() + 1;
+        this.peakWorkers = workers.size();
+    }
+
+    /**
+     * Initializes the LiDarSupervisor.
+     * Subscribes to TickBroadcast to resize the pool, and to TerminatedBroadcast
+     * and CrashedBroadcast to stop.
+     */
+    @Override
+    protected void initialize() {
+        LOG.info(getName() + " initialized with at most " + maxWorkers + " LiDAR workers.");
+
+        subscribeBroadcast(TickBroadcast.class, TickFilter.every(1), tick -> {
+            int size = workers.size() + spares.size();
+            int backlog = backlog();
+
+            if (backlog > scaleUpDepth * size && size < maxWorkers) {
+                startSpare(tick.getTime(), backlog);
+            } else if (backlog < scaleDownDepth * size && !spares.isEmpty()) {
+                LiDarService spare = spares.removeLast();
+                int id = spare.workerTracker.getId();
+                LOG.info(() -> getName() + ": backlog " + backlog + " at tick " + tick.getTime() + ", retiring LiDAR worker " + id);
+                sendBroadcast(new RetireWorkerBroadcast(id));
+                retired++;
+            }
+        });
+
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), terminated -> {
+            LOG.info(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
+            stopSpares();
+            terminate();
+        });
+
+        subscribeBroadcast(CrashedBroadcast.class, crashed -> {
+            LOG.info(() -> getName() + " received CrashedBroadcast from " + crashed.getSource() + ". Terminating.");
+            stopSpares();
+            terminate();
+        });
+    }
+
+    // The number of messages waiting for the workers in the pool
+    private int backlog() {
+        int backlog = 0;
+        for (LiDarService worker : workers) {
+            backlog += bus.queueDepth(worker);
+        }
+        for (LiDarService spare : spares) {
+            backlog += bus.queueDepth(spare);
+        }
+        return backlog;
+    }
+
+    // Starts a spare copying the configured workers in turn, and waits until it has subscribed
+    private void startSpare(int tick, int backlog) {
+        LiDarService template = workers.get(started % workers.size());
+        LiDarService spare = LiDarService.spare(template.workerTracker.copy(nextId++), context);
+        LOG.info(() -> getName() + ": backlog " + backlog + " at tick " + tick + ", starting LiDAR worker " + spare.workerTracker.getId());
+        Thread thread = new Thread(spare);
+        spareThreads.add(thread);
+        thread.start();
+        try {
+            spare.awaitInitialization();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        spares.addLast(spare);
+        started++;
+        peakWorkers = Math.max(peakWorkers, workers.size() + spares.size());
+    }
+
+    // Stops the spares still running, including one that subscribed only after the broadcast that ends the run was sent
+    private void stopSpares() {
+        for (Thread thread : spareThreads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Waits for every spare this supervisor started to terminate. Call once
+     * the supervisor itself has terminated.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitSpares() throws InterruptedException {
+        for (Thread thread : spareThreads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * @return The number of spares started.
+     */
+    public int getStarted() {
+        return started;
+    }
+
+    /**
+     * @return The number of spares retired before the end of the run.
+     */
+    public int getRetired() {
+        return retired;
+    }
+
+    /**
+     * @return The largest pool size reached, configured workers included.
+     */
+    public int getPeakWorkers() {
+        return peakWorkers;
+    }
+}
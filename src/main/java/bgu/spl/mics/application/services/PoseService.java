@@ -1,12 +1,15 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.GurionRockRunner;
+import bgu.spl.mics.TickFilter;
+import bgu.spl.mics.application.SimulationContext;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.objects.GPSIMU;
 import bgu.spl.mics.application.objects.Pose;
 import bgu.spl.mics.application.objects.STATUS;
+import bgu.spl.mics.application.objects.TickSchedule;
+import bgu.spl.mics.logging.Logger;
 
 /**
  * PoseService is responsible for managing the robot's pose (position and orientation) updates.
@@ -17,8 +20,11 @@ import bgu.spl.mics.application.objects.STATUS;
  */
 public class PoseService extends MicroService {
 
+    private static final Logger LOG = Logger.getLogger(PoseService.class);
+
     private final GPSIMU gpsimu;
-    private final int terminationTime;
+    private int terminationTime; // Only changes for streamed poses, once their stream ends
+    private final SimulationContext context;
 
 
     /**
@@ -27,22 +33,51 @@ public class PoseService extends MicroService {
      * @param gpsimu The GPSIMU module used to manage pose data.
      */
     public PoseService(GPSIMU gpsimu) {
-        super("PoseService");
+        this(gpsimu, SimulationContext.getDefault());
+    }
+
+    /**
+     * Constructor for PoseService.
+     *
+     * @param gpsimu  The GPSIMU module used to manage pose data.
+     * @param context The simulation this service belongs to.
+     */
+    public PoseService(GPSIMU gpsimu, SimulationContext context) {
+        super("PoseService", context.getMessageBus());
+        this.context = context;
         this.gpsimu = gpsimu;
         this.terminationTime = gpsimu.getLatestDetectionTime();
 
     }
 
+    /**
+     * Returns every tick at which this service acts: the ticks that have a
+     * pose and the tick after its termination time, when it shuts down.
+     *
+     * @return The service's tick schedule, or null for streamed poses, which may come at any tick.
+     */
+    public TickSchedule getTickSchedule() {
+        if (gpsimu.isStreaming()) {
+            return null;
+        }
+        return gpsimu.getSchedule().with(TickSchedule.of(terminationTime + 1));
+    }
+
     /**
      * Initializes the PoseService.
      * Subscribes to TickBroadcast and manages pose updates.
      */
     @Override
     protected void initialize() {
-        System.out.println(getName() + " initialized.");
-
-        // Subscribe to TickBroadcast for periodic updates
-        subscribeBroadcast(TickBroadcast.class, tick -> {
+        LOG.info(getName() + " initialized.");
+
+        // Subscribe to TickBroadcast, woken only on the ticks that have a pose
+        TickFilter ticks = gpsimu.isStreaming() ? TickFilter.every(1) : getTickSchedule();
+        subscribeBroadcast(TickBroadcast.class, ticks, tick -> {
+            if (gpsimu.isStreaming()) {
+                gpsimu.readThrough(tick.getTime());
+                terminationTime = gpsimu.getLatestDetectionTime();
+            }
 
             if (tick.getTime() > terminationTime) {
                 sendBroadcast(new TerminatedBroadcast(this.getName()));
@@ -52,7 +87,7 @@ public class PoseService extends MicroService {
 
             if (gpsimu.getStatus().equals(STATUS.ERROR)) {
                 sendBroadcast(new CrashedBroadcast(this.getName()));
-                GurionRockRunner.reportCrash("gpsimu", "gps"); // Register the crash in GurionRockPro
+                context.reportCrash("gpsimu", "gps"); // Register the crash in GurionRockPro
                 terminate();
                 return;
             }
@@ -65,27 +100,25 @@ public class PoseService extends MicroService {
 
             if (currentPose != null) {
                 sendEvent(new PoseEvent(currentPose));
-                System.out.println(getName() + " sent PoseEvent: " + currentPose);
+                LOG.debug(() -> getName() + " sent PoseEvent: " + currentPose);
             } else {
-                System.err.println(getName() + " no pose available for tick: " + currentTick);
+                LOG.debug(() -> getName() + " no pose available for tick: " + currentTick);
             }
         });
 
-        subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
-            if (terminated.getSource().equals("TimeService")) {
-                System.out.println(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
-                terminate();
-            }
+        subscribeBroadcast(TerminatedBroadcast.class, TerminatedBroadcast.from("TimeService"), terminated -> {
+            LOG.info(getName() + " received TerminatedBroadcast from TimeService. Terminating.");
+            terminate();
         });
 
         // Subscribe to CrashedBroadcast to handle crashes (e.g., cleanup)
         subscribeBroadcast(CrashedBroadcast.class, crashed -> {
-            System.out.println("recieved CrashedBroadcast from " + crashed.getSource() + "Terminating.");
+            LOG.info(() -> getName() + " received CrashedBroadcast from " + crashed.getSource() + ". Terminating.");
             terminate();
         });
 
 
-        System.out.println(getName() + " is ready to process messages.");
+        LOG.debug(() -> getName() + " is ready to process messages.");
     }
 }
 
@@ -0,0 +1,99 @@
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.SimulationContext;
+import bgu.spl.mics.journal.JournalReader;
+import bgu.spl.mics.logging.Logger;
+
+import java.io.IOException;
+
+/**
+ * ReplayService feeds a recorded message journal back through the bus, in
+ * the order the messages were originally sent and as fast as the
+ * subscribers can take them. It takes the place of the sensors and the
+ * time service; only the services that consume their messages, such as
+ * Fusion-SLAM, need to run.
+ * <p>
+ * In lockstep mode every message is fully handled before the next one is
+ * sent, so each replay processes the same messages in the same order.
+ * Messages whose type has no codec were journaled without a payload and are skipped.
+ */
+public class ReplayService extends MicroService {
+
+    private static final Logger LOG = Logger.getLogger(ReplayService.class);
+
+    private final JournalReader reader;
+    private final boolean lockstep;
+    private long replayed;
+    private long skipped;
+    private long elapsedNanos;
+
+    /**
+     * Constructor for ReplayService.
+     *
+     * @param reader   The journal to replay.
+     * @param lockstep true to wait for each message to be handled before sending the next.
+     * @param context  The simulation to replay into.
+     */
+    public ReplayService(JournalReader reader, boolean lockstep, SimulationContext context) {
+        super("ReplayService", context.getMessageBus());
+        this.reader = reader;
+        this.lockstep = lockstep;
+    }
+
+    @Override
+    protected void initialize() {
+        long start = System.nanoTime();
+        try {
+            for (JournalReader.Record record = reader.next(); record != null; record = reader.next()) {
+                Message message = record.getMessage();
+                if (message == null) {
+                    skipped++;
+                    continue;
+                }
+                if (message instanceof Broadcast) {
+                    sendBroadcast((Broadcast) message);
+                } else {
+                    sendEvent((Event<?>) message);
+                }
+                replayed++;
+                if (lockstep) {
+                    awaitQuiescence();
+                }
+            }
+        } catch (IOException e) {
+            LOG.error(getName() + ": Failed to read the journal: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            LOG.info(getName() + ": Interrupted while replaying. Exiting.");
+            Thread.currentThread().interrupt();
+        } finally {
+            elapsedNanos = System.nanoTime() - start;
+            LOG.info(getName() + " replayed " + replayed + " messages, skipped " + skipped + ".");
+            terminate();
+        }
+    }
+
+    /**
+     * @return The number of messages sent so far.
+     */
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * @return The number of journaled messages that could not be rebuilt.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return How long the replay took, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
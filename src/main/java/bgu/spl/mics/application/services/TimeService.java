@@ -1,28 +1,112 @@
 package bgu.spl.mics.application.services;
 import bgu.spl.mics.MicroService;
-import bgu.spl.mics.application.GurionRockRunner;
+import bgu.spl.mics.application.SimulationContext;
 import bgu.spl.mics.application.messages.*;
 import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TickSchedule;
+import bgu.spl.mics.logging.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TimeService acts as the global timer for the system, broadcasting TickBroadcast messages
  * at regular intervals and controlling the simulation's duration.
+ * In max-speed mode it does not sleep; it hands each tick to the subscribers one by one
+ * and advances as soon as every other service has finished handling it, which also
+ * makes the run reproducible. Given the sensors' {@link TickSchedule}, max-speed mode
+ * also jumps straight to the next tick at which any sensor has something to do; the
+ * skipped ticks still count towards the system runtime.
+ * <p>
+ * In real-time mode ticks follow a fixed-rate schedule: tick n is due at
+ * {@code start + (n - 1) * period} measured with {@link System#nanoTime()}, so the
+ * time spent broadcasting does not accumulate as drift and sub-millisecond
+ * periods are possible. When a tick's work runs past the next deadline the
+ * overrun and the number of whole periods lost are recorded in the
+ * {@link StatisticalFolder}; the following ticks are sent back to back until the
+ * schedule has caught up, so no tick is ever skipped. Each deadline is charged
+ * once: a catch-up tick only records an overrun if its own work runs past a
+ * deadline that no earlier tick had already run past.
  */
 public class TimeService extends MicroService {
 
-    private final int tickTimeMillis; // Store tick time in milliseconds
+    private static final Logger LOG = Logger.getLogger(TimeService.class);
+
+    // Below this much time left we yield instead of parking, as parking overshoots by tens of microseconds
+    private static final long SPIN_THRESHOLD_NANOS = 50_000L;
+
+    private final long tickPeriodNanos; // Store tick time in nanoseconds
     private final int duration;
+    private final boolean maxSpeed;
+    private final TickSchedule schedule; // Ticks worth broadcasting in max-speed mode, null for all
+    private final SimulationContext context;
     /**
      * Constructor for TimeService.
      *
-     * @param TickTime  The duration of each tick in milliseconds.
+     * @param TickTime  The duration of each tick in seconds.
      * @param Duration  The total number of ticks before the service terminates.
      */
 
     public TimeService(int TickTime, int Duration) {
-        super("TimeService");
-        this.tickTimeMillis = TickTime * 1000; // Convert to milliseconds
+        this(TickTime, Duration, false);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in seconds, ignored in max-speed mode.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param maxSpeed  true to advance ticks as soon as the system is idle instead of sleeping.
+     */
+    public TimeService(int TickTime, int Duration, boolean maxSpeed) {
+        this(TickTime, TimeUnit.SECONDS, Duration, maxSpeed);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in {@code unit}, ignored in max-speed mode.
+     * @param unit      The unit of {@code TickTime}.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param maxSpeed  true to advance ticks as soon as the system is idle instead of sleeping.
+     */
+    public TimeService(long TickTime, TimeUnit unit, int Duration, boolean maxSpeed) {
+        this(TickTime, unit, Duration, maxSpeed, null);
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in {@code unit}, ignored in max-speed mode.
+     * @param unit      The unit of {@code TickTime}.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param maxSpeed  true to advance ticks as soon as the system is idle instead of sleeping.
+     * @param schedule  The ticks at which any service acts; in max-speed mode all other
+     *                  ticks are skipped. null to broadcast every tick.
+     */
+    public TimeService(long TickTime, TimeUnit unit, int Duration, boolean maxSpeed, TickSchedule schedule) {
+        this(TickTime, unit, Duration, maxSpeed, schedule, SimulationContext.getDefault());
+    }
+
+    /**
+     * Constructor for TimeService.
+     *
+     * @param TickTime  The duration of each tick in {@code unit}, ignored in max-speed mode.
+     * @param unit      The unit of {@code TickTime}.
+     * @param Duration  The total number of ticks before the service terminates.
+     * @param maxSpeed  true to advance ticks as soon as the system is idle instead of sleeping.
+     * @param schedule  The ticks at which any service acts; in max-speed mode all other
+     *                  ticks are skipped. null to broadcast every tick.
+     * @param context   The simulation whose clock this service drives.
+     */
+    public TimeService(long TickTime, TimeUnit unit, int Duration, boolean maxSpeed, TickSchedule schedule,
+                       SimulationContext context) {
+        super("TimeService", context.getMessageBus());
+        this.context = context;
+        this.tickPeriodNanos = unit.toNanos(TickTime); // Convert to nanoseconds
         this.duration = Duration;
+        this.maxSpeed = maxSpeed;
+        this.schedule = schedule;
     }
 
     /**
@@ -31,37 +115,75 @@ public class TimeService extends MicroService {
      */
     @Override
     protected void initialize() {
-        System.out.println(getName() + " initialized and ready.");
+        LOG.info(getName() + " initialized and ready.");
 
         // Subscribe to CrashedBroadcast
         subscribeBroadcast(CrashedBroadcast.class, crash -> {
-            System.out.println(getName() + ": Received CrashedBroadcast from " + crash.getSource());
-            System.out.println(getName() + ": Terminating due to crash.");
+            LOG.info(() -> getName() + ": Received CrashedBroadcast from " + crash.getSource() + ". Terminating due to crash.");
             terminate();
         });
 
+        StatisticalFolder stats = context.getStatistics();
+        boolean scheduled = !maxSpeed && tickPeriodNanos > 0;
+        long start = System.nanoTime();
         try {
-            for (int currentTick = 1; currentTick <= duration ; currentTick++) {
-                if (terminated || GurionRockRunner.hasCrashOccurred()) {
-                    System.out.println(getName() + ": Termination flag detected. Exiting.");
+            int previousTick = 0;
+            long charged = 0; // The last deadline a tick's work has run past and was recorded
+            for (int currentTick = nextTick(0); currentTick <= duration ; currentTick = nextTick(currentTick)) {
+                if (terminated || context.hasCrashOccurred()) {
+                    LOG.info(getName() + ": Termination flag detected. Exiting.");
                     break;
                 }
 
+                if (scheduled) {
+                    stats.recordTickLag(System.nanoTime() - (start + (currentTick - 1) * tickPeriodNanos));
+                }
+
                 // Send the TickBroadcast
                 try {
-                    sendBroadcast(new TickBroadcast(currentTick));
-                    StatisticalFolder.getInstance().incrementSystemRuntime(1);
-                    System.out.println(getName() + " broadcasted tick: " + currentTick);
+                    final int tick = currentTick;
+                    if (maxSpeed) {
+                        sendBroadcastInOrder(new TickBroadcast(tick));
+                    } else {
+                        sendBroadcast(new TickBroadcast(tick));
+                    }
+                    stats.incrementSystemRuntime(tick - previousTick);
+                    if (tick - previousTick > 1) {
+                        stats.recordSkippedTicks(tick - previousTick - 1);
+                    }
+                    previousTick = tick;
+                    LOG.debug(() -> getName() + " broadcasted tick: " + tick);
+                } catch (InterruptedException e) {
+                    LOG.info(getName() + ": Interrupted while broadcasting. Exiting.");
+                    Thread.currentThread().interrupt(); // Restore interrupted status
+                    break;
                 } catch (Exception e) {
-                    System.err.println(getName() + ": Error broadcasting TickBroadcast: " + e.getMessage());
+                    LOG.error(getName() + ": Error broadcasting TickBroadcast: " + e.getMessage(), e);
                     break;
                 }
 
-                // Sleep for the tick interval
+                // Wait for the next tick's deadline, or just until everyone handled the tick
                 try {
-                    Thread.sleep(tickTimeMillis);
+                    if (maxSpeed) {
+                        awaitQuiescence();
+                    } else if (scheduled) {
+                        long deadline = start + currentTick * tickPeriodNanos;
+                        long late = System.nanoTime() - deadline;
+                        if (late > 0) {
+                            // A catch-up tick was sent after its own deadline; only deadlines no earlier tick ran past are charged
+                            long crossed = currentTick + late / tickPeriodNanos;
+                            if (crossed > charged) {
+                                stats.recordTickOverrun(crossed - Math.max(charged, currentTick - 1) - 1);
+                                charged = crossed;
+                                final int tick = currentTick;
+                                LOG.debug(() -> getName() + ": tick " + tick + " overran its period by " + late / 1000 + "us");
+                            }
+                        } else {
+                            sleepUntil(deadline);
+                        }
+                    }
                 } catch (InterruptedException e) {
-                    System.out.println(getName() + ": Interrupted during sleep. Exiting.");
+                    LOG.info(getName() + ": Interrupted during sleep. Exiting.");
                     Thread.currentThread().interrupt(); // Restore interrupted status
                     break;
                 }
@@ -69,12 +191,53 @@ public class TimeService extends MicroService {
         } finally {
             try {
                 sendBroadcast(new TerminatedBroadcast(getName()));
-                System.out.println(getName() + " sending TerminatedBroadcast and terminating.");
+                LOG.info(getName() + " sending TerminatedBroadcast and terminating.");
             } catch (Exception e) {
-                System.err.println(getName() + ": Error sending TerminatedBroadcast: " + e.getMessage());
+                LOG.error(getName() + ": Error sending TerminatedBroadcast: " + e.getMessage(), e);
             } finally {
                 terminate();
-                System.out.println(getName() + " has fully terminated.");
+                LOG.debug(() -> getName() + " has fully terminated.");
+            }
+        }
+    }
+
+    /**
+     * Returns the tick to broadcast after {@code tick}: simply the next one, or in
+     * max-speed mode with a schedule the next scheduled tick. The last tick of the
+     * duration is always broadcast so the run ends at the same time.
+     *
+     * @param tick The last broadcast tick, 0 before the first one.
+     * @return The next tick to broadcast, greater than {@code duration} when done.
+     */
+    private int nextTick(int tick) {
+        if (!maxSpeed || schedule == null) {
+            return tick + 1;
+        }
+        int next = schedule.nextAfter(tick);
+        if (next == -1 || next > duration) {
+            return Math.max(duration, tick + 1);
+        }
+        return next;
+    }
+
+    /**
+     * Blocks until {@code System.nanoTime()} reaches {@code deadline}.
+     * Parks for the bulk of the wait and yields through the last few
+     * microseconds, which keeps sub-millisecond periods accurate.
+     *
+     * @param deadline The {@link System#nanoTime()} value to wait for.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.yield();
             }
         }
     }
@@ -0,0 +1,161 @@
+package bgu.spl.mics.journal;
+
+import bgu.spl.mics.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the messages of a {@link MessageJournal} back in the order they were sent.
+ * <p>
+ * The file is mapped read-only in windows of up to {@link #WINDOW_SIZE}
+ * bytes, so journals larger than 2 GB can be read as well.
+ */
+public final class JournalReader implements Closeable {
+
+    static final int WINDOW_SIZE = 256 << 20;
+
+    /**
+     * A journaled message.
+     */
+    public static final class Record {
+        private final int tick;
+        private final String type;
+        private final String sender;
+        private final Message message;
+
+        Record(int tick, String type, String sender, Message message) {
+            this.tick = tick;
+            this.type = type;
+            this.sender = sender;
+            this.message = message;
+        }
+
+        /**
+         * @return The latest timed broadcast sent before or with this message.
+         */
+        public int getTick() {
+            return tick;
+        }
+
+        /**
+         * @return The binary name of the message class.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The sending micro-service's name, or null if sent from outside one.
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * @return The rebuilt message, or null if its type has no codec.
+         */
+        public Message getMessage() {
+            return message;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MessageCodecs codecs;
+    private final long fileSize;
+    private final Map<Integer, String> types = new HashMap<>();
+    private final Map<Integer, String> senders = new HashMap<>();
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * @param file   The journal file.
+     * @param codecs The codecs to rebuild messages with.
+     * @throws IOException if the file cannot be read or is not a journal.
+     */
+    public JournalReader(Path file, MessageCodecs codecs) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.codecs = codecs;
+        this.fileSize = channel.size();
+        map(0, 0);
+        if (window.remaining() < MessageJournal.HEADER_SIZE || window.getInt() != MessageJournal.MAGIC) {
+            channel.close();
+            throw new IOException("Not a message journal: " + file);
+        }
+        int version = window.getInt();
+        if (version != MessageJournal.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported journal version " + version + ": " + file);
+        }
+    }
+
+    /**
+     * @return The next journaled message, or null at the end of the journal.
+     * @throws IOException if the journal cannot be read.
+     */
+    public Record next() throws IOException {
+        while (true) {
+            if (!ensure(4)) {
+                return null;
+            }
+            int length = window.getInt();
+            if (length <= 0) {
+                return null; // End marker
+            }
+            if (!ensure(length)) {
+                throw new IOException("Truncated journal record at offset " + (windowStart + window.position() - 4));
+            }
+            ByteBuffer body = window.slice();
+            body.limit(length);
+            window.position(window.position() + length);
+
+            byte kind = body.get();
+            int id = body.getInt();
+            if (kind == MessageJournal.TYPE) {
+                types.put(id, MessageCodec.getString(body));
+            } else if (kind == MessageJournal.SENDER) {
+                senders.put(id, MessageCodec.getString(body));
+            } else if (kind == MessageJournal.MESSAGE) {
+                int tick = body.getInt();
+                int senderId = body.getInt();
+                String type = types.get(id);
+                MessageCodec<Message> codec = type == null ? null : codecs.forName(type);
+                Message message = codec == null ? null : codec.decode(body.slice());
+                return new Record(tick, type, senders.get(senderId), message);
+            } else {
+                throw new IOException("Unknown journal record kind " + kind);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Makes sure the next bytes are inside the mapped window, remapping it if needed
+    private boolean ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return true;
+        }
+        long position = windowStart + window.position();
+        if (position + bytes > fileSize) {
+            return false;
+        }
+        map(position, bytes);
+        return true;
+    }
+
+    private void map(long position, int atLeast) throws IOException {
+        windowStart = position;
+        long length = Math.min(fileSize - position, Math.max(WINDOW_SIZE, atLeast));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+}
@@ -0,0 +1,62 @@
+package bgu.spl.mics.journal;
+
+import bgu.spl.mics.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes one message type to a compact binary form and reads it back, so a
+ * {@link MessageJournal} can record it and a {@link JournalReader} can rebuild it.
+ * Codecs must be stateless; they are shared by every sending thread.
+ *
+ * @param <M> The message type.
+ */
+public interface MessageCodec<M extends Message> {
+
+    /**
+     * Writes {@code message} at the buffer's position.
+     *
+     * @param message The message.
+     * @param out     The buffer; a {@link java.nio.BufferOverflowException} makes the journal retry with a larger one.
+     */
+    void encode(M message, ByteBuffer out);
+
+    /**
+     * Reads a message written by {@link #encode}.
+     *
+     * @param in The buffer, positioned at the payload and limited to it.
+     * @return The rebuilt message.
+     */
+    M decode(ByteBuffer in);
+
+    /**
+     * Writes a string as its UTF-8 length followed by its bytes; null is written as length -1.
+     *
+     * @param out   The buffer.
+     * @param value The string.
+     */
+    static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * @param in The buffer.
+     * @return A string written by {@link #putString}.
+     */
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
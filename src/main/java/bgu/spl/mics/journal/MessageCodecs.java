@@ -0,0 +1,74 @@
+package bgu.spl.mics.journal;
+
+import bgu.spl.mics.Message;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs a journal uses, by message type. Message types without a codec
+ * are still journaled, but only with their type, tick and sender, and cannot
+ * be replayed.
+ */
+public class MessageCodecs {
+
+    private final ConcurrentHashMap<Class<?>, MessageCodec<?>> byType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MessageCodec<?>> byName = new ConcurrentHashMap<>();
+    private final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    /**
+     * @param type  A message type.
+     * @param codec Its codec.
+     * @param <M>   The message type.
+     * @return This registry, for chaining.
+     */
+    public <M extends Message> MessageCodecs register(Class<M> type, MessageCodec<M> codec) {
+        byType.put(type, codec);
+        byName.put(type.getName(), codec);
+        return this;
+    }
+
+    /**
+     * @param type A message type.
+     * @return Its codec, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    public MessageCodec<Message> forType(Class<?> type) {
+        return (MessageCodec<Message>) byType.get(type);
+    }
+
+    /**
+     * @param typeName The binary name of a message class, as written in a journal.
+     * @return Its codec, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    public MessageCodec<Message> forName(String typeName) {
+        return (MessageCodec<Message>) byName.get(typeName);
+    }
+
+    /**
+     * Encodes a message's payload into this thread's scratch buffer, growing it as needed.
+     *
+     * @param message The message.
+     * @return The buffer, flipped and valid until this thread's next call, or null if the type has no codec.
+     */
+    public ByteBuffer encode(Message message) {
+        MessageCodec<Message> codec = forType(message.getClass());
+        if (codec == null) {
+            return null;
+        }
+        ByteBuffer buffer = scratch.get();
+        while (true) {
+            buffer.clear();
+            try {
+                codec.encode(message, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                scratch.set(buffer);
+            }
+        }
+    }
+}
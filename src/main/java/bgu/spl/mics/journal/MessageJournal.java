@@ -0,0 +1,192 @@
+package bgu.spl.mics.journal;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageTypes;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.TimedBroadcast;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * An append-only binary log of every message sent through a message-bus,
+ * written to a memory-mapped file.
+ * <p>
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, followed by
+ * records of the form {@code [int length][byte kind][body]}:
+ * <ul>
+ * <li>{@link #TYPE}: {@code [int type id][string class name]}, written the
+ * first time a message type is journaled;</li>
+ * <li>{@link #SENDER}: {@code [int sender id][string name]}, written the
+ * first time a micro-service sends;</li>
+ * <li>{@link #MESSAGE}: {@code [int type id][int tick][int sender id][payload]},
+ * where the tick is the latest {@link TimedBroadcast} journaled so far, the
+ * sender id is -1 for messages sent from outside a micro-service and the
+ * payload is written by the type's {@link MessageCodec}, if it has one.</li>
+ * </ul>
+ * A zero length marks the end of the journal.
+ * <p>
+ * Payloads are encoded into a per-thread scratch buffer before the journal's
+ * lock is taken, so the critical section is a bounds check and a memory copy
+ * into the mapped region; there is no system call per message. The file is
+ * mapped {@link #DEFAULT_SEGMENT_SIZE} bytes at a time.
+ */
+public final class MessageJournal implements Closeable {
+
+    public static final int MAGIC = 0x47524A31; // "GRJ1"
+    public static final int VERSION = 1;
+
+    public static final byte TYPE = 1;
+    public static final byte SENDER = 2;
+    public static final byte MESSAGE = 3;
+
+    static final int HEADER_SIZE = 8; // Magic and version
+    static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    private static final int MESSAGE_HEADER = 12; // Type id, tick and sender id
+    private static final ByteBuffer NO_PAYLOAD = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final MessageCodecs codecs;
+    private final int segmentSize;
+
+    // Guarded by this
+    private MappedByteBuffer segment;
+    private long segmentStart; // File offset of the segment
+    private boolean[] typesWritten = new boolean[0]; // By MessageTypes id
+    private final IdentityHashMap<MicroService, Integer> senders = new IdentityHashMap<>();
+    private int tick;
+    private long messages;
+    private boolean closed;
+
+    /**
+     * Creates or truncates a journal file.
+     *
+     * @param file   The journal file.
+     * @param codecs The codecs of the message types whose payload should be recorded.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public MessageJournal(Path file, MessageCodecs codecs) throws IOException {
+        this(file, codecs, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MessageJournal(Path file, MessageCodecs codecs, int segmentSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.codecs = codecs;
+        this.segmentSize = Math.max(segmentSize, 64);
+        this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+    }
+
+    /**
+     * Records a sent message. Ignored once the journal is closed.
+     *
+     * @param message The message.
+     * @param sender  The sending micro-service, or null if sent from outside one.
+     */
+    public void append(Message message, MicroService sender) {
+        ByteBuffer payload = codecs.encode(message);
+        if (payload == null) {
+            payload = NO_PAYLOAD.duplicate();
+        }
+        int typeId = MessageTypes.idOf(message.getClass());
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (message instanceof TimedBroadcast) {
+                tick = ((TimedBroadcast) message).getTime();
+            }
+            if (typeId >= typesWritten.length) {
+                typesWritten = Arrays.copyOf(typesWritten, Math.max(typeId + 1, typesWritten.length * 2));
+            }
+            if (!typesWritten[typeId]) {
+                typesWritten[typeId] = true;
+                writeDefinition(TYPE, typeId, message.getClass().getName());
+            }
+            int senderId = -1;
+            if (sender != null) {
+                Integer known = senders.get(sender);
+                if (known == null) {
+                    known = senders.size();
+                    senders.put(sender, known);
+                    writeDefinition(SENDER, known, sender.getName());
+                }
+                senderId = known;
+            }
+            int length = 1 + MESSAGE_HEADER + payload.remaining();
+            reserve(4 + length);
+            segment.putInt(length);
+            segment.put(MESSAGE);
+            segment.putInt(typeId);
+            segment.putInt(tick);
+            segment.putInt(senderId);
+            segment.put(payload);
+            messages++;
+        }
+    }
+
+    /**
+     * @return The number of messages journaled so far.
+     */
+    public synchronized long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public synchronized long size() {
+        return segmentStart + segment.position();
+    }
+
+    /**
+     * Stops recording and trims the file to the bytes written.
+     *
+     * @throws IOException if the file cannot be trimmed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long end = segmentStart + segment.position();
+        segment.force();
+        channel.truncate(end);
+        channel.close();
+    }
+
+    private void writeDefinition(byte kind, int id, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + 4 + bytes.length;
+        reserve(4 + length);
+        segment.putInt(length);
+        segment.put(kind);
+        segment.putInt(id);
+        segment.putInt(bytes.length);
+        segment.put(bytes);
+    }
+
+    // Maps the next segment if the current one cannot hold another bytes plus an end marker
+    private void reserve(int bytes) {
+        if (segment.remaining() >= bytes + 4) {
+            return;
+        }
+        segmentStart += segment.position();
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, Math.max(segmentSize, bytes + 4));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to extend the message journal", e);
+        }
+    }
+}
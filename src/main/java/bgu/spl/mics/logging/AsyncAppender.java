@@ -0,0 +1,156 @@
+package bgu.spl.mics.logging;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous appender backed by a fixed-size ring buffer.
+ * Producer threads claim a slot, copy the already formatted line into it and
+ * return immediately; a single daemon thread drains the buffer and writes to
+ * the console, so services never block on synchronized console I/O.
+ * <p>
+ * Slots are preallocated and reused. Each slot carries a sequence number that
+ * tells producers and the consumer whose turn it is (the classic bounded
+ * MPSC queue scheme), so the hot path needs a single atomic increment and no
+ * locks. When the buffer is full producers back off until the drainer frees a
+ * slot - log lines are never dropped.
+ */
+public class AsyncAppender {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    // A single reusable slot of the ring buffer
+    private static final class Slot {
+        volatile long sequence;
+        LogLevel level;
+        String message;
+        Throwable thrown;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // Next position to claim
+    private volatile long head; // Next position the drainer will read
+    private volatile boolean drainerParked;
+    private final Thread drainer;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    // Singleton holder pattern for lazy initialization and thread safety
+    private static class Holder {
+        private static final AsyncAppender INSTANCE = new AsyncAppender(DEFAULT_CAPACITY, System.out, System.err);
+    }
+
+    /**
+     * @return The process-wide appender used by every {@link Logger}.
+     */
+    public static AsyncAppender getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Creates an appender and starts its drainer thread.
+     *
+     * @param capacity The ring size, rounded up to a power of two.
+     * @param out      The stream for TRACE to INFO lines.
+     * @param err      The stream for WARN and ERROR lines.
+     */
+    public AsyncAppender(int capacity, PrintStream out, PrintStream err) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+        this.drainer = new Thread(this::drainLoop, "log-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
+    }
+
+    /**
+     * Queues a line for asynchronous output.
+     *
+     * @param level   The severity of the line.
+     * @param message The fully formatted message.
+     * @param thrown  An optional throwable whose stack trace follows the line.
+     */
+    public void append(LogLevel level, String message, Throwable thrown) {
+        long position = tail.getAndIncrement();
+        Slot slot = ring[(int) (position & mask)];
+
+        // Wait for the drainer to release the slot if the buffer is full
+        while (slot.sequence != position) {
+            wakeDrainer();
+            LockSupport.parkNanos(1_000L);
+        }
+        slot.level = level;
+        slot.message = message;
+        slot.thrown = thrown;
+        slot.sequence = position + 1; // Publish
+
+        if (drainerParked) {
+            wakeDrainer();
+        }
+    }
+
+    /**
+     * Blocks until every line appended before this call has been written.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (head < target && drainer.isAlive()) {
+            wakeDrainer();
+            LockSupport.parkNanos(100_000L);
+        }
+        out.flush();
+        err.flush();
+    }
+
+    private void wakeDrainer() {
+        LockSupport.unpark(drainer);
+    }
+
+    private void drainLoop() {
+        long position = head;
+        while (true) {
+            Slot slot = ring[(int) (position & mask)];
+            if (slot.sequence != position + 1) {
+                // Nothing published yet - flush what we wrote and go to sleep
+                out.flush();
+                err.flush();
+                drainerParked = true;
+                if (slot.sequence != position + 1) {
+                    LockSupport.parkNanos(10_000_000L);
+                }
+                drainerParked = false;
+                continue;
+            }
+
+            LogLevel level = slot.level;
+            String message = slot.message;
+            Throwable thrown = slot.thrown;
+            slot.message = null;
+            slot.thrown = null;
+            slot.sequence = position + ring.length; // Release the slot for the next lap
+
+            write(level, message, thrown);
+            head = ++position;
+        }
+    }
+
+    private void write(LogLevel level, String message, Throwable thrown) {
+        PrintStream stream = level.compareTo(LogLevel.WARN) >= 0 ? err : out;
+        stream.println(message);
+        if (thrown != null) {
+            thrown.printStackTrace(stream);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package bgu.spl.mics.logging;
+
+/**
+ * Severity levels understood by {@link Logger}, ordered from the most verbose
+ * to the most severe. {@code OFF} disables logging entirely.
+ */
+public enum LogLevel {
+    TRACE, DEBUG, INFO, WARN, ERROR, OFF;
+
+    /**
+     * Parses a level name, ignoring case.
+     *
+     * @param name     The level name (e.g. "debug").
+     * @param fallback The level to return when {@code name} is null or unknown.
+     * @return The matching level, or {@code fallback}.
+     */
+    public static LogLevel parse(String name, LogLevel fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        try {
+            return LogLevel.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package bgu.spl.mics.logging;
+
+import java.util.function.Supplier;
+
+/**
+ * A minimal leveled logging facade.
+ * <p>
+ * Messages below the active level are discarded before any formatting work is
+ * done: the {@link Supplier} overloads are only invoked when the level is
+ * enabled, so callers can log expensive {@code toString()} output (e.g. lists of
+ * tracked objects with all their cloud points) without paying for it in
+ * normal runs. Enabled lines are prefixed with the logger's name in brackets
+ * and handed to the {@link AsyncAppender}.
+ * <p>
+ * The active level is process-wide and defaults to INFO. It can be set with the
+ * {@code gurion.log.level} system property or {@link #setLevel(LogLevel)}.
+ */
+public final class Logger {
+
+    private static volatile int threshold =
+            LogLevel.parse(System.getProperty("gurion.log.level"), LogLevel.INFO).ordinal();
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name The logger name.
+     * @return A logger with the given name.
+     */
+    public static Logger getLogger(String name) {
+        return new Logger(name);
+    }
+
+    /**
+     * @param type The class that owns the logger.
+     * @return A logger named after {@code type}.
+     */
+    public static Logger getLogger(Class<?> type) {
+        return new Logger(type.getSimpleName());
+    }
+
+    /**
+     * Sets the process-wide logging level.
+     *
+     * @param level The lowest level that will be written.
+     */
+    public static void setLevel(LogLevel level) {
+        threshold = level.ordinal();
+    }
+
+    /**
+     * @return The process-wide logging level.
+     */
+    public static LogLevel getLevel() {
+        return LogLevel.values()[threshold];
+    }
+
+    /**
+     * @return The name of this logger.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param level The level to check.
+     * @return true if messages at {@code level} will be written.
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= threshold && level != LogLevel.OFF;
+    }
+
+    public void trace(Supplier<String> message) {
+        log(LogLevel.TRACE, message);
+    }
+
+    public void debug(String message) {
+        log(LogLevel.DEBUG, message, null);
+    }
+
+    public void debug(Supplier<String> message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public void info(String message) {
+        log(LogLevel.INFO, message, null);
+    }
+
+    public void info(Supplier<String> message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public void warn(String message) {
+        log(LogLevel.WARN, message, null);
+    }
+
+    public void error(String message) {
+        log(LogLevel.ERROR, message, null);
+    }
+
+    public void error(String message, Throwable thrown) {
+        log(LogLevel.ERROR, message, thrown);
+    }
+
+    /**
+     * Logs a lazily built message.
+     *
+     * @param level   The severity of the message.
+     * @param message Builds the message; only called if {@code level} is enabled.
+     */
+    public void log(LogLevel level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            AsyncAppender.getInstance().append(level, format(message.get()), null);
+        }
+    }
+
+    /**
+     * Logs a message.
+     *
+     * @param level   The severity of the message.
+     * @param message The message.
+     * @param thrown  An optional throwable to print after the message.
+     */
+    public void log(LogLevel level, String message, Throwable thrown) {
+        if (isEnabled(level)) {
+            AsyncAppender.getInstance().append(level, format(message), thrown);
+        }
+    }
+
+    // Prefixes a message with the logger's name
+    private String format(String message) {
+        return "[" + name + "] " + message;
+    }
+}
@@ -0,0 +1,117 @@
+package bgu.spl.mics.net;
+
+import bgu.spl.mics.journal.MessageCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The wire format shared by {@link MessageBroker} and {@link TcpTransport}.
+ * <p>
+ * Every frame is {@code [int length][byte kind][body]}, where the length
+ * counts the kind and the body:
+ * <ul>
+ * <li>{@link #SUBSCRIBE}: {@code [byte category][string type]}, a process
+ * tells the broker it has a subscriber of the type;</li>
+ * <li>{@link #SUBSCRIBED}: the same body, the broker tells the other
+ * processes that someone subscribes to the type;</li>
+ * <li>{@link #EVENT}: {@code [long id][string type][payload]};</li>
+ * <li>{@link #BROADCAST}: {@code [string type][payload]};</li>
+ * <li>{@link #COMPLETE}: {@code [long id][result]};</li>
+ * <li>{@link #NO_ROUTE}: {@code [long id]}, the event found no subscriber
+ * and its future resolves to null.</li>
+ * </ul>
+ * Types are class names, payloads are written by the type's
+ * {@link MessageCodec} and results are a tag byte followed by a boxed
+ * primitive or a string. Event ids are chosen by the sender and rewritten by
+ * the broker, which maps them back when the completion returns.
+ */
+final class Frames {
+
+    static final byte SUBSCRIBE = 1;
+    static final byte SUBSCRIBED = 2;
+    static final byte EVENT = 3;
+    static final byte BROADCAST = 4;
+    static final byte COMPLETE = 5;
+    static final byte NO_ROUTE = 6;
+
+    static final byte EVENT_TYPE = 0;
+    static final byte BROADCAST_TYPE = 1;
+
+    static final int HEADER = 5; // Length and kind
+    static final int MAX_FRAME = 64 << 20;
+    static final int MAX_PENDING_EVENTS = 1 << 20; // Events never completed are forgotten past this
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+
+    private Frames() {
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param result An event result.
+     * @return Its encoded form.
+     * @throws IllegalArgumentException if the result is not null, a boxed primitive or a string.
+     */
+    static byte[] encodeResult(Object result) {
+        ByteBuffer out;
+        if (result == null) {
+            out = ByteBuffer.allocate(1).put(NULL);
+        } else if (result instanceof Boolean) {
+            out = ByteBuffer.allocate(2).put(BOOLEAN).put((byte) ((Boolean) result ? 1 : 0));
+        } else if (result instanceof Integer) {
+            out = ByteBuffer.allocate(5).put(INTEGER).putInt((Integer) result);
+        } else if (result instanceof Long) {
+            out = ByteBuffer.allocate(9).put(LONG).putLong((Long) result);
+        } else if (result instanceof Double) {
+            out = ByteBuffer.allocate(9).put(DOUBLE).putDouble((Double) result);
+        } else if (result instanceof String) {
+            byte[] bytes = utf8((String) result);
+            out = ByteBuffer.allocate(5 + bytes.length).put(STRING).putInt(bytes.length).put(bytes);
+        } else {
+            throw new IllegalArgumentException("Event results of type " + result.getClass().getName()
+                    + " cannot be sent to another process");
+        }
+        return out.array();
+    }
+
+    /**
+     * @param in A buffer positioned at a result written by {@link #encodeResult}.
+     * @return The result.
+     */
+    static Object decodeResult(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL: return null;
+            case BOOLEAN: return in.get() != 0;
+            case INTEGER: return in.getInt();
+            case LONG: return in.getLong();
+            case DOUBLE: return in.getDouble();
+            case STRING: return MessageCodec.getString(in);
+            default: throw new IllegalArgumentException("Unknown result tag: " + tag);
+        }
+    }
+
+    /**
+     * @return A map that forgets its oldest entries beyond {@link #MAX_PENDING_EVENTS},
+     *         for events whose completion may never come.
+     */
+    static <K, V> Map<K, V> boundedMap() {
+        return new LinkedHashMap<K, V>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_PENDING_EVENTS;
+            }
+        };
+    }
+}
@@ -0,0 +1,310 @@
+package bgu.spl.mics.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A ring buffer in a memory-mapped file, written by one process and read by
+ * any number of others, each at its own pace.
+ * <p>
+ * The file starts with a header: the magic number, capacity and number of
+ * reader slots, then the writer's published position and one cursor per
+ * reader, each in its own 64-byte line so that the writer and the readers do
+ * not share cache lines. The data area follows, holding frames of the form
+ * {@code [int length][bytes]} aligned to 4 bytes; a length of -1 marks the
+ * unused end of the area before the writer wrapped around.
+ * <p>
+ * The writer copies a frame in and then stores its new position; a reader
+ * loads the position and then reads the frames up to it, and finally stores
+ * its cursor. Java 8 has no public fences, so the two steps on each side are
+ * separated by an access to a volatile field: a volatile store before a
+ * position or cursor is stored, and a volatile load after one is loaded.
+ * HotSpot compiles the store to a full fence and the load to an acquire
+ * barrier, which also keep the plain accesses to the mapped memory on either
+ * side of them in order; that is all the synchronization the two sides need.
+ * The Java memory model itself says nothing about memory shared with another
+ * process, so the ring relies on this compilation either way. The writer never passes the slowest
+ * reader's cursor: it waits, spinning at first and then parking, until every
+ * reader has consumed enough. Positions only grow, so they are never
+ * ambiguous between laps.
+ */
+final class MappedRing implements Closeable {
+
+    static final int MAGIC = 0x47524D31; // "GRM1"
+
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int READERS_OFFSET = 8;
+    private static final int POSITION_OFFSET = 64;
+    private static final int CURSORS_OFFSET = 128;
+    private static final int LINE = 64;
+    private static final int PADDING = -1;
+    private static final int SPINS = 1000;
+
+    private static volatile int fence; // Only accessed for the ordering its accesses impose, see release() and acquire()
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int readers;
+    private final int dataOffset;
+    private final int slot; // This process's cursor slot; the writer's own slot is never waited for
+    private final ReentrantLock writeLock = new ReentrantLock(); // Serializes appends
+
+    private long position; // The writer's position, or this reader's cursor
+
+    private MappedRing(FileChannel channel, MappedByteBuffer buffer, int capacity, int readers, int slot) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.readers = readers;
+        this.dataOffset = CURSORS_OFFSET + readers * LINE;
+        this.slot = slot;
+    }
+
+    /**
+     * Creates or truncates a ring to be written by this process.
+     *
+     * @param file     The ring file.
+     * @param capacity The data capacity in bytes, a power of two.
+     * @param readers  The number of cursor slots, one per process.
+     * @param slot     The writing process's own slot.
+     * @return The ring, positioned at its start.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    static MappedRing create(Path file, int capacity, int readers, int slot) throws IOException {
+        if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two of at least 64: " + capacity);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CURSORS_OFFSET + readers * LINE + capacity);
+        MappedRing ring = new MappedRing(channel, buffer, capacity, readers, slot);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(READERS_OFFSET, readers);
+        release();
+        buffer.putInt(0, MAGIC); // Last, so readers only attach to a complete header
+        return ring;
+    }
+
+    /**
+     * Attaches to a ring written by another process.
+     *
+     * @param file The ring file.
+     * @param slot This process's cursor slot.
+     * @return The ring, positioned at this reader's cursor, or null if the writer has not created it yet.
+     * @throws IOException if the file cannot be mapped.
+     */
+    static MappedRing attach(Path file, int slot) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < CURSORS_OFFSET) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CURSORS_OFFSET);
+        if (header.getInt(0) != MAGIC) {
+            channel.close();
+            return null;
+        }
+        acquire(); // The header is read after the magic number that completes it
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        int readers = header.getInt(READERS_OFFSET);
+        if (slot >= readers) {
+            channel.close();
+            throw new IllegalArgumentException("Ring " + file + " has only " + readers + " reader slots");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CURSORS_OFFSET + readers * LINE + capacity);
+        MappedRing ring = new MappedRing(channel, buffer, capacity, readers, slot);
+        ring.position = buffer.getLong(cursorOffset(slot));
+        return ring;
+    }
+
+    /**
+     * @return The largest frame the ring accepts.
+     */
+    int maxFrame() {
+        return capacity / 2 - 4;
+    }
+
+    /**
+     * Appends a frame, waiting while the slowest reader is a whole ring behind.
+     * Only the creating process may call this.
+     *
+     * @param frame The frame's bytes, from its position to its limit.
+     * @throws InterruptedException if interrupted while waiting for room.
+     */
+    void append(ByteBuffer frame) throws InterruptedException {
+        checkLength(frame.remaining());
+        writeLock.lockInterruptibly();
+        try {
+            awaitRoom(footprint(frame.remaining()));
+            put(frame);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a frame only if that needs no waiting: neither for another
+     * appending thread nor for the readers to make room.
+     *
+     * @param frame The frame's bytes, from its position to its limit; left untouched if not appended.
+     * @return true if the frame was appended.
+     */
+    boolean tryAppend(ByteBuffer frame) {
+        checkLength(frame.remaining());
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (!hasRoom(footprint(frame.remaining()))) {
+                return false;
+            }
+            put(frame);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Hands every frame published since the last poll to {@code handler} and
+     * then releases their space to the writer.
+     *
+     * @param handler Receives each frame, positioned at its first byte; it must not keep the buffer.
+     * @return The number of frames handled.
+     */
+    int poll(Consumer<ByteBuffer> handler) {
+        long published = buffer.getLong(POSITION_OFFSET);
+        if (published == position) {
+            return 0;
+        }
+        acquire(); // Frame loads are not moved before the position load
+        int frames = 0;
+        while (position < published) {
+            int offset = (int) (position & mask);
+            int length = buffer.getInt(dataOffset + offset);
+            if (length == PADDING) {
+                position += capacity - offset;
+                continue;
+            }
+            ByteBuffer frame = buffer.duplicate();
+            frame.limit(dataOffset + offset + 4 + length);
+            frame.position(dataOffset + offset + 4);
+            handler.accept(frame);
+            position += align(4 + length);
+            frames++;
+        }
+        release(); // The frames are read before the cursor that frees them
+        buffer.putLong(cursorOffset(slot), position);
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void checkLength(int length) {
+        if (length > maxFrame()) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes does not fit a ring of " + capacity);
+        }
+    }
+
+    // The bytes a frame takes up at the current position, including the padding if it must wrap around
+    private int footprint(int length) {
+        int size = align(4 + length);
+        int toEnd = capacity - (int) (position & mask);
+        return size + (toEnd < size ? toEnd : 0);
+    }
+
+    // Copies a frame in and publishes it; the caller holds writeLock and has made room
+    private void put(ByteBuffer frame) {
+        int length = frame.remaining();
+        int size = align(4 + length);
+        int offset = (int) (position & mask);
+        int toEnd = capacity - offset;
+        if (toEnd < size) {
+            buffer.putInt(dataOffset + offset, PADDING);
+            position += toEnd;
+            offset = 0;
+        }
+        buffer.putInt(dataOffset + offset, length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(dataOffset + offset + 4);
+        target.put(frame);
+        position += size;
+        release(); // The frame is written before the position that publishes it
+        buffer.putLong(POSITION_OFFSET, position);
+    }
+
+    private boolean hasRoom(int bytes) {
+        return position + bytes - slowestReader() <= capacity;
+    }
+
+    // Waits until every other reader has consumed enough for bytes more to be written
+    private void awaitRoom(int bytes) throws InterruptedException {
+        int waits = 0;
+        while (!hasRoom(bytes)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backOff(waits++);
+        }
+    }
+
+    private long slowestReader() {
+        long slowest = position;
+        for (int i = 0; i < readers; i++) {
+            if (i != slot) {
+                slowest = Math.min(slowest, buffer.getLong(cursorOffset(i)));
+            }
+        }
+        acquire(); // Cursor loads are not moved past the writes they allow
+        return slowest;
+    }
+
+    /**
+     * Spins, then yields, then parks briefly; waiting threads stay responsive
+     * without burning a core once the other side has gone quiet.
+     *
+     * @param waits The number of times the caller has waited so far.
+     */
+    static void backOff(int waits) {
+        if (waits < SPINS) {
+            return;
+        }
+        if (waits < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    // A volatile store: the accesses before it are not moved past the plain stores that follow
+    private static void release() {
+        fence = 0;
+    }
+
+    // A volatile load: the accesses after it are not moved before the plain loads that precede it
+    private static int acquire() {
+        return fence;
+    }
+
+    private static int cursorOffset(int slot) {
+        return CURSORS_OFFSET + slot * LINE;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
@@ -0,0 +1,404 @@
+package bgu.spl.mics.net;
+
+import bgu.spl.mics.journal.MessageCodec;
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes events and broadcasts between the message-buses of several
+ * processes, each connected through a {@link TcpTransport}.
+ * <p>
+ * The broker runs on a single thread around a {@link Selector}. It keeps,
+ * per message type, the connections that subscribe to it: broadcasts go to
+ * all of them but the sender, events to one of them in round-robin order.
+ * It never decodes payloads, so it needs no codecs. Everything routed while
+ * handling one round of reads is queued per connection and written with one
+ * system call per socket. While any connection has more than
+ * {@link #HIGH_WATER} bytes waiting, the broker stops reading until it drains.
+ * <p>
+ * Usage: {@code MessageBroker <port>}.
+ */
+public final class MessageBroker implements Runnable, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(MessageBroker.class);
+
+    static final int HIGH_WATER = 16 << 20;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final List<Connection> connections = new ArrayList<>();
+    private final Map<String, Route> eventRoutes = new HashMap<>();
+    private final Map<String, Route> broadcastRoutes = new HashMap<>();
+    private final Map<Long, PendingEvent> pending = Frames.boundedMap();
+    private long nextEventId;
+    private volatile boolean running = true;
+
+    // One process's connection and its buffers; only touched by the broker thread
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(64 << 10);
+        ByteBuffer out = ByteBuffer.allocate(64 << 10);
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        // Makes room for bytes more outgoing bytes
+        ByteBuffer reserve(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            return out;
+        }
+    }
+
+    // The subscribers of one message type
+    private static final class Route {
+        final List<Connection> subscribers = new ArrayList<>();
+        int next; // Round-robin position for events
+    }
+
+    // An event forwarded to target, to be answered to origin under its own id
+    private static final class PendingEvent {
+        final Connection origin;
+        final long originId;
+        final Connection target;
+
+        PendingEvent(Connection origin, long originId, Connection target) {
+            this.origin = origin;
+            this.originId = originId;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Binds the broker. It starts routing once {@link #run()} is called,
+     * e.g. through {@link #start()}.
+     *
+     * @param address The address to listen on; port 0 picks a free port.
+     * @throws IOException if the address cannot be bound.
+     */
+    public MessageBroker(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: MessageBroker <port>");
+            System.exit(1);
+        }
+        try (MessageBroker broker = new MessageBroker(new InetSocketAddress(Integer.parseInt(args[0])))) {
+            LOG.info("Message broker listening on port " + broker.getPort());
+            broker.run();
+        } catch (Exception e) {
+            LOG.error("Error: " + e.getMessage(), e);
+            AsyncAppender.getInstance().flush();
+            System.exit(1);
+        }
+        AsyncAppender.getInstance().flush();
+    }
+
+    /**
+     * @return The port the broker listens on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the broker on a new daemon thread.
+     *
+     * @return The thread.
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "MessageBroker");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable() && !read(connection)) {
+                            disconnect(connection);
+                        }
+                    }
+                }
+                flushAll();
+            }
+        } catch (IOException e) {
+            if (running) {
+                LOG.error("Message broker failed: " + e.getMessage(), e);
+            }
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                closeQuietly(connection.channel);
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Stops the broker and closes every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // Frames are batched here already
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(channel, key);
+        key.attach(connection);
+        connections.add(connection);
+        // Tell the newcomer about everything already subscribed elsewhere
+        eventRoutes.forEach((type, route) -> {
+            if (!route.subscribers.isEmpty()) {
+                writeSubscribed(connection, Frames.EVENT_TYPE, type);
+            }
+        });
+        broadcastRoutes.forEach((type, route) -> {
+            if (!route.subscribers.isEmpty()) {
+                writeSubscribed(connection, Frames.BROADCAST_TYPE, type);
+            }
+        });
+        LOG.info("Process connected: " + channel.getRemoteAddress());
+    }
+
+    // Reads what is available and handles every complete frame; false once the peer has gone
+    private boolean read(Connection connection) {
+        int read;
+        try {
+            read = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            return false;
+        }
+        if (read < 0) {
+            return false;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > Frames.MAX_FRAME) {
+                LOG.error("Dropping connection that sent a frame of " + length + " bytes");
+                return false;
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            int end = in.position() + 4 + length;
+            ByteBuffer frame = in.duplicate();
+            frame.limit(end);
+            handle(connection, frame);
+            in.position(end);
+        }
+        in.compact();
+        // A frame larger than the buffer needs a bigger one
+        if (in.position() >= 4) {
+            int needed = 4 + in.getInt(0);
+            if (needed > in.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                in.flip();
+                bigger.put(in);
+                connection.in = bigger;
+            }
+        }
+        return true;
+    }
+
+    // Routes one frame, positioned at its length field
+    private void handle(Connection from, ByteBuffer frame) {
+        int start = frame.position();
+        frame.getInt();
+        byte kind = frame.get();
+        switch (kind) {
+            case Frames.SUBSCRIBE: {
+                byte category = frame.get();
+                String type = MessageCodec.getString(frame);
+                Route route = (category == Frames.EVENT_TYPE ? eventRoutes : broadcastRoutes)
+                        .computeIfAbsent(type, k -> new Route());
+                if (!route.subscribers.contains(from)) {
+                    route.subscribers.add(from);
+                    for (Connection connection : connections) {
+                        if (connection != from) {
+                            writeSubscribed(connection, category, type);
+                        }
+                    }
+                }
+                break;
+            }
+            case Frames.EVENT: {
+                long originId = frame.getLong();
+                int typeStart = frame.position();
+                Connection target = nextSubscriber(eventRoutes.get(MessageCodec.getString(frame)), from);
+                if (target == null) {
+                    writeId(from, Frames.NO_ROUTE, originId);
+                    break;
+                }
+                long id = ++nextEventId;
+                pending.put(id, new PendingEvent(from, originId, target));
+                frame.position(typeStart);
+                ByteBuffer out = target.reserve(Frames.HEADER + 8 + frame.remaining());
+                out.putInt(1 + 8 + frame.remaining()).put(Frames.EVENT).putLong(id).put(frame);
+                break;
+            }
+            case Frames.BROADCAST: {
+                Route route = broadcastRoutes.get(MessageCodec.getString(frame));
+                if (route != null) {
+                    for (Connection connection : route.subscribers) {
+                        if (connection != from) {
+                            ByteBuffer whole = frame.duplicate();
+                            whole.position(start);
+                            connection.reserve(whole.remaining()).put(whole);
+                        }
+                    }
+                }
+                break;
+            }
+            case Frames.COMPLETE: {
+                PendingEvent event = pending.remove(frame.getLong());
+                if (event != null && connections.contains(event.origin)) {
+                    ByteBuffer out = event.origin.reserve(Frames.HEADER + 8 + frame.remaining());
+                    out.putInt(1 + 8 + frame.remaining()).put(Frames.COMPLETE).putLong(event.originId).put(frame);
+                }
+                break;
+            }
+            case Frames.NO_ROUTE: {
+                PendingEvent event = pending.remove(frame.getLong());
+                if (event != null && connections.contains(event.origin)) {
+                    writeId(event.origin, Frames.NO_ROUTE, event.originId);
+                }
+                break;
+            }
+            default:
+                LOG.warn("Ignoring frame of unknown kind " + kind);
+        }
+    }
+
+    // Picks the next subscriber of an event type in round-robin order, never the sender itself
+    private static Connection nextSubscriber(Route route, Connection sender) {
+        if (route == null) {
+            return null;
+        }
+        int size = route.subscribers.size();
+        for (int i = 0; i < size; i++) {
+            Connection candidate = route.subscribers.get(Math.floorMod(route.next++, size));
+            if (candidate != sender) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void disconnect(Connection connection) {
+        connections.remove(connection);
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        eventRoutes.values().forEach(route -> route.subscribers.remove(connection));
+        broadcastRoutes.values().forEach(route -> route.subscribers.remove(connection));
+        // Events it was handling will never complete; events it sent have nobody to answer to
+        Iterator<PendingEvent> events = pending.values().iterator();
+        while (events.hasNext()) {
+            PendingEvent event = events.next();
+            if (event.origin == connection) {
+                events.remove();
+            } else if (event.target == connection) {
+                events.remove();
+                writeId(event.origin, Frames.NO_ROUTE, event.originId);
+            }
+        }
+        LOG.info("Process disconnected; " + connections.size() + " remaining");
+    }
+
+    // Writes every connection's queued frames, and pauses reading while any of them is backed up
+    private void flushAll() {
+        boolean congested = false;
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (connection.out.position() > 0) {
+                connection.out.flip();
+                try {
+                    connection.channel.write(connection.out);
+                } catch (IOException e) {
+                    connection.out.clear();
+                    disconnect(connection);
+                    continue;
+                } finally {
+                    connection.out.compact();
+                }
+            }
+            congested |= connection.out.position() > HIGH_WATER;
+        }
+        for (Connection connection : connections) {
+            int ops = congested ? 0 : SelectionKey.OP_READ;
+            if (connection.out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            connection.key.interestOps(ops);
+        }
+    }
+
+    private static void writeSubscribed(Connection connection, byte category, String type) {
+        byte[] name = Frames.utf8(type);
+        connection.reserve(Frames.HEADER + 1 + 4 + name.length)
+                .putInt(1 + 1 + 4 + name.length).put(Frames.SUBSCRIBED).put(category).putInt(name.length).put(name);
+    }
+
+    private static void writeId(Connection connection, byte kind, long id) {
+        connection.reserve(Frames.HEADER + 8).putInt(1 + 8).put(kind).putLong(id);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already closing
+        }
+    }
+}
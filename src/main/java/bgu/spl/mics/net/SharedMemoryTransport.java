@@ -0,0 +1,352 @@
+package bgu.spl.mics.net;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Future;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessageTransport;
+import bgu.spl.mics.journal.MessageCodec;
+import bgu.spl.mics.journal.MessageCodecs;
+import bgu.spl.mics.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects the message-buses of processes on the same host through
+ * memory-mapped files, without a system call per message.
+ * <p>
+ * Each of the {@code processes} processes sharing a directory writes every
+ * frame it sends to its own {@link MappedRing}, {@code ring-<id>.bin}, and
+ * reads the rings of all the others on a single polling thread. Rings are
+ * read by everyone, so frames that concern one process carry its id:
+ * events name the process chosen, in round-robin order, among those whose
+ * subscription frames announced a subscriber, and completions name the
+ * process that sent the event. As with {@link TcpTransport}, local
+ * subscribers come first and message types without a codec stay in their
+ * process. The frames are those of {@link Frames}, except that
+ * {@link Frames#EVENT}, {@link Frames#COMPLETE} and {@link Frames#NO_ROUTE}
+ * start with the target process id.
+ * <p>
+ * A ring is only reused once every other process has read it, so all
+ * processes must be running for traffic to flow, and a process that stops
+ * reading eventually stalls the writers. The polling thread itself never
+ * waits for room in its own ring, since two processes with full rings would
+ * then wait for each other forever: a reply it cannot append at once is kept
+ * and retried after each round of polls. The directory must not be reused
+ * while processes of an earlier run still have it mapped.
+ */
+public final class SharedMemoryTransport implements MessageTransport, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(SharedMemoryTransport.class);
+
+    public static final int DEFAULT_CAPACITY = 16 << 20;
+
+    private final MessageBusImpl bus;
+    private final MessageCodecs codecs;
+    private final Path directory;
+    private final int processId;
+    private final MappedRing out;
+    private final MappedRing[] in; // By process id, null until the process has created its ring
+    private final Thread reader;
+    private volatile boolean running = true;
+
+    private final Set<String> announced = ConcurrentHashMap.newKeySet(); // Types subscribed here
+    private final ConcurrentHashMap<String, List<Integer>> eventSubscribers = new ConcurrentHashMap<>(); // Process ids by event type
+    private final Set<String> remoteBroadcasts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextTarget = new AtomicInteger();
+    private final AtomicLong nextEventId = new AtomicLong();
+    private final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    // Futures of events sent out, and {origin, id} of events received, until they complete; guarded by themselves
+    private final Map<Long, Future<Object>> sentEvents = Frames.boundedMap();
+    private final Map<Event<?>, long[]> receivedEvents = Frames.boundedMap();
+    private final Queue<ByteBuffer> pendingReplies = new ArrayDeque<>(); // Replies not appended yet; polling thread only
+
+    private SharedMemoryTransport(Path directory, int processId, int processes, MappedRing out,
+                                  MessageBusImpl bus, MessageCodecs codecs) {
+        this.directory = directory;
+        this.processId = processId;
+        this.out = out;
+        this.in = new MappedRing[processes];
+        this.bus = bus;
+        this.codecs = codecs;
+        this.reader = new Thread(this::readLoop, "SharedMemoryTransport-" + processId);
+        reader.setDaemon(true);
+    }
+
+    /**
+     * Creates this process's ring in {@code directory}, starts reading the
+     * others' and installs the transport on {@code bus}.
+     *
+     * @param directory The directory shared by the processes.
+     * @param processId This process's id, from 0 to {@code processes - 1}.
+     * @param processes The number of processes.
+     * @param capacity  The ring capacity in bytes, a power of two.
+     * @param bus       The local message-bus.
+     * @param codecs    The codecs of the message types to exchange.
+     * @return The transport.
+     * @throws IOException if the ring cannot be created.
+     */
+    public static SharedMemoryTransport open(Path directory, int processId, int processes, int capacity,
+                                             MessageBusImpl bus, MessageCodecs codecs) throws IOException {
+        if (processId < 0 || processId >= processes) {
+            throw new IllegalArgumentException("Process id " + processId + " out of range for " + processes + " processes");
+        }
+        MappedRing out = MappedRing.create(ringFile(directory, processId), capacity, processes, processId);
+        SharedMemoryTransport transport = new SharedMemoryTransport(directory, processId, processes, out, bus, codecs);
+        transport.reader.start();
+        bus.setTransport(transport);
+        return transport;
+    }
+
+    /**
+     * @param type A message type.
+     * @return true if another process has announced a subscriber of {@code type}.
+     */
+    public boolean isSubscribedRemotely(Class<? extends Message> type) {
+        return Event.class.isAssignableFrom(type)
+                ? eventSubscribers.containsKey(type.getName())
+                : remoteBroadcasts.contains(type.getName());
+    }
+
+    @Override
+    public void subscribed(Class<? extends Message> type) {
+        if (codecs.forType(type) != null && announced.add(type.getName())) {
+            byte[] name = Frames.utf8(type.getName());
+            byte category = Event.class.isAssignableFrom(type) ? Frames.EVENT_TYPE : Frames.BROADCAST_TYPE;
+            write(frame(2 + 4 + name.length).put(Frames.SUBSCRIBE).put(category).putInt(name.length).put(name));
+        }
+    }
+
+    @Override
+    public void broadcast(Broadcast b) {
+        if (!remoteBroadcasts.contains(b.getClass().getName())) {
+            return;
+        }
+        ByteBuffer payload = codecs.encode(b);
+        if (payload != null) {
+            byte[] name = Frames.utf8(b.getClass().getName());
+            write(frame(1 + 4 + name.length + payload.remaining())
+                    .put(Frames.BROADCAST).putInt(name.length).put(name).put(payload));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> sendEvent(Event<T> e) {
+        List<Integer> subscribers = eventSubscribers.get(e.getClass().getName());
+        ByteBuffer payload = subscribers == null ? null : codecs.encode(e);
+        if (payload == null) {
+            return null;
+        }
+        int target = subscribers.get(Math.floorMod(nextTarget.getAndIncrement(), subscribers.size()));
+        long id = nextEventId.incrementAndGet();
+        Future<Object> future = new Future<>();
+        synchronized (sentEvents) {
+            sentEvents.put(id, future);
+        }
+        byte[] name = Frames.utf8(e.getClass().getName());
+        write(frame(1 + 4 + 8 + 4 + name.length + payload.remaining())
+                .put(Frames.EVENT).putInt(target).putLong(id).putInt(name.length).put(name).put(payload));
+        return (Future<T>) future;
+    }
+
+    @Override
+    public <T> void completed(Event<T> e, T result) {
+        long[] origin;
+        synchronized (receivedEvents) {
+            origin = receivedEvents.remove(e);
+        }
+        if (origin != null) {
+            byte[] encoded = Frames.encodeResult(result);
+            write(frame(1 + 4 + 8 + encoded.length).put(Frames.COMPLETE).putInt((int) origin[0]).putLong(origin[1]).put(encoded));
+        }
+    }
+
+    /**
+     * Stops reading, detaches from the bus and unmaps what it can. The ring
+     * files are left for the other processes to finish reading.
+     */
+    @Override
+    public void close() {
+        bus.setTransport(null);
+        running = false;
+        reader.interrupt();
+        try {
+            reader.join(1000);
+            out.close();
+            for (MappedRing ring : in) {
+                if (ring != null) {
+                    ring.close();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to close a ring: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Path ringFile(Path directory, int processId) {
+        return directory.resolve("ring-" + processId + ".bin");
+    }
+
+    // This thread's frame buffer, cleared and large enough for bytes
+    private ByteBuffer frame(int bytes) {
+        ByteBuffer buffer = scratch.get();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+            scratch.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void write(ByteBuffer frame) {
+        frame.flip();
+        try {
+            out.append(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Appends a frame from the polling thread without waiting, keeping a copy to retry if the ring is full or busy
+    private void reply(ByteBuffer frame) {
+        frame.flip();
+        if (pendingReplies.isEmpty() && out.tryAppend(frame)) {
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame).flip();
+        pendingReplies.add(copy);
+    }
+
+    // Polls every other process's ring, attaching to each once it exists
+    private void readLoop() {
+        int idle = 0;
+        while (running) {
+            int frames = 0;
+            for (int source = 0; source < in.length; source++) {
+                if (source == processId) {
+                    continue;
+                }
+                MappedRing ring = in[source];
+                if (ring == null) {
+                    try {
+                        ring = in[source] = MappedRing.attach(ringFile(directory, source), processId);
+                    } catch (IOException e) {
+                        LOG.error("Failed to attach to process " + source + "'s ring: " + e.getMessage(), e);
+                    }
+                    if (ring == null) {
+                        continue;
+                    }
+                }
+                final int from = source;
+                frames += ring.poll(frame -> handle(from, frame));
+            }
+            while (!pendingReplies.isEmpty() && out.tryAppend(pendingReplies.peek())) {
+                pendingReplies.remove();
+            }
+            idle = frames == 0 ? idle + 1 : 0;
+            MappedRing.backOff(idle);
+        }
+    }
+
+    // Handles one frame from a process's ring, positioned at its kind
+    private void handle(int source, ByteBuffer frame) {
+        byte kind = frame.get();
+        switch (kind) {
+            case Frames.SUBSCRIBE: {
+                byte category = frame.get();
+                String type = MessageCodec.getString(frame);
+                if (category == Frames.EVENT_TYPE) {
+                    List<Integer> subscribers = eventSubscribers.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>());
+                    if (!subscribers.contains(source)) {
+                        subscribers.add(source);
+                    }
+                } else {
+                    remoteBroadcasts.add(type);
+                }
+                break;
+            }
+            case Frames.EVENT: {
+                if (frame.getInt() != processId) {
+                    break;
+                }
+                long id = frame.getLong();
+                Message message = decode(frame);
+                boolean delivered = false;
+                if (message instanceof Event) {
+                    Event<?> event = (Event<?>) message;
+                    synchronized (receivedEvents) {
+                        receivedEvents.put(event, new long[]{source, id}); // Before delivery, so a fast completion finds it
+                    }
+                    delivered = bus.deliverEvent(event) != null;
+                    if (!delivered) {
+                        synchronized (receivedEvents) {
+                            receivedEvents.remove(event);
+                        }
+                    }
+                }
+                if (!delivered) {
+                    reply(frame(1 + 4 + 8).put(Frames.NO_ROUTE).putInt(source).putLong(id));
+                }
+                break;
+            }
+            case Frames.BROADCAST: {
+                frame.mark();
+                if (!announced.contains(MessageCodec.getString(frame))) {
+                    break; // Nobody here listens; skip decoding
+                }
+                frame.reset();
+                Message message = decode(frame);
+                if (message instanceof Broadcast) {
+                    bus.deliverBroadcast((Broadcast) message);
+                }
+                break;
+            }
+            case Frames.COMPLETE:
+            case Frames.NO_ROUTE: {
+                if (frame.getInt() != processId) {
+                    break;
+                }
+                long id = frame.getLong();
+                Future<Object> future;
+                synchronized (sentEvents) {
+                    future = sentEvents.remove(id);
+                }
+                if (future != null) {
+                    future.resolve(kind == Frames.COMPLETE ? Frames.decodeResult(frame) : null);
+                }
+                break;
+            }
+            default:
+                LOG.warn("Ignoring frame of unknown kind " + kind);
+        }
+    }
+
+    // Rebuilds a message from [string type][payload]; null if this process has no codec for it
+    private Message decode(ByteBuffer frame) {
+        String type = MessageCodec.getString(frame);
+        MessageCodec<Message> codec = codecs.forName(type);
+        if (codec == null) {
+            LOG.warn("No codec for received " + type + "; dropped");
+            return null;
+        }
+        return codec.decode(frame);
+    }
+}
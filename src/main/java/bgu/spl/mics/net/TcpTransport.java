@@ -0,0 +1,416 @@
+package bgu.spl.mics.net;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.Future;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessageTransport;
+import bgu.spl.mics.journal.MessageCodec;
+import bgu.spl.mics.journal.MessageCodecs;
+import bgu.spl.mics.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects a {@link MessageBusImpl} to a {@link MessageBroker}, so that its
+ * micro-services exchange events and broadcasts with those of other processes.
+ * <p>
+ * Local subscribers always come first: an event leaves the process only if
+ * no local micro-service subscribes to its type, and a broadcast is
+ * delivered locally before it is passed on. Remote futures are resolved when
+ * the completion comes back through the broker. Messages travel in the
+ * binary form of their {@link MessageCodec}; a message type without a codec
+ * stays in its process.
+ * <p>
+ * Sending threads only encode the payload and append the frame to a shared
+ * buffer; a writer thread sends whatever has accumulated with a single
+ * write, so bursts of small messages share system calls. Senders wait while
+ * more than {@link MessageBroker#HIGH_WATER} bytes are queued. A reader
+ * thread decodes incoming frames and hands them to the bus; the replies it
+ * sends itself never wait for room, because the broker stops reading from a
+ * congested connection and the reader would then never return to drain it.
+ * <p>
+ * The transport must be installed before the bus's micro-services
+ * subscribe, and quiescence ({@link MessageBusImpl#awaitQuiescence}) only
+ * covers the local process.
+ */
+public final class TcpTransport implements MessageTransport, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(TcpTransport.class);
+
+    private final MessageBusImpl bus;
+    private final MessageCodecs codecs;
+    private final SocketChannel channel;
+    private final Thread reader;
+    private final Thread writer;
+
+    private final Set<String> announced = ConcurrentHashMap.newKeySet(); // Types subscribed here
+    private final Set<String> remoteEvents = ConcurrentHashMap.newKeySet(); // Event types subscribed elsewhere
+    private final Set<String> remoteBroadcasts = ConcurrentHashMap.newKeySet(); // Broadcast types subscribed elsewhere
+    private final ConcurrentHashMap<Class<?>, byte[]> typeNames = new ConcurrentHashMap<>();
+    private final AtomicLong nextEventId = new AtomicLong();
+
+    // Futures of events sent out, and ids of events received, until they complete; guarded by themselves
+    private final Map<Long, Future<Object>> sentEvents = Frames.boundedMap();
+    private final Map<Event<?>, Long> receivedEvents = Frames.boundedMap();
+
+    // Frames waiting for the writer thread; guarded by sendLock
+    private final Object sendLock = new Object();
+    private ByteBuffer outgoing = ByteBuffer.allocate(64 << 10);
+    private boolean closed;
+    private long framesSent;
+    private long socketWrites;
+
+    private TcpTransport(SocketChannel channel, MessageBusImpl bus, MessageCodecs codecs) {
+        this.channel = channel;
+        this.bus = bus;
+        this.codecs = codecs;
+        this.reader = new Thread(this::readLoop, "TcpTransport-reader");
+        this.writer = new Thread(this::writeLoop, "TcpTransport-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Connects {@code bus} to a broker and installs the transport on it.
+     *
+     * @param broker The broker's address.
+     * @param bus    The local message-bus.
+     * @param codecs The codecs of the message types to exchange.
+     * @return The connected transport.
+     * @throws IOException if the broker cannot be reached.
+     */
+    public static TcpTransport connect(InetSocketAddress broker, MessageBusImpl bus, MessageCodecs codecs) throws IOException {
+        SocketChannel channel = SocketChannel.open(broker);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // Frames are batched here already
+        TcpTransport transport = new TcpTransport(channel, bus, codecs);
+        transport.reader.start();
+        transport.writer.start();
+        bus.setTransport(transport);
+        return transport;
+    }
+
+    /**
+     * @param type A message type.
+     * @return true if another process has announced a subscriber of {@code type}.
+     */
+    public boolean isSubscribedRemotely(Class<? extends Message> type) {
+        return (Event.class.isAssignableFrom(type) ? remoteEvents : remoteBroadcasts).contains(type.getName());
+    }
+
+    /**
+     * @return The number of frames sent so far.
+     */
+    public long getFramesSent() {
+        synchronized (sendLock) {
+            return framesSent;
+        }
+    }
+
+    /**
+     * @return The number of socket writes that carried them.
+     */
+    public long getSocketWrites() {
+        synchronized (sendLock) {
+            return socketWrites;
+        }
+    }
+
+    @Override
+    public void subscribed(Class<? extends Message> type) {
+        if (codecs.forType(type) != null && announced.add(type.getName())) {
+            byte[] name = typeName(type);
+            byte category = Event.class.isAssignableFrom(type) ? Frames.EVENT_TYPE : Frames.BROADCAST_TYPE;
+            synchronized (sendLock) {
+                ByteBuffer out = reserve(Frames.HEADER + 1 + 4 + name.length);
+                if (out != null) {
+                    out.putInt(1 + 1 + 4 + name.length).put(Frames.SUBSCRIBE).put(category).putInt(name.length).put(name);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void broadcast(Broadcast b) {
+        if (!remoteBroadcasts.contains(b.getClass().getName())) {
+            return;
+        }
+        ByteBuffer payload = codecs.encode(b);
+        if (payload == null) {
+            return;
+        }
+        byte[] name = typeName(b.getClass());
+        synchronized (sendLock) {
+            ByteBuffer out = reserve(Frames.HEADER + 4 + name.length + payload.remaining());
+            if (out != null) {
+                out.putInt(1 + 4 + name.length + payload.remaining()).put(Frames.BROADCAST).putInt(name.length).put(name).put(payload);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> sendEvent(Event<T> e) {
+        if (!remoteEvents.contains(e.getClass().getName())) {
+            return null;
+        }
+        ByteBuffer payload = codecs.encode(e);
+        if (payload == null) {
+            return null;
+        }
+        byte[] name = typeName(e.getClass());
+        long id = nextEventId.incrementAndGet();
+        Future<Object> future = new Future<>();
+        synchronized (sentEvents) {
+            sentEvents.put(id, future);
+        }
+        ByteBuffer out;
+        synchronized (sendLock) {
+            out = reserve(Frames.HEADER + 8 + 4 + name.length + payload.remaining());
+            if (out != null) {
+                out.putInt(1 + 8 + 4 + name.length + payload.remaining()).put(Frames.EVENT).putLong(id)
+                        .putInt(name.length).put(name).put(payload);
+            }
+        }
+        if (out == null) { // Closed or interrupted: nothing was sent, so no completion will come
+            synchronized (sentEvents) {
+                sentEvents.remove(id);
+            }
+            return null;
+        }
+        return (Future<T>) future;
+    }
+
+    @Override
+    public <T> void completed(Event<T> e, T result) {
+        Long id;
+        synchronized (receivedEvents) {
+            id = receivedEvents.remove(e);
+        }
+        if (id != null) {
+            byte[] encoded = Frames.encodeResult(result);
+            synchronized (sendLock) {
+                ByteBuffer out = reserve(Frames.HEADER + 8 + encoded.length);
+                if (out != null) {
+                    out.putInt(1 + 8 + encoded.length).put(Frames.COMPLETE).putLong(id).put(encoded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnects from the broker and detaches from the bus. Futures of
+     * events still out remain unresolved.
+     */
+    @Override
+    public void close() {
+        bus.setTransport(null);
+        synchronized (sendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sendLock.notifyAll();
+        }
+        try {
+            writer.join(1000); // Let it send what was queued before closing
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the broker connection: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] typeName(Class<?> type) {
+        return typeNames.computeIfAbsent(type, k -> Frames.utf8(k.getName()));
+    }
+
+    // Makes room for a frame in the outgoing buffer and counts it; null once closed. Callers hold sendLock
+    private ByteBuffer reserve(int bytes) {
+        return reserve(bytes, true);
+    }
+
+    // As above; a control frame is appended past the high-water mark instead of waiting for the writer
+    private ByteBuffer reserve(int bytes, boolean wait) {
+        try {
+            while (wait && !closed && outgoing.position() > MessageBroker.HIGH_WATER) {
+                sendLock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (closed) {
+            return null;
+        }
+        if (outgoing.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(outgoing.capacity() * 2, outgoing.position() + bytes));
+            outgoing.flip();
+            bigger.put(outgoing);
+            outgoing = bigger;
+        }
+        if (outgoing.position() == 0) {
+            sendLock.notifyAll(); // Wake the writer
+        }
+        framesSent++;
+        return outgoing;
+    }
+
+    // Sends the accumulated frames in one write each time, swapping buffers with the senders
+    private void writeLoop() {
+        ByteBuffer batch = ByteBuffer.allocate(64 << 10);
+        try {
+            while (true) {
+                synchronized (sendLock) {
+                    while (outgoing.position() == 0 && !closed) {
+                        sendLock.wait();
+                    }
+                    if (outgoing.position() == 0) {
+                        return;
+                    }
+                    ByteBuffer full = outgoing;
+                    outgoing = batch;
+                    batch = full;
+                    socketWrites++;
+                    sendLock.notifyAll(); // Senders waiting for room
+                }
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                LOG.error("Lost the connection to the broker: " + e.getMessage(), e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (sendLock) {
+                closed = true;
+                sendLock.notifyAll();
+            }
+        }
+    }
+
+    // Reads frames from the broker and hands them to the bus
+    private void readLoop() {
+        ByteBuffer in = ByteBuffer.allocate(64 << 10);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length <= 0 || length > Frames.MAX_FRAME) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+                    if (in.remaining() < 4 + length) {
+                        break;
+                    }
+                    int end = in.position() + 4 + length;
+                    ByteBuffer frame = in.duplicate();
+                    frame.limit(end);
+                    frame.position(in.position() + 4);
+                    handle(frame);
+                    in.position(end);
+                }
+                in.compact();
+                if (in.position() >= 4 && 4 + in.getInt(0) > in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + in.getInt(0));
+                    in.flip();
+                    bigger.put(in);
+                    in = bigger;
+                }
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                LOG.error("Lost the connection to the broker: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // Handles one frame, positioned at its kind
+    private void handle(ByteBuffer frame) {
+        byte kind = frame.get();
+        switch (kind) {
+            case Frames.SUBSCRIBED: {
+                byte category = frame.get();
+                (category == Frames.EVENT_TYPE ? remoteEvents : remoteBroadcasts).add(MessageCodec.getString(frame));
+                break;
+            }
+            case Frames.EVENT: {
+                long id = frame.getLong();
+                Message message = decode(frame);
+                if (!(message instanceof Event)) {
+                    answerNoRoute(id);
+                    break;
+                }
+                Event<?> event = (Event<?>) message;
+                synchronized (receivedEvents) {
+                    receivedEvents.put(event, id); // Before delivery, so a fast completion finds it
+                }
+                if (bus.deliverEvent(event) == null) {
+                    synchronized (receivedEvents) {
+                        receivedEvents.remove(event);
+                    }
+                    answerNoRoute(id);
+                }
+                break;
+            }
+            case Frames.BROADCAST: {
+                Message message = decode(frame);
+                if (message instanceof Broadcast) {
+                    bus.deliverBroadcast((Broadcast) message);
+                }
+                break;
+            }
+            case Frames.COMPLETE:
+            case Frames.NO_ROUTE: {
+                long id = frame.getLong();
+                Future<Object> future;
+                synchronized (sentEvents) {
+                    future = sentEvents.remove(id);
+                }
+                if (future != null) {
+                    future.resolve(kind == Frames.COMPLETE ? Frames.decodeResult(frame) : null);
+                }
+                break;
+            }
+            default:
+                LOG.warn("Ignoring frame of unknown kind " + kind);
+        }
+    }
+
+    // Rebuilds a message from [string type][payload]; null if this process has no codec for it
+    private Message decode(ByteBuffer frame) {
+        String type = MessageCodec.getString(frame);
+        MessageCodec<Message> codec = codecs.forName(type);
+        if (codec == null) {
+            LOG.warn("No codec for received " + type + "; dropped");
+            return null;
+        }
+        return codec.decode(frame);
+    }
+
+    // Sent from the reader thread, so it must not wait for room
+    private void answerNoRoute(long id) {
+        synchronized (sendLock) {
+            ByteBuffer out = reserve(Frames.HEADER + 8, false);
+            if (out != null) {
+                out.putInt(1 + 8).put(Frames.NO_ROUTE).putLong(id);
+            }
+        }
+    }
+}
@@ -2,10 +2,14 @@ package bgu.spl.mics;
 
 import bgu.spl.mics.application.objects.Camera;
 import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.SensorStream;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TickSchedule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -109,4 +113,53 @@ public class CameraTest {
         assert lastDetected.getTime() == 6 : "Last detected time should match the most recently added detection.";
         assert lastDetected.getDetectedObjects().size() == 1 : "Detected objects list size should match.";
     }
+
+    @Test
+    public void testScheduleIsDelayedByFrequency() {
+        // Preconditions
+        assert camera != null : "Camera instance must be initialized.";
+
+        List<DetectedObject> objects = new ArrayList<>();
+        objects.add(new DetectedObject("Wall_1", "Wall"));
+        camera.addDetectedObjects(new StampedDetectedObjects(8, objects));
+        camera.addDetectedObjects(new StampedDetectedObjects(2, objects));
+
+        // Postconditions - frames are published at detection time + frequency 5
+        TickSchedule schedule = camera.getSchedule();
+        assertEquals(2, schedule.size());
+        assertEquals(7, schedule.nextAfter(0));
+        assertEquals(13, schedule.nextAfter(7));
+        assertEquals(-1, schedule.nextAfter(13));
+        assertTrue(schedule.with(TickSchedule.of(-1, 10)).contains(10), "Merged ticks should be scheduled.");
+        assertFalse(schedule.with(TickSchedule.of(-1, 10)).contains(-1), "Negative ticks should be ignored.");
+    }
+
+    @Test
+    public void testStreamingCameraReadsFramesAsTimeAdvances() {
+        String ndjson = "{\"time\":1,\"detectedObjects\":[{\"id\":\"Wall_1\",\"description\":\"Wall\"}]}\n"
+                + "{\"time\":3,\"detectedObjects\":[{\"id\":\"Wall_2\",\"description\":\"Wall\"}]}\n"
+                + "{\"time\":4,\"detectedObjects\":[{\"id\":\"ERROR\",\"description\":\"Camera disconnected\"}]}";
+        SensorStream<StampedDetectedObjects> stream = SensorStream.of("camera1",
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), 1,
+                Camera::parseFrame, StampedDetectedObjects::getTime);
+        Camera streamed = new Camera(2, 2, stream);
+
+        // Preconditions - nothing is known before the clock reaches the frames
+        assertTrue(streamed.isStreaming());
+        assertNull(streamed.getSchedule(), "A streaming camera may publish at any tick.");
+        assertEquals(SensorStream.OPEN, streamed.getLatestDetectionTime());
+
+        streamed.readThrough(2);
+        assertEquals(-1, streamed.hasError(), "The error frame has not been read yet.");
+        streamed.readThrough(3);
+        assertEquals("Wall_1", streamed.detectObjects(3).getDetectedObjects().get(0).getId());
+
+        // Postconditions - the error and the end of the stream are learned on the way
+        streamed.readThrough(5);
+        assertEquals(4, streamed.hasError());
+        assertEquals(6, streamed.getLatestDetectionTime());
+        assertEquals("Wall_2", streamed.detectObjects(5).getDetectedObjects().get(0).getId());
+        assertTrue(streamed.detectObjects(3).getDetectedObjects().isEmpty(), "Published frames are forgotten.");
+        stream.close();
+    }
 }
@@ -1,10 +1,19 @@
 package bgu.spl.mics;
 
+import bgu.spl.mics.application.SimulationContext;
+import bgu.spl.mics.application.objects.CloudPoint;
 import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.OccupancyGrid;
+import bgu.spl.mics.application.objects.ParallelismTuner;
 import bgu.spl.mics.application.objects.Pose;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,4 +53,53 @@ public class FusionSlamTest {
         assertEquals(3, poses.size(), "Should not allow duplicate poses.");
     }
 
+    @Test
+    public void testSimulationContextsAreIsolated() {
+        SimulationContext first = new SimulationContext();
+        SimulationContext second = new SimulationContext();
+
+        Pose pose = new Pose(1.0f, 2.0f, 0.3f, 1);
+        first.getFusionSlam().addPose(pose);
+        first.getFusionSlam().updateLandmark("Wall_1", "Wall", Collections.singletonList(new CloudPoint(1, 1)), pose);
+        first.reportCrash("Camera1", "Camera");
+
+        assertEquals(1, first.getFusionSlam().getLandmarks().size());
+        assertEquals(1, first.getStatistics().getNumLandmarks());
+        assertTrue(second.getFusionSlam().getLandmarks().isEmpty(), "Landmarks should not leak between contexts.");
+        assertTrue(second.getFusionSlam().getPoses().isEmpty(), "Poses should not leak between contexts.");
+        assertEquals(0, second.getStatistics().getNumLandmarks());
+        assertFalse(second.hasCrashOccurred(), "A crash should only stop its own simulation.");
+        assertNotSame(first.getMessageBus(), second.getMessageBus());
+    }
+
+    @Test
+    public void testOccupancyGridRasterizesObservationsAcrossTiles() throws IOException {
+        SimulationContext context = new SimulationContext();
+        FusionSlam slam = context.getFusionSlam();
+        OccupancyGrid grid = new OccupancyGrid(0.5, 4, ParallelismTuner.fixed(1)); // Tiles of 2x2 meters
+        slam.setOccupancyGrid(grid);
+
+        // A wall from (-1, 0) to (3, 0), seen twice from the origin, crosses three tiles
+        Pose origin = new Pose(0f, 0f, 0f, 1);
+        List<CloudPoint> wall = Arrays.asList(new CloudPoint(-1, 0.1), new CloudPoint(3, 0.1));
+        slam.updateLandmark("Wall_1", "Wall", wall, origin);
+        slam.updateLandmark("Wall_1", "Wall", wall, origin);
+
+        assertEquals(2, grid.getObservations());
+        assertEquals(3, grid.getTileCount(), "Only the tiles the wall crosses should be allocated.");
+        assertEquals(9, grid.getOccupiedCells(), "Cells -2..6 of row 0 should be occupied.");
+        assertEquals(2, grid.getHits(-0.9, 0.2));
+        assertEquals(2, grid.getHits(1.2, 0.2));
+        assertEquals(0, grid.getHits(1.2, 0.6), "Cells off the wall should stay empty.");
+
+        // The dump is compact and reads back to the same grid
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        grid.writeTo(dump);
+        OccupancyGrid copy = OccupancyGrid.read(new ByteArrayInputStream(dump.toByteArray()));
+        assertTrue(dump.size() < 20 + 3 * (8 + 1 + 4 * 4 * 2), "Sparse tiles should take less room than dense ones, got " + dump.size());
+        assertEquals(grid.getTileCount(), copy.getTileCount());
+        assertEquals(grid.getOccupiedCells(), copy.getOccupiedCells());
+        assertEquals(2, copy.getHits(2.9, 0.1));
+        assertEquals(0.5, copy.getResolution());
+    }
 }
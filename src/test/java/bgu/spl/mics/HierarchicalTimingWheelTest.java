@@ -0,0 +1,69 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HierarchicalTimingWheelTest {
+
+    @Test
+    public void testItemsAreReleasedAtTheirDueTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>();
+        assertTrue(wheel.add(3, "a"));
+        assertTrue(wheel.add(1, "b"));
+        assertTrue(wheel.add(3, "c"));
+        assertFalse(wheel.add(0, "late"), "Items that are already due should be rejected");
+
+        assertEquals(Collections.singletonList("b"), wheel.advance(1));
+        assertEquals(Collections.emptyList(), wheel.advance(2));
+        assertEquals(Arrays.asList("a", "c"), wheel.advance(3), "Items due together keep insertion order");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testFarItemsCascadeAcrossLevelsAndJumps() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>();
+        int[] dues = {5, 64, 65, 200, 4096, 5000, 300_000};
+        for (int i = dues.length - 1; i >= 0; i--) {
+            wheel.add(dues[i], dues[i]);
+        }
+
+        List<Integer> released = new ArrayList<>();
+        released.addAll(wheel.advance(100)); // Jumps over several due ticks at once
+        assertEquals(Arrays.asList(5, 64, 65), released);
+        for (int tick = 101; tick <= 300_000; tick += 997) {
+            for (int value : wheel.advance(tick)) {
+                assertTrue(value <= tick, "Item " + value + " released early at " + tick);
+                released.add(value);
+            }
+        }
+        released.addAll(wheel.advance(300_000));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int due : dues) {
+            expected.add(due);
+        }
+        assertEquals(expected, released);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testAdvanceJumpsOverEmptyTicks() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>();
+        assertTrue(wheel.add(Integer.MAX_VALUE - 1, "last"));
+        assertTrue(wheel.add(1 << 30, "far"));
+
+        long start = System.nanoTime();
+        assertEquals(Collections.singletonList("far"), wheel.advance(Integer.MAX_VALUE - 2));
+        assertEquals(Collections.singletonList("last"), wheel.advance(Integer.MAX_VALUE));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Advanced over " + Integer.MAX_VALUE + " ticks in " + millis + " ms");
+        assertTrue(millis < 1000, "Advancing should not step through empty ticks");
+        assertEquals(0, wheel.size());
+    }
+}
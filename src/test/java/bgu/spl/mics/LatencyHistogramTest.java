@@ -0,0 +1,48 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    public void testQuantilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000); // 1us .. 100ms
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertWithin(50_000_000L, histogram.getValueAtQuantile(0.50));
+        assertWithin(99_000_000L, histogram.getValueAtQuantile(0.99));
+        assertWithin(99_900_000L, histogram.getValueAtQuantile(0.999));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5); // Clamped to 0
+
+        assertEquals(0, histogram.getValueAtQuantile(0.0));
+        assertEquals(3, histogram.getValueAtQuantile(0.5));
+        assertEquals(7, histogram.getValueAtQuantile(1.0));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        double error = Math.abs(actual - expected) / (double) expected;
+        assertTrue(error <= 1.0 / 16, "Expected ~" + expected + " but was " + actual);
+    }
+}
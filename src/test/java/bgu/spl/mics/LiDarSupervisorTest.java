@@ -0,0 +1,121 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.SimulationContext;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.RetireWorkerBroadcast;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.ParallelismTuner;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.services.LiDarService;
+import bgu.spl.mics.application.services.LiDarSupervisor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiDarSupervisorTest {
+
+    @Test
+    public void testSparesFollowTheBacklog() throws Exception {
+        System.out.println("Starting testSparesFollowTheBacklog...");
+        Path data = Files.createTempFile("lidar", ".json");
+        Files.write(data, "[{\"time\":1,\"id\":\"Wall_1\",\"cloudPoints\":[[1.0,2.0]]}]".getBytes(StandardCharsets.UTF_8));
+        SimulationContext context = new SimulationContext();
+        MessageBusImpl bus = context.getMessageBus();
+        try {
+            // The configured worker is registered but never run, so its mailbox only grows until the test drains it
+            LiDarWorkerTracker tracker = new LiDarWorkerTracker(1, 10, LiDarDataBase.load(data.toString()), ParallelismTuner.disabled());
+            LiDarService worker = new LiDarService(tracker, false, context);
+            bus.register(worker);
+            bus.subscribeEvent(DetectObjectsEvent.class, worker);
+
+            MicroService fusion = new MicroService("FusionStub", bus) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            bus.register(fusion);
+            bus.subscribeEvent(TrackedObjectsEvent.class, fusion);
+            bus.subscribeBroadcast(RetireWorkerBroadcast.class, fusion);
+
+            LiDarSupervisor supervisor = new LiDarSupervisor(Collections.singletonList(worker), 2, 4, 2, context);
+            Thread supervisorThread = new Thread(supervisor);
+            supervisorThread.start();
+            supervisor.awaitInitialization();
+
+            // A backlog above the scale-up depth starts a spare on the next tick
+            for (int i = 0; i < 20; i++) {
+                bus.sendEvent(frame());
+            }
+            bus.sendBroadcast(new TickBroadcast(1));
+            await(() -> supervisor.getStarted() == 1, "A spare should start under backlog");
+
+            // The spare takes every other frame and holds it until tick 11
+            for (int i = 0; i < 6; i++) {
+                bus.sendEvent(frame());
+            }
+            bus.sendBroadcast(new TickBroadcast(2));
+
+            // Once the backlog is gone the spare is retired, but it still owes its three frames
+            while (bus.queueDepth(worker) > 0) {
+                bus.awaitMessage(worker);
+            }
+            bus.sendBroadcast(new TickBroadcast(3));
+            await(() -> supervisor.getRetired() == 1, "The spare should be retired once the backlog is gone");
+            RetireWorkerBroadcast retire = (RetireWorkerBroadcast) bus.awaitMessage(fusion);
+            assertEquals(2, retire.getWorkerId(), "Only the spare should be retired");
+            Thread.sleep(100);
+            assertEquals(0, bus.queueDepth(fusion), "A retired spare should not drop its frames");
+
+            bus.sendBroadcast(new TickBroadcast(11));
+            await(() -> bus.queueDepth(fusion) > 0, "The retired spare should track the frames it already had");
+            TrackedObjectsEvent tracked = (TrackedObjectsEvent) bus.awaitMessage(fusion);
+            assertEquals(3, tracked.getTrackedObjects().size(), "The retired spare should track the frames it already had");
+            assertFalse(tracked.getTrackedObjects().get(0).getCoordinates().isEmpty());
+
+            // With no spare left, further quiet ticks leave the configured worker in place
+            for (int tick = 12; tick < 20; tick++) {
+                bus.sendBroadcast(new TickBroadcast(tick));
+            }
+            assertNotNull(bus.sendEvent(frame()), "The configured worker should still take frames");
+            bus.sendBroadcast(new TerminatedBroadcast("TimeService"));
+            supervisorThread.join(5000);
+            supervisor.awaitSpares();
+            assertEquals(1, supervisor.getRetired(), "Configured workers should never be retired");
+            assertEquals(2, supervisor.getPeakWorkers());
+            List<Message> rest = new ArrayList<>();
+            while (bus.queueDepth(fusion) > 0) {
+                rest.add(bus.awaitMessage(fusion));
+            }
+            assertTrue(rest.isEmpty(), "No other worker should have been retired: " + rest);
+        } finally {
+            Files.delete(data);
+        }
+        System.out.println("testSparesFollowTheBacklog completed successfully.");
+    }
+
+    private static DetectObjectsEvent frame() {
+        return new DetectObjectsEvent(new StampedDetectedObjects(1,
+                Collections.singletonList(new DetectedObject("Wall_1", "Wall"))), 1);
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.logging.AsyncAppender;
+import bgu.spl.mics.logging.LogLevel;
+import bgu.spl.mics.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoggerTest {
+
+    private final LogLevel originalLevel = Logger.getLevel();
+
+    @AfterEach
+    public void tearDown() {
+        Logger.setLevel(originalLevel);
+    }
+
+    @Test
+    public void testSupplierNotCalledWhenLevelDisabled() {
+        Logger.setLevel(LogLevel.INFO);
+        Logger logger = Logger.getLogger("LoggerTest");
+        AtomicBoolean called = new AtomicBoolean(false);
+
+        logger.debug(() -> {
+            called.set(true);
+            return "expensive";
+        });
+
+        assertFalse(called.get(), "DEBUG supplier must not run when the level is INFO");
+        assertFalse(logger.isEnabled(LogLevel.DEBUG));
+        assertTrue(logger.isEnabled(LogLevel.ERROR));
+    }
+
+    @Test
+    public void testAppenderPreservesOrderAcrossWraps() {
+        ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+        AsyncAppender appender = new AsyncAppender(4, new PrintStream(outBytes), new PrintStream(errBytes));
+
+        // More lines than slots forces producers to wait for the drainer
+        for (int i = 0; i < 100; i++) {
+            appender.append(LogLevel.INFO, "line " + i, null);
+        }
+        appender.append(LogLevel.ERROR, "failure", null);
+        appender.flush();
+
+        String[] lines = outBytes.toString().trim().split("\\R");
+        assertEquals(100, lines.length, "Every line should be written exactly once");
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("line " + i, lines[i]);
+        }
+        assertEquals("failure", errBytes.toString().trim(), "ERROR lines go to the error stream");
+    }
+
+    @Test
+    public void testParseLevel() {
+        assertEquals(LogLevel.DEBUG, LogLevel.parse("debug", LogLevel.INFO));
+        assertEquals(LogLevel.INFO, LogLevel.parse("nonsense", LogLevel.INFO));
+        assertEquals(LogLevel.WARN, LogLevel.parse(null, LogLevel.WARN));
+    }
+}
@@ -1,8 +1,28 @@
 package bgu.spl.mics;
 
+import bgu.spl.mics.example.messages.ExampleBroadcast;
+import bgu.spl.mics.example.messages.ExampleEvent;
+import bgu.spl.mics.journal.JournalReader;
+import bgu.spl.mics.journal.MessageCodec;
+import bgu.spl.mics.journal.MessageCodecs;
+import bgu.spl.mics.journal.MessageJournal;
+import bgu.spl.mics.net.MessageBroker;
+import bgu.spl.mics.net.SharedMemoryTransport;
+import bgu.spl.mics.net.TcpTransport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MessageBusImplTest {
@@ -114,6 +134,456 @@ public class MessageBusImplTest {
         System.out.println("testRoundRobinEventDispatching completed successfully.");
     }
 
+    @Test
+    public void testInstrumentedBusDeliversUnwrappedMessages() {
+        System.out.println("Starting testInstrumentedBusDeliversUnwrappedMessages...");
+        class TestBroadcast implements Broadcast {}
+
+        messageBus.register(testMicroService);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService);
+        messageBus.setInstrumented(true);
+        try {
+            TestBroadcast broadcast = new TestBroadcast();
+            messageBus.sendBroadcast(broadcast);
+
+            assertDoesNotThrow(() -> {
+                Message receivedMessage = messageBus.awaitMessage(testMicroService);
+                assertSame(broadcast, receivedMessage, "Instrumentation must not leak envelopes to receivers");
+            });
+        } finally {
+            messageBus.setInstrumented(false);
+            messageBus.unregister(testMicroService);
+        }
+        System.out.println("testInstrumentedBusDeliversUnwrappedMessages completed successfully.");
+    }
+
+    @Test
+    public void testFilteredTickSubscriptionSkipsOtherTicks() {
+        System.out.println("Starting testFilteredTickSubscriptionSkipsOtherTicks...");
+        class TestTick implements TimedBroadcast {
+            private final int time;
+            TestTick(int time) { this.time = time; }
+            @Override
+            public int getTime() { return time; }
+        }
+
+        messageBus.register(testMicroService);
+        messageBus.subscribeBroadcast(TestTick.class, testMicroService, TickFilter.every(3));
+        try {
+            for (int tick = 1; tick <= 7; tick++) {
+                messageBus.sendBroadcast(new TestTick(tick));
+            }
+            messageBus.sendBroadcast(new TestTick(10)); // Tick 9 was skipped, so tick 10 is delivered instead
+
+            Mailbox mailbox = messageBus.mailboxOf(testMicroService);
+            assertDoesNotThrow(() -> {
+                for (int expected : new int[]{3, 6, 10}) {
+                    assertEquals(expected, ((TestTick) messageBus.awaitMessage(testMicroService)).getTime());
+                    messageBus.messageHandled(mailbox);
+                }
+            });
+            assertTrue(mailbox.isIdle(), "No other ticks should be delivered");
+        } finally {
+            messageBus.unregister(testMicroService);
+        }
+        System.out.println("testFilteredTickSubscriptionSkipsOtherTicks completed successfully.");
+    }
+
+    @Test
+    public void testSendAtHoldsMessageUntilDueTick() {
+        System.out.println("Starting testSendAtHoldsMessageUntilDueTick...");
+        class TestTick implements TimedBroadcast {
+            private final int time;
+            TestTick(int time) { this.time = time; }
+            @Override
+            public int getTime() { return time; }
+        }
+        class TestEvent implements Event<String> {}
+
+        messageBus.register(testMicroService);
+        try {
+            // Move the bus clock to a known tick first
+            int start = 1_000_000;
+            messageBus.sendBroadcast(new TestTick(start));
+            TestEvent event = new TestEvent();
+            messageBus.sendAt(start + 2, testMicroService, event);
+
+            messageBus.sendBroadcast(new TestTick(start + 1));
+            assertTrue(messageBus.mailboxOf(testMicroService).isIdle(), "The message should be held back");
+
+            messageBus.sendBroadcast(new TestTick(start + 2));
+            assertDoesNotThrow(() -> assertSame(event, messageBus.awaitMessage(testMicroService)));
+        } finally {
+            messageBus.unregister(testMicroService);
+        }
+        System.out.println("testSendAtHoldsMessageUntilDueTick completed successfully.");
+    }
+
+    static class PingBroadcast implements Broadcast {
+        final int count;
+
+        PingBroadcast(int count) {
+            this.count = count;
+        }
+    }
+
+    @Test
+    public void testJournalRecordsSentMessagesForReplay() throws Exception {
+        System.out.println("Starting testJournalRecordsSentMessagesForReplay...");
+        class UnjournaledBroadcast implements Broadcast {}
+
+        MessageCodecs codecs = new MessageCodecs().register(PingBroadcast.class, new MessageCodec<PingBroadcast>() {
+            @Override
+            public void encode(PingBroadcast message, ByteBuffer out) {
+                out.putInt(message.count);
+            }
+
+            @Override
+            public PingBroadcast decode(ByteBuffer in) {
+                return new PingBroadcast(in.getInt());
+            }
+        });
+        Path file = Files.createTempFile("journal", ".bin");
+        MessageBusImpl bus = new MessageBusImpl();
+        MessageJournal journal = new MessageJournal(file, codecs);
+        bus.setJournal(journal);
+        bus.sendBroadcast(new PingBroadcast(1));
+        bus.sendBroadcast(new UnjournaledBroadcast());
+        bus.sendBroadcast(new PingBroadcast(2));
+        bus.setJournal(null);
+        bus.sendBroadcast(new PingBroadcast(3));
+        journal.close();
+        assertEquals(3, journal.getMessageCount());
+
+        try (JournalReader reader = new JournalReader(file, codecs)) {
+            JournalReader.Record first = reader.next();
+            assertEquals(1, ((PingBroadcast) first.getMessage()).count);
+            assertNull(first.getSender(), "Messages sent from outside a service have no sender");
+            JournalReader.Record second = reader.next();
+            assertEquals(UnjournaledBroadcast.class.getName(), second.getType());
+            assertNull(second.getMessage(), "Types without a codec cannot be rebuilt");
+            assertEquals(2, ((PingBroadcast) reader.next().getMessage()).count);
+            assertNull(reader.next(), "Messages sent after journaling stopped must not be recorded");
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("testJournalRecordsSentMessagesForReplay completed successfully.");
+    }
+
+    @Test
+    public void testTcpTransportConnectsBusesOfDifferentProcesses() throws Exception {
+        System.out.println("Starting testTcpTransportConnectsBusesOfDifferentProcesses...");
+        class LocalOnlyEvent implements Event<String> {}
+
+        MessageCodecs codecs = exampleCodecs();
+        // Two buses in one JVM stand in for two processes talking over loopback
+        try (MessageBroker broker = new MessageBroker(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            broker.start();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), broker.getPort());
+            MessageBusImpl sensors = new MessageBusImpl();
+            MessageBusImpl fusion = new MessageBusImpl();
+            try (TcpTransport sensorLink = TcpTransport.connect(address, sensors, codecs);
+                 TcpTransport fusionLink = TcpTransport.connect(address, fusion, codecs)) {
+                MicroService handler = new MicroService("RemoteHandler", fusion) {
+                    @Override
+                    protected void initialize() {
+                    }
+                };
+                fusion.register(handler);
+                fusion.subscribeEvent(ExampleEvent.class, handler);
+                fusion.subscribeBroadcast(ExampleBroadcast.class, handler);
+                long deadline = System.currentTimeMillis() + 5000;
+                while (!(sensorLink.isSubscribedRemotely(ExampleEvent.class)
+                        && sensorLink.isSubscribedRemotely(ExampleBroadcast.class))) {
+                    assertTrue(System.currentTimeMillis() < deadline, "Subscriptions should reach the other process");
+                    Thread.sleep(5);
+                }
+
+                Future<String> future = sensors.sendEvent(new ExampleEvent("Camera"));
+                assertNotNull(future, "An event with a remote subscriber should get a future");
+                ExampleEvent received = (ExampleEvent) fusion.awaitMessage(handler);
+                assertEquals("Camera", received.getSenderName());
+                fusion.complete(received, "Hello from Fusion");
+                assertEquals("Hello from Fusion", future.get(5, TimeUnit.SECONDS), "The remote completion should resolve the future");
+
+                for (int i = 0; i < 100; i++) {
+                    sensors.sendBroadcast(new ExampleBroadcast("Camera-" + i));
+                }
+                for (int i = 0; i < 100; i++) {
+                    assertEquals("Camera-" + i, ((ExampleBroadcast) fusion.awaitMessage(handler)).getSenderId(),
+                            "Broadcasts should arrive in order");
+                }
+                assertNull(sensors.sendEvent(new LocalOnlyEvent()), "Nobody subscribes to this event anywhere");
+                System.out.println("Sent " + sensorLink.getFramesSent() + " frames in " + sensorLink.getSocketWrites() + " writes");
+            }
+        }
+        System.out.println("testTcpTransportConnectsBusesOfDifferentProcesses completed successfully.");
+    }
+
+    @Test
+    public void testSharedMemoryTransportConnectsBusesOnOneHost() throws Exception {
+        System.out.println("Starting testSharedMemoryTransportConnectsBusesOnOneHost...");
+        MessageCodecs codecs = exampleCodecs();
+        Path directory = Files.createTempDirectory("rings");
+        MessageBusImpl sensors = new MessageBusImpl();
+        MessageBusImpl fusion = new MessageBusImpl();
+        // A small ring, so that the broadcasts below wrap around it several times
+        try (SharedMemoryTransport sensorLink = SharedMemoryTransport.open(directory, 0, 2, 1024, sensors, codecs);
+             SharedMemoryTransport fusionLink = SharedMemoryTransport.open(directory, 1, 2, 1024, fusion, codecs)) {
+            MicroService handler = new MicroService("RingHandler", fusion) {
+                @Override
+                protected void initialize() {
+                }
+            };
+            fusion.register(handler);
+            fusion.subscribeEvent(ExampleEvent.class, handler);
+            fusion.subscribeBroadcast(ExampleBroadcast.class, handler);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(sensorLink.isSubscribedRemotely(ExampleEvent.class)
+                    && sensorLink.isSubscribedRemotely(ExampleBroadcast.class))) {
+                assertTrue(System.currentTimeMillis() < deadline, "Subscriptions should reach the other process");
+                Thread.sleep(5);
+            }
+
+            Future<String> future = sensors.sendEvent(new ExampleEvent("Camera"));
+            assertNotNull(future, "An event with a remote subscriber should get a future");
+            ExampleEvent event = (ExampleEvent) fusion.awaitMessage(handler);
+            assertEquals("Camera", event.getSenderName());
+            fusion.complete(event, "Hello from Fusion");
+            assertEquals("Hello from Fusion", future.get(5, TimeUnit.SECONDS), "The remote completion should resolve the future");
+
+            List<String> expected = new ArrayList<>();
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            Thread consumer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        received.add(((ExampleBroadcast) fusion.awaitMessage(handler)).getSenderId());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            for (int i = 0; i < 500; i++) {
+                expected.add("Camera-" + i);
+                sensors.sendBroadcast(new ExampleBroadcast("Camera-" + i));
+            }
+            consumer.join(5000);
+            assertEquals(expected, received, "Every broadcast should arrive, in order");
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("testSharedMemoryTransportConnectsBusesOnOneHost completed successfully.");
+    }
+
+    @Test
+    public void testSharedMemoryPollersNeverWaitOnTheirOwnRings() throws Exception {
+        System.out.println("Starting testSharedMemoryPollersNeverWaitOnTheirOwnRings...");
+        MessageCodecs codecs = exampleCodecs();
+        Path directory = Files.createTempDirectory("rings");
+        MessageBusImpl[] buses = {new MessageBusImpl(), new MessageBusImpl()};
+        try (SharedMemoryTransport first = SharedMemoryTransport.open(directory, 0, 2, 1024, buses[0], codecs);
+             SharedMemoryTransport second = SharedMemoryTransport.open(directory, 1, 2, 1024, buses[1], codecs)) {
+            MicroService[] handlers = new MicroService[buses.length];
+            for (int i = 0; i < buses.length; i++) {
+                handlers[i] = new MicroService("Leaving", buses[i]) {
+                    @Override
+                    protected void initialize() {
+                    }
+                };
+                buses[i].register(handlers[i]);
+                buses[i].subscribeEvent(ExampleEvent.class, handlers[i]);
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(first.isSubscribedRemotely(ExampleEvent.class) && second.isSubscribedRemotely(ExampleEvent.class))) {
+                assertTrue(System.currentTimeMillis() < deadline, "Subscriptions should reach the other process");
+                Thread.sleep(5);
+            }
+            for (int i = 0; i < buses.length; i++) {
+                buses[i].unregister(handlers[i]); // Every event now comes back as NO_ROUTE
+            }
+
+            // Both rings fill with events while each poller owes the other a reply per event
+            List<Future<String>> futures = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> senders = new ArrayList<>();
+            for (SharedMemoryTransport link : new SharedMemoryTransport[]{first, second}) {
+                Thread sender = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        futures.add(link.sendEvent(new ExampleEvent("Camera-" + i)));
+                    }
+                });
+                senders.add(sender);
+                sender.start();
+            }
+            for (Thread sender : senders) {
+                sender.join(10_000);
+                assertFalse(sender.isAlive(), "Senders should not deadlock with the pollers");
+            }
+            for (Future<String> future : futures) {
+                assertNull(future.get(5, TimeUnit.SECONDS));
+                assertTrue(future.isDone(), "Every event should be answered with NO_ROUTE");
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("testSharedMemoryPollersNeverWaitOnTheirOwnRings completed successfully.");
+    }
+
+    // Codecs for the example messages, so they can cross process boundaries
+    private static MessageCodecs exampleCodecs() {
+        return new MessageCodecs()
+                .register(ExampleEvent.class, new MessageCodec<ExampleEvent>() {
+                    @Override
+                    public void encode(ExampleEvent message, ByteBuffer out) {
+                        MessageCodec.putString(out, message.getSenderName());
+                    }
+
+                    @Override
+                    public ExampleEvent decode(ByteBuffer in) {
+                        return new ExampleEvent(MessageCodec.getString(in));
+                    }
+                })
+                .register(ExampleBroadcast.class, new MessageCodec<ExampleBroadcast>() {
+                    @Override
+                    public void encode(ExampleBroadcast message, ByteBuffer out) {
+                        MessageCodec.putString(out, message.getSenderId());
+                    }
+
+                    @Override
+                    public ExampleBroadcast decode(ByteBuffer in) {
+                        return new ExampleBroadcast(MessageCodec.getString(in));
+                    }
+                });
+    }
+
+    @Test
+    public void testControlBroadcastsOvertakeQueuedMessages() {
+        System.out.println("Starting testControlBroadcastsOvertakeQueuedMessages...");
+        class TestEvent implements Event<String> {}
+        class TestBroadcast implements Broadcast {}
+        class TestControl implements ControlBroadcast {}
+
+        messageBus.register(testMicroService);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService);
+        messageBus.subscribeBroadcast(TestBroadcast.class, testMicroService);
+        messageBus.subscribeBroadcast(TestControl.class, testMicroService);
+        try {
+            List<Message> sent = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                TestEvent event = new TestEvent();
+                messageBus.sendEvent(event);
+                sent.add(event);
+            }
+            TestBroadcast broadcast = new TestBroadcast();
+            messageBus.sendBroadcast(broadcast);
+            sent.add(broadcast);
+            TestControl first = new TestControl();
+            TestControl second = new TestControl();
+            messageBus.sendBroadcast(first);
+            messageBus.sendBroadcast(second);
+
+            // Control broadcasts come first, then the data lane, each in the order sent
+            List<Message> expected = new ArrayList<>();
+            expected.add(first);
+            expected.add(second);
+            expected.addAll(sent);
+            assertDoesNotThrow(() -> {
+                for (Message message : expected) {
+                    assertSame(message, messageBus.awaitMessage(testMicroService));
+                }
+            });
+        } finally {
+            messageBus.unregister(testMicroService);
+        }
+        System.out.println("testControlBroadcastsOvertakeQueuedMessages completed successfully.");
+    }
+
+    @Test
+    public void testFilteredBroadcastSubscriptionIsNotWokenForRejectedBroadcasts() {
+        System.out.println("Starting testFilteredBroadcastSubscriptionIsNotWokenForRejectedBroadcasts...");
+        MicroService filtered = new MicroService("FilteredMicroService") {
+            @Override
+            protected void initialize() {
+            }
+        };
+
+        messageBus.register(testMicroService);
+        messageBus.register(filtered);
+        messageBus.subscribeBroadcast(ExampleBroadcast.class, testMicroService);
+        messageBus.subscribeBroadcast(ExampleBroadcast.class, filtered,
+                broadcast -> broadcast.getSenderId().equals("Clock"));
+        try {
+            ExampleBroadcast fromSensor = new ExampleBroadcast("Sensor");
+            ExampleBroadcast fromClock = new ExampleBroadcast("Clock");
+            messageBus.sendBroadcast(fromSensor);
+            messageBus.sendBroadcast(fromClock);
+
+            Mailbox mailbox = messageBus.mailboxOf(filtered);
+            assertDoesNotThrow(() -> {
+                assertSame(fromSensor, messageBus.awaitMessage(testMicroService));
+                assertSame(fromClock, messageBus.awaitMessage(testMicroService));
+                assertSame(fromClock, messageBus.awaitMessage(filtered), "Only the accepted broadcast should be queued");
+                messageBus.messageHandled(mailbox);
+            });
+            assertTrue(mailbox.isIdle(), "The rejected broadcast should never reach the filtered subscriber");
+        } finally {
+            messageBus.unregister(testMicroService);
+            messageBus.unregister(filtered);
+        }
+        System.out.println("testFilteredBroadcastSubscriptionIsNotWokenForRejectedBroadcasts completed successfully.");
+    }
+
+    @Test
+    public void testUnsubscribedServiceLeavesRoundRobinAndUnregisterDropsItsSubscriptions() {
+        System.out.println("Starting testUnsubscribedServiceLeavesRoundRobinAndUnregisterDropsItsSubscriptions...");
+        class TestEvent implements Event<String> {}
+        class TestBroadcast implements Broadcast {}
+        MicroService spare = new MicroService("SpareMicroService") {
+            @Override
+            protected void initialize() {
+            }
+        };
+
+        messageBus.register(testMicroService);
+        messageBus.register(spare);
+        messageBus.subscribeEvent(TestEvent.class, testMicroService);
+        messageBus.subscribeEvent(TestEvent.class, spare);
+        messageBus.subscribeBroadcast(TestBroadcast.class, spare);
+        try {
+            TestEvent first = new TestEvent();
+            messageBus.sendEvent(first); // Goes to testMicroService
+            TestEvent second = new TestEvent();
+            messageBus.sendEvent(second); // Goes to the spare
+            messageBus.unsubscribeEvent(TestEvent.class, spare);
+            for (int i = 0; i < 3; i++) {
+                messageBus.sendEvent(new TestEvent());
+            }
+
+            assertEquals(4, messageBus.queueDepth(testMicroService), "All later events should skip the unsubscribed service");
+            assertEquals(1, messageBus.queueDepth(spare), "An event dispatched before unsubscribing should stay queued");
+            assertDoesNotThrow(() -> assertSame(second, messageBus.awaitMessage(spare)));
+
+            messageBus.unregister(spare);
+            assertFalse(messageBus.broadcastSubscribers.get(TestBroadcast.class).contains(spare),
+                    "Unregistering should remove the service's broadcast subscriptions");
+            assertFalse(messageBus.eventSubscribers.get(TestEvent.class).contains(spare));
+        } finally {
+            messageBus.unregister(testMicroService);
+            messageBus.unregister(spare);
+        }
+        System.out.println("testUnsubscribedServiceLeavesRoundRobinAndUnregisterDropsItsSubscriptions completed successfully.");
+    }
+
     @Test
     public void testUnregisteredMicroServiceCannotReceiveMessages() {
         System.out.println("Starting testUnregisteredMicroServiceCannotReceiveMessages...");
@@ -0,0 +1,47 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.VoxelFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoxelFilterTest {
+
+    @Test
+    public void testPointsInOneCellAreReplacedByTheirCentroid() {
+        VoxelFilter filter = new VoxelFilter(1.0);
+        List<CloudPoint> cloud = Arrays.asList(
+                new CloudPoint(0.2, 0.2), new CloudPoint(2.5, 0.5), new CloudPoint(0.4, 0.6),
+                new CloudPoint(-0.5, 0.5), new CloudPoint(2.1, 0.1));
+
+        List<CloudPoint> filtered = filter.apply(cloud);
+
+        // Cells in order of first appearance: (0,0), (2,0), (-1,0)
+        assertEquals(3, filtered.size());
+        assertEquals(0.3, filtered.get(0).getX(), 1e-9);
+        assertEquals(0.4, filtered.get(0).getY(), 1e-9);
+        assertEquals(2.3, filtered.get(1).getX(), 1e-9);
+        assertEquals(0.3, filtered.get(1).getY(), 1e-9);
+        assertEquals(-0.5, filtered.get(2).getX(), 1e-9);
+        assertEquals(5, filter.getPointsIn());
+        assertEquals(3, filter.getPointsOut());
+    }
+
+    @Test
+    public void testSparseCloudIsReturnedAsIs() {
+        VoxelFilter filter = new VoxelFilter(0.1);
+        List<CloudPoint> cloud = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            cloud.add(new CloudPoint(i * 0.5, -i * 0.5));
+        }
+
+        assertSame(cloud, filter.apply(cloud), "A cloud with one point per cell needs no copy.");
+        assertEquals(1000, filter.getPointsOut());
+        assertNull(VoxelFilter.ofSize(0), "A size of 0 disables downsampling.");
+    }
+}